@@ -0,0 +1,217 @@
+package Benchmark;
+
+import Core.FlareClient;
+import FlareMedia.VideoCatalog;
+import FlareMessage.FrameMessage;
+import FlareMessage.OpenVideoMessage;
+import FlareProtocol.FlareOpCode;
+import FlareStream.LogicalStream;
+import WebSocket.Message.WebSocketBinaryMessage;
+import WebSocket.WebSocket;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import javax.imageio.ImageIO;
+
+/**
+ * Checks that the hot paths stay within their allocation budgets. Each
+ * operation runs in this thread until the JIT settled, then the bytes this
+ * thread allocated over many runs are read from the ThreadMXBean and divided
+ * by the run count. An operation over its budget fails the check with exit
+ * status 1, so a change that starts allocating on a path kept lean shows up
+ * before it ships.
+ *
+ * Budgets are the measured bytes per operation plus a little headroom for
+ * JIT differences between JDKs. When an operation gets leaner, lower its
+ * budget with it.
+ *
+ *     java -cp target/benchmarks.jar Benchmark.AllocationBudget
+ *
+ * or mvn -Pallocation-budget verify, which fails the build.
+ *
+ * @author Team 2
+ */
+public class AllocationBudget {
+
+    private static final int WARMUP = 50000;
+    private static final int ITERATIONS = 20000;
+    private static final int ROUNDS = 5;
+
+    private static final String VIDEO = "budget";
+
+    // Must be set before the server configuration is loaded
+    private static final Path ROOT = Paths.get(System.getProperty("java.io.tmpdir"), "flare-budget-media");
+
+    static {
+        System.setProperty("flare.media.root", ROOT.toString());
+    }
+
+    private static final com.sun.management.ThreadMXBean threads
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * One run of a hot path
+     */
+    private interface Operation {
+
+        void run() throws Exception;
+    }
+
+    private static final class Check {
+
+        final String name;
+        final long budget;
+        final Operation operation;
+
+        Check(String name, long budget, Operation operation) {
+            this.name = name;
+            this.budget = budget;
+            this.operation = operation;
+        }
+    }
+
+    /**
+     * Entry point
+     *
+     * @param args unused
+     * @throws Exception if an operation fails
+     */
+    public static void main(String[] args) throws Exception {
+
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("This JVM does not report allocated bytes per thread");
+            System.exit(2);
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        SyntheticVideo.create(ROOT.resolve(VIDEO), 4, 1280, 720, 30, 64 * 1024);
+        VideoCatalog.getInstance();
+
+        List<Check> checks = createChecks();
+        long calibration = measure(() -> {
+        });
+
+        boolean failed = false;
+        System.out.println(String.format("%-28s %12s %12s", "operation", "bytes/op", "budget"));
+
+        for (Check check : checks) {
+
+            long allocated = Math.max(0, measure(check.operation) - calibration);
+            boolean over = allocated > check.budget;
+            failed |= over;
+
+            System.out.println(String.format("%-28s %12d %12d%s", check.name, allocated, check.budget,
+                    over ? "  OVER BUDGET" : ""));
+        }
+
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static List<Check> createChecks() throws IOException {
+
+        List<Check> checks = new ArrayList<Check>();
+
+        //CREDIT for stream 5: op code, stream, priority, length, frames, bytes
+        byte[] credit = new byte[18];
+        credit[0] = (byte) (FlareOpCode.CREDIT | FlareOpCode.STREAM_FLAG);
+        credit[4] = 5;
+        credit[9] = 8;
+        credit[13] = 1;
+        credit[17] = 1;
+
+        WebSocket decoder = new MemorySocket(MemorySocket.clientFrame(WebSocket.OP_CODE.BINARY, credit));
+        checks.add(new Check("decode binary frame", 768, decoder::getMessage));
+
+        FlareClient client = new FlareClient("budget", new MemorySocket(new byte[0]));
+
+        WebSocketBinaryMessage creditMessage = new WebSocketBinaryMessage();
+        creditMessage.setOpcode(WebSocket.OP_CODE.BINARY);
+        creditMessage.setData(credit);
+        checks.add(new Check("dispatch CREDIT", 64, () -> {
+            FlareClient.BinaryMessageHandler handler = client.new BinaryMessageHandler();
+            handler.initialize(creditMessage);
+            handler.process();
+        }));
+
+        //LIST_VIDEOS without stream id runs its task inline and replies
+        byte[] list = new byte[5];
+        list[0] = FlareOpCode.LIST_VIDEOS;
+        list[4] = 5;
+        WebSocketBinaryMessage listMessage = new WebSocketBinaryMessage();
+        listMessage.setOpcode(WebSocket.OP_CODE.BINARY);
+        listMessage.setData(list);
+        checks.add(new Check("dispatch LIST_VIDEOS", 1024, () -> {
+            FlareClient.BinaryMessageHandler handler = client.new BinaryMessageHandler();
+            handler.initialize(listMessage);
+            handler.process();
+        }));
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(SyntheticVideo.frame(1, 1280, 720), "jpg", encoded);
+        byte[] jpeg = encoded.toByteArray();
+
+        FrameMessage frameMessage = new FrameMessage();
+        ByteBuffer header = ByteBuffer.allocate(4096);
+        checks.add(new Check("serialize FrameMessage", 128, () -> {
+            frameMessage.setFrameData(jpeg);
+            frameMessage.setIndex(7);
+            header.clear();
+            frameMessage.writeHeader(header);
+            frameMessage.getPayload();
+        }));
+
+        OpenVideoMessage openMessage = new OpenVideoMessage();
+        checks.add(new Check("serialize OpenVideoMessage", 32, () -> {
+            openMessage.setVideoAvailability(true);
+            openMessage.setWidth(1280);
+            openMessage.setHeight(720);
+            openMessage.setFps(30);
+            openMessage.setDuration(4);
+            openMessage.setFrameCount(120);
+            header.clear();
+            openMessage.writeHeader(header);
+        }));
+
+        //Send gate, header serialization, metrics and the WebSocket write
+        LogicalStream connection = client.getStreamTable().getConnectionStream();
+        checks.add(new Check("send frame", 256, () -> {
+            frameMessage.setFrameData(jpeg);
+            frameMessage.setIndex(7);
+            connection.send(frameMessage);
+        }));
+
+        return checks;
+    }
+
+    /**
+     * Bytes the current thread allocates per run, the least of a few rounds
+     * so a stray allocation of the runtime does not count against the path
+     */
+    private static long measure(Operation operation) throws Exception {
+
+        long thread = Thread.currentThread().getId();
+
+        for (int n = 0; n < WARMUP; n++) {
+            operation.run();
+        }
+
+        long least = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int n = 0; n < ITERATIONS; n++) {
+                operation.run();
+            }
+            long after = threads.getThreadAllocatedBytes(thread);
+
+            least = Math.min(least, (after - before) / ITERATIONS);
+        }
+        return least;
+    }
+
+}
@@ -0,0 +1,139 @@
+package Benchmark;
+
+import FlareMessage.AudioMessage;
+import FlareMessage.FrameMessage;
+import FlareMessage.OpenVideoMessage;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization of the flare messages. The frame benchmarks are single
+ * threaded and one operation is one frame, so the score reads as frames per
+ * second per core and gc.alloc.rate.norm as bytes allocated per frame.
+ * encodeFrame includes the ImageIO JPEG encode, serializeEncodedFrame sends
+ * a JPEG that was encoded at ingest, the difference is the codec.
+ *
+ * @author Team 2
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlareMessageBenchmark {
+
+    /**
+     * One frame at a rendition height, as image and as encoded JPEG
+     */
+    @State(Scope.Thread)
+    public static class Frame {
+
+        @Param({"240", "720"})
+        public int height;
+
+        BufferedImage image;
+        byte[] jpeg;
+        final FrameMessage message = new FrameMessage();
+
+        @Setup
+        public void setup() throws IOException {
+
+            image = SyntheticVideo.frame(7, height * 16 / 9, height);
+
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            ImageIO.write(image, "jpg", encoded);
+            jpeg = encoded.toByteArray();
+
+            message.setIndex(7);
+        }
+    }
+
+    /**
+     * An audio file of a given size
+     */
+    @State(Scope.Thread)
+    public static class Audio {
+
+        @Param({"65536", "1048576"})
+        public int audioBytes;
+
+        Path file;
+        final AudioMessage message = new AudioMessage();
+
+        @Setup
+        public void setup() throws IOException {
+
+            byte[] audio = new byte[audioBytes];
+            new Random(1).nextBytes(audio);
+            file = Files.createTempFile("flare-benchmark", ".m4a");
+            Files.write(file, audio);
+
+            message.setAudioPath(file.toString());
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Video metadata reply
+     */
+    @State(Scope.Thread)
+    public static class OpenVideo {
+
+        final OpenVideoMessage message = new OpenVideoMessage();
+
+        @Setup
+        public void setup() {
+            message.setVideoAvailability(true);
+            message.setWidth(1280);
+            message.setHeight(720);
+            message.setFps(30);
+            message.setDuration(1333);
+            message.setFrameCount(40);
+        }
+    }
+
+    @Benchmark
+    public byte[] encodeFrame(Frame frame) {
+        frame.message.setFrame(frame.image);
+        return frame.message.toBinary();
+    }
+
+    @Benchmark
+    public byte[] serializeEncodedFrame(Frame frame) {
+        frame.message.setFrameData(frame.jpeg);
+        return frame.message.toBinary();
+    }
+
+    @Benchmark
+    public byte[] serializeOpenVideo(OpenVideo openVideo) {
+        return openVideo.message.toBinary();
+    }
+
+    @Benchmark
+    public byte[] serializeAudio(Audio audio) {
+        return audio.message.toBinary();
+    }
+
+}
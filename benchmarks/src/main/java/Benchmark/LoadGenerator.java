@@ -0,0 +1,389 @@
+package Benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Puts a server under the load of many synthetic viewers and reports how
+ * it held up: delivered frames per second of each stream, time to first
+ * frame, frame latency percentiles, stalls and the CPU the server used.
+ *
+ * By default a test library is generated and a server is started in a
+ * process of its own on this machine. Example, 200 viewers joining over 20
+ * seconds, a tenth of them slow and a tenth dropping their connection once:
+ *
+ *     java -cp target/benchmarks.jar Benchmark.LoadGenerator --clients 200
+ *         --ramp 20 --duration 60 --slow 0.1 --disconnect 0.1
+ *
+ * Options, with their defaults:
+ * <pre>
+ * --clients 50        synthetic viewers
+ * --ramp 10           seconds over which viewers connect
+ * --duration 60       seconds from the first connection to the report
+ * --buffer 15         frames a viewer buffers, the credit it grants
+ * --mix uniform       relative popularity of the videos, e.g. 5,1,1,1
+ * --delta 0           fraction of viewers asking for tile deltas
+ * --slow 0            fraction of viewers reading slowly
+ * --slow-rate 262144  bytes per second a slow viewer reads
+ * --disconnect 0      fraction of viewers dropping their connection once
+ * --videos 4          videos in the generated library
+ * --frames 300        frames per video
+ * --width 1280        frame width
+ * --height 720        frame height
+ * --fps 30            frame rate, also the playback rate of the viewers
+ * --media DIR         library directory, generated if missing
+ * --host 127.0.0.1    server address
+ * --port 6671         server port
+ * --external          use a server that is already running
+ * --server-jvm ARGS   JVM options of the started server, space separated
+ * </pre>
+ *
+ * @author Team 2
+ */
+public class LoadGenerator {
+
+    private static final String VIDEO_PREFIX = "load";
+
+    /**
+     * Settings of one load run
+     */
+    public static final class Settings {
+
+        final int clients;
+        final long rampNanos;
+        final long durationNanos;
+        final int bufferFrames;
+        final double[] mix;
+        final double deltaFraction;
+        final double slowFraction;
+        final long slowBytesPerSecond;
+        final double disconnectFraction;
+        final int videos;
+        final int frames;
+        final int width;
+        final int height;
+        final double fps;
+        final Path media;
+        final String host;
+        final int port;
+        final boolean external;
+        final String serverJvm;
+
+        // Set when the run starts
+        long startNanos;
+        long endNanos;
+
+        Settings(Map<String, String> options) {
+
+            clients = Integer.parseInt(options.getOrDefault("clients", "50"));
+            rampNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("ramp", "10")));
+            durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "60")));
+            bufferFrames = Integer.parseInt(options.getOrDefault("buffer", "15"));
+            deltaFraction = Double.parseDouble(options.getOrDefault("delta", "0"));
+            slowFraction = Double.parseDouble(options.getOrDefault("slow", "0"));
+            slowBytesPerSecond = Long.parseLong(options.getOrDefault("slow-rate", "262144"));
+            disconnectFraction = Double.parseDouble(options.getOrDefault("disconnect", "0"));
+            videos = Integer.parseInt(options.getOrDefault("videos", "4"));
+            frames = Integer.parseInt(options.getOrDefault("frames", "300"));
+            width = Integer.parseInt(options.getOrDefault("width", "1280"));
+            height = Integer.parseInt(options.getOrDefault("height", "720"));
+            fps = Double.parseDouble(options.getOrDefault("fps", "30"));
+            media = Paths.get(options.getOrDefault("media",
+                    Paths.get(System.getProperty("java.io.tmpdir"), "flare-load-media").toString()));
+            host = options.getOrDefault("host", "127.0.0.1");
+            port = Integer.parseInt(options.getOrDefault("port", "6671"));
+            external = options.containsKey("external");
+            serverJvm = options.getOrDefault("server-jvm", "");
+
+            mix = new double[videos];
+            String[] weights = options.getOrDefault("mix", "uniform").split(",");
+            double total = 0;
+            for (int n = 0; n < videos; n++) {
+                mix[n] = weights.length == videos ? Double.parseDouble(weights[n]) : 1;
+                total += mix[n];
+            }
+            for (int n = 0; n < videos; n++) {
+                mix[n] /= total;
+            }
+        }
+
+        /**
+         * Draws a video according to the mix
+         *
+         * @param random source of randomness
+         * @return catalog name of the video
+         */
+        String pickVideo(Random random) {
+
+            double draw = random.nextDouble();
+            for (int n = 0; n < videos - 1; n++) {
+                draw -= mix[n];
+                if (draw < 0) {
+                    return VIDEO_PREFIX + n;
+                }
+            }
+            return VIDEO_PREFIX + (videos - 1);
+        }
+    }
+
+    /**
+     * Entry point
+     *
+     * @param args options, see the class comment
+     * @throws Exception if the library or the server cannot be set up
+     */
+    public static void main(String[] args) throws Exception {
+
+        Map<String, String> options = new HashMap<String, String>();
+        for (int n = 0; n < args.length; n++) {
+            if (args[n].startsWith("--")) {
+                boolean hasValue = n + 1 < args.length && !args[n + 1].startsWith("--");
+                options.put(args[n].substring(2), hasValue ? args[++n] : "true");
+            }
+        }
+
+        Settings settings = new Settings(options);
+        LoadStatistics statistics = new LoadStatistics();
+        ServerCpu cpu = new ServerCpu();
+        Process server = null;
+
+        if (!settings.external) {
+            generateLibrary(settings);
+            server = startServer(settings, cpu);
+        }
+
+        try {
+            run(settings, statistics, cpu);
+        } finally {
+            if (server != null) {
+                server.destroy();
+            }
+        }
+
+        report(settings, statistics, cpu);
+    }
+
+    private static void generateLibrary(Settings settings) throws IOException {
+
+        for (int n = 0; n < settings.videos; n++) {
+
+            Path directory = settings.media.resolve(VIDEO_PREFIX + n);
+            List<String> meta = Files.isRegularFile(directory.resolve("meta.txt"))
+                    ? Files.readAllLines(directory.resolve("meta.txt")) : null;
+
+            if (meta != null && Integer.parseInt(meta.get(0).trim()) == settings.frames
+                    && Integer.parseInt(meta.get(1).trim()) == settings.width
+                    && Integer.parseInt(meta.get(2).trim()) == settings.height) {
+                continue;
+            }
+
+            System.out.println("Generating " + directory);
+            SyntheticVideo.create(directory, settings.frames, settings.width, settings.height, settings.fps, 256 * 1024);
+        }
+    }
+
+    private static Process startServer(Settings settings, ServerCpu cpu) throws IOException, InterruptedException {
+
+        List<String> command = new ArrayList<String>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String option : settings.serverJvm.split(" ")) {
+            if (!option.isEmpty()) {
+                command.add(option);
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("-Dflare.media.root=" + settings.media.toAbsolutePath());
+        command.add("-Dflare.port=" + settings.port);
+        command.add(ServerProcess.class.getName());
+
+        Process server = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectInput(new File(System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null"))
+                .start();
+        CountDownLatch listening = new CountDownLatch(1);
+
+        //The server prints a lot, only the CPU lines and the start are of interest
+        Thread output = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(server.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(ServerProcess.CPU_PREFIX)) {
+                        String[] sample = line.substring(ServerProcess.CPU_PREFIX.length()).split(" ");
+                        cpu.sample(Long.parseLong(sample[0]), Long.parseLong(sample[1]));
+                    } else if (line.startsWith("Running server on port")) {
+                        listening.countDown();
+                    }
+                }
+            } catch (IOException ex) {
+                //Server gone
+            }
+        }, "flare-load-server-output");
+        output.setDaemon(true);
+        output.start();
+
+        if (!listening.await(5, TimeUnit.MINUTES)) {
+            server.destroy();
+            throw new IOException("Server did not start");
+        }
+        return server;
+    }
+
+    private static void run(Settings settings, LoadStatistics statistics, ServerCpu cpu) throws InterruptedException {
+
+        settings.startNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        settings.endNanos = settings.startNanos + settings.durationNanos;
+
+        List<SyntheticClient> clients = new ArrayList<SyntheticClient>();
+        List<Thread> threads = new ArrayList<Thread>();
+        Random seeds = new Random(42);
+
+        for (int n = 0; n < settings.clients; n++) {
+
+            long startAt = settings.startNanos + settings.rampNanos * n / Math.max(1, settings.clients);
+            SyntheticClient client = new SyntheticClient(settings, statistics, new Random(seeds.nextLong()), startAt);
+            clients.add(client);
+
+            Thread thread = new Thread(client, "flare-load-client-" + n);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+
+        //One clock plays the buffers of every viewer at the frame rate
+        ScheduledExecutorService clock = Executors.newSingleThreadScheduledExecutor();
+        clock.scheduleAtFixedRate(() -> {
+            for (SyntheticClient client : clients) {
+                client.tick();
+            }
+        }, 0, (long) (1e9 / settings.fps), TimeUnit.NANOSECONDS);
+
+        cpu.mark();
+        long lastFrames = 0;
+        long lastReport = System.nanoTime();
+
+        while (System.nanoTime() < settings.endNanos) {
+
+            Thread.sleep(Math.min(5000, Math.max(1, (settings.endNanos - System.nanoTime()) / 1000000)));
+
+            long now = System.nanoTime();
+            if (now - lastReport < TimeUnit.SECONDS.toNanos(1)) {
+                continue;
+            }
+            long frames = statistics.frames.sum();
+            System.out.printf("%5.0fs  connected %d  streams %d  %.0f frames/s  stalls %d  server cpu %s%n",
+                    (now - settings.startNanos) / 1e9, statistics.connected.sum(), statistics.streams.sum(),
+                    (frames - lastFrames) / ((now - lastReport) / 1e9), statistics.stalls.sum(), cpu.describe());
+            lastFrames = frames;
+            lastReport = now;
+        }
+
+        clock.shutdownNow();
+        for (SyntheticClient client : clients) {
+            client.stop();
+        }
+        for (Thread thread : threads) {
+            thread.join(1000);
+        }
+    }
+
+    private static void report(Settings settings, LoadStatistics statistics, ServerCpu cpu) {
+
+        double seconds = settings.durationNanos / 1e9;
+        List<Double> fps = statistics.getStreamFps();
+
+        System.out.println();
+        System.out.printf("Clients %d, %.0f fps, buffer %d frames, %.0f s%n",
+                settings.clients, settings.fps, settings.bufferFrames, seconds);
+        System.out.printf("Streams %d started, %d complete, %d refused, %d failed, %d unavailable%n",
+                statistics.streams.sum(), statistics.completed.sum(), statistics.refused.sum(),
+                statistics.failed.sum(), statistics.unavailable.sum());
+        System.out.printf("Connections %d, %d planned disconnects, %d errors%n",
+                statistics.connected.sum(), statistics.disconnects.sum(), statistics.errors.sum());
+        System.out.printf("Delivered %.0f frames/s, %.1f MB/s, %d stalled frame ticks%n",
+                statistics.frames.sum() / seconds, statistics.bytes.sum() / seconds / 1e6, statistics.stalls.sum());
+
+        if (!fps.isEmpty()) {
+            int sustained = 0;
+            for (double rate : fps) {
+                if (rate >= settings.fps * 0.95) {
+                    sustained++;
+                }
+            }
+            System.out.printf("Stream fps min %.1f  p10 %.1f  p50 %.1f  max %.1f, %d of %d streams at 95%% of %.0f fps%n",
+                    fps.get(0), fps.get(fps.size() / 10), fps.get(fps.size() / 2), fps.get(fps.size() - 1),
+                    sustained, fps.size(), settings.fps);
+        }
+
+        printHistogram("Time to first frame", statistics.timeToFirstFrame);
+        printHistogram("Frame latency", statistics.frameLatency);
+        System.out.println("Server cpu " + cpu.describeTotal());
+    }
+
+    static void printHistogram(String name, Histogram histogram) {
+
+        if (histogram.getTotalCount() == 0) {
+            System.out.println(name + ": no samples");
+            return;
+        }
+
+        System.out.printf("%s ms: p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f  (%d samples)%n", name,
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0, histogram.getTotalCount());
+    }
+
+    /**
+     * CPU samples of the server process
+     */
+    private static final class ServerCpu {
+
+        private final int cores = Runtime.getRuntime().availableProcessors();
+        private long cpu;
+        private long wall;
+        private long markCpu;
+        private long markWall;
+        private long lastCpu;
+        private long lastWall;
+
+        synchronized void sample(long cpuNanos, long wallNanos) {
+            lastCpu = cpu;
+            lastWall = wall;
+            cpu = cpuNanos;
+            wall = wallNanos;
+        }
+
+        synchronized void mark() {
+            markCpu = cpu;
+            markWall = wall;
+        }
+
+        synchronized String describe() {
+            return wall == lastWall ? "n/a" : percent(cpu - lastCpu, wall - lastWall);
+        }
+
+        synchronized String describeTotal() {
+            return wall == markWall ? "n/a" : percent(cpu - markCpu, wall - markWall);
+        }
+
+        private String percent(long cpuNanos, long wallNanos) {
+            double core = 100.0 * cpuNanos / wallNanos;
+            return String.format("%.0f%% of a core, %.0f%% of %d cores", core, core / cores, cores);
+        }
+    }
+
+}
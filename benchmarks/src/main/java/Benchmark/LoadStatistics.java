@@ -0,0 +1,59 @@
+package Benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * What the synthetic clients of one load run observed. Latencies are
+ * recorded in microseconds.
+ *
+ * @author Team 2
+ */
+public class LoadStatistics {
+
+    // Request sent to first frame received
+    final Histogram timeToFirstFrame = new ConcurrentHistogram(3);
+
+    // Credit granted to the frame it paid for received
+    final Histogram frameLatency = new ConcurrentHistogram(3);
+
+    final LongAdder frames = new LongAdder();
+    final LongAdder bytes = new LongAdder();
+    final LongAdder stalls = new LongAdder();
+    final LongAdder streams = new LongAdder();
+    final LongAdder completed = new LongAdder();
+    final LongAdder failed = new LongAdder();
+    final LongAdder refused = new LongAdder();
+    final LongAdder unavailable = new LongAdder();
+    final LongAdder disconnects = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder connected = new LongAdder();
+
+    // Delivered frames per second of each stream that played
+    private final List<Double> streamFps = new ArrayList<Double>();
+
+    /**
+     * Records the playback rate of a finished stream
+     *
+     * @param fps frames played per second of playback
+     */
+    synchronized void addStreamFps(double fps) {
+        streamFps.add(fps);
+    }
+
+    /**
+     * Playback rates of all finished streams, sorted
+     *
+     * @return sorted copy
+     */
+    synchronized List<Double> getStreamFps() {
+        List<Double> sorted = new ArrayList<Double>(streamFps);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+}
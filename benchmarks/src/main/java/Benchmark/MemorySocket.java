@@ -0,0 +1,125 @@
+package Benchmark;
+
+import WebSocket.WebSocket;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * WebSocket over in-memory streams. Reads replay the given bytes in a loop,
+ * writes are counted and thrown away, so the benchmarks measure the codec
+ * and not the network.
+ *
+ * @author Team 2
+ */
+public class MemorySocket extends WebSocket {
+
+    private final LoopingInputStream in;
+    private final CountingOutputStream out = new CountingOutputStream();
+
+    /**
+     * Constructor
+     *
+     * @param incoming bytes the peer sends, replayed forever, may be empty
+     * @throws IOException if the streams cannot be set up
+     */
+    public MemorySocket(byte[] incoming) throws IOException {
+        super();
+        in = new LoopingInputStream(incoming);
+        initialize();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    /**
+     * Bytes written so far
+     *
+     * @return byte count
+     */
+    public long getWritten() {
+        return out.written;
+    }
+
+    /**
+     * Builds a masked client frame, as a browser sends it
+     *
+     * @param opCode WebSocket op code
+     * @param payload frame payload, at most 125 bytes
+     * @return the frame
+     */
+    public static byte[] clientFrame(byte opCode, byte[] payload) {
+
+        byte[] mask = {0x12, 0x34, 0x56, 0x78};
+        byte[] frame = new byte[6 + payload.length];
+
+        frame[0] = (byte) (0x80 | opCode);
+        frame[1] = (byte) (0x80 | payload.length);
+        System.arraycopy(mask, 0, frame, 2, 4);
+        for (int n = 0; n < payload.length; n++) {
+            frame[6 + n] = (byte) (payload[n] ^ mask[n % 4]);
+        }
+
+        return frame;
+    }
+
+    private static final class LoopingInputStream extends InputStream {
+
+        private final byte[] data;
+        private int position;
+
+        LoopingInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() throws IOException {
+
+            if (data.length == 0) {
+                return -1;
+            }
+            if (position == data.length) {
+                position = 0;
+            }
+            return data[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+
+            if (data.length == 0) {
+                return -1;
+            }
+            if (position == data.length) {
+                position = 0;
+            }
+            int count = Math.min(length, data.length - position);
+            System.arraycopy(data, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        long written;
+
+        @Override
+        public void write(int b) {
+            written++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            written += length;
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package Benchmark;
+
+import Core.FlareClient;
+import FlareMedia.VideoCatalog;
+import FlareProtocol.FlareOpCode;
+import FlareTask.OpenVideoTask;
+import WebSocket.Message.WebSocketBinaryMessage;
+import WebSocket.WebSocket;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole OpenVideoTask playback of a synthetic video: catalog lookup, disk
+ * reads through the loader threads, serialization and the socket writes,
+ * into a client whose socket throws the bytes away. Pacing is turned off,
+ * so the task runs as fast as the pipeline allows.
+ *
+ * Scores are per frame: frames per second per core, since one thread plays,
+ * and gc.alloc.rate.norm is bytes allocated per frame. playFromDisk turns
+ * the frame cache off so every frame is read from disk, playCached shows
+ * the same pipeline without the disk.
+ *
+ * @author Team 2
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class OpenVideoTaskBenchmark {
+
+    private static final int FRAME_COUNT = 120;
+    private static final String VIDEO = "synthetic";
+
+    // Must be set before the server configuration is loaded
+    private static final Path ROOT = Paths.get(System.getProperty("java.io.tmpdir"), "flare-benchmark-media");
+
+    static {
+        System.setProperty("flare.media.root", ROOT.toString());
+        System.setProperty("flare.mux.paceMs", "-1");
+    }
+
+    /**
+     * Request flags, 0 for full frames, 1 for tile deltas
+     */
+    @Param({"0", "1"})
+    public byte flags;
+
+    private FlareClient client;
+    private WebSocketBinaryMessage request;
+
+    @Setup
+    public void setup() throws IOException {
+
+        SyntheticVideo.create(ROOT.resolve(VIDEO), FRAME_COUNT, 1280, 720, 30, 256 * 1024);
+        VideoCatalog.getInstance();
+
+        client = new FlareClient("benchmark", new MemorySocket(new byte[0]));
+
+        //OPEN_VIDEO request: op code, length, path length, path, flags
+        byte[] path = VIDEO.getBytes(StandardCharsets.US_ASCII);
+        byte[] data = new byte[7 + path.length];
+        data[0] = FlareOpCode.OPEN_VIDEO;
+        data[4] = (byte) (2 + path.length);
+        data[5] = (byte) path.length;
+        System.arraycopy(path, 0, data, 6, path.length);
+        data[6 + path.length] = flags;
+
+        request = new WebSocketBinaryMessage();
+        request.setOpcode(WebSocket.OP_CODE.BINARY);
+        request.setData(data);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAME_COUNT)
+    public void playCached() {
+        play();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAME_COUNT)
+    @Fork(jvmArgsAppend = "-Dflare.cache.frameBytes=0")
+    public void playFromDisk() {
+        play();
+    }
+
+    private void play() {
+
+        OpenVideoTask task = new OpenVideoTask();
+        task.setMessage(request);
+        task.setFlareClient(client);
+        task.setStream(client.getStreamTable().getConnectionStream());
+        task.process();
+    }
+
+}
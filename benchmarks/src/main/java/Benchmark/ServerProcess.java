@@ -0,0 +1,46 @@
+package Benchmark;
+
+import Core.FlareMediaPlayerServer;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Runs the server in a process of its own for the load generator, so the
+ * CPU it reports is the server's alone. Besides the server output, a line
+ * with the CPU time used so far is printed every second.
+ *
+ * @author Team 2
+ */
+public class ServerProcess {
+
+    /**
+     * Prefix of the CPU lines: CPU time and wall clock, both in ns
+     */
+    public static final String CPU_PREFIX = "#flare-cpu ";
+
+    /**
+     * Entry point, takes the server configuration as system properties
+     *
+     * @param args passed on to the server
+     */
+    public static void main(String[] args) {
+
+        com.sun.management.OperatingSystemMXBean os
+                = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+        Thread reporter = new Thread(() -> {
+            while (true) {
+                System.out.println(CPU_PREFIX + os.getProcessCpuTime() + " " + System.nanoTime());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }, "flare-cpu-report");
+        reporter.setDaemon(true);
+        reporter.start();
+
+        FlareMediaPlayerServer.main(args);
+    }
+
+}
@@ -0,0 +1,426 @@
+package Benchmark;
+
+import FlareMessage.EndStreamMessage;
+import FlareProtocol.FlareOpCode;
+import FlareTask.OpenVideoTask;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * One simulated viewer. It connects like a browser, with masked frames,
+ * plays videos one after the other on credit flow controlled streams and
+ * consumes frames at the video frame rate from a buffer of a few frames.
+ * Every frame played is granted back as credit, so the server can never
+ * run further ahead than the buffer, like a real player.
+ *
+ * A slow reader throttles its socket reads, a disconnecting client drops
+ * its connection once at a random point and reconnects a second later.
+ *
+ * @author Team 2
+ */
+public class SyntheticClient implements Runnable {
+
+    private static final long RECONNECT_DELAY_MS = 1000;
+
+    private final LoadGenerator.Settings settings;
+    private final LoadStatistics statistics;
+    private final Random random;
+    private final long startAt;
+    private final boolean slowReader;
+    private final boolean deltas;
+    private volatile long disconnectAt;
+
+    private volatile boolean running = true;
+    private Socket socket;
+    private OutputStream out;
+    private DataInputStream in;
+    private final Object sendLock = new Object();
+    private final byte[] mask = new byte[4];
+    private int streamId;
+
+    // Player state
+    private int buffered;
+    private long played;
+    private long firstFrame;
+    private long requested;
+    private boolean playing;
+    private final ArrayDeque<Long> grants = new ArrayDeque<Long>();
+
+    /**
+     * Constructor
+     *
+     * @param settings load run settings
+     * @param statistics where to record what the client observes
+     * @param random decides the videos played and when to disconnect
+     * @param startAt when to connect, System.nanoTime based
+     */
+    public SyntheticClient(LoadGenerator.Settings settings, LoadStatistics statistics, Random random, long startAt) {
+
+        this.settings = settings;
+        this.statistics = statistics;
+        this.random = random;
+        this.startAt = startAt;
+        this.slowReader = random.nextDouble() < settings.slowFraction;
+        this.deltas = random.nextDouble() < settings.deltaFraction;
+
+        disconnectAt = random.nextDouble() < settings.disconnectFraction
+                ? startAt + (long) (random.nextDouble() * (settings.endNanos - startAt))
+                : Long.MAX_VALUE;
+    }
+
+    /**
+     * Connects and plays until stopped, reconnecting after a disconnect
+     */
+    @Override
+    public void run() {
+
+        sleepUntil(startAt);
+
+        while (running) {
+
+            try {
+
+                connect();
+                statistics.connected.increment();
+
+                while (running) {
+                    play(settings.pickVideo(random));
+                }
+
+            } catch (IOException ex) {
+
+                if (running && disconnectAt != 0) {
+                    statistics.errors.increment();
+                }
+
+            } finally {
+                close();
+            }
+
+            //Planned disconnects come back, like a viewer reloading the page
+            if (running) {
+                disconnectAt = Long.MAX_VALUE;
+                sleepUntil(System.nanoTime() + RECONNECT_DELAY_MS * 1000000);
+            }
+        }
+    }
+
+    /**
+     * Stops the client, its connection is closed
+     */
+    public void stop() {
+        running = false;
+        close();
+    }
+
+    /**
+     * Plays one frame from the buffer and grants its credit back, called at
+     * the frame rate of the video. Also drops the connection when a
+     * disconnect is due.
+     */
+    public void tick() {
+
+        if (System.nanoTime() >= disconnectAt) {
+            statistics.disconnects.increment();
+            disconnectAt = 0;
+            close();
+            return;
+        }
+
+        int stream;
+        synchronized (this) {
+
+            if (!playing) {
+                return;
+            }
+            if (buffered == 0) {
+                statistics.stalls.increment();
+                return;
+            }
+
+            buffered--;
+            played++;
+            grants.addLast(System.nanoTime());
+            stream = streamId;
+        }
+
+        try {
+            credit(stream, 1);
+        } catch (IOException ex) {
+            close();
+        }
+    }
+
+    private void connect() throws IOException {
+
+        socket = new Socket();
+        if (slowReader) {
+            socket.setReceiveBufferSize(16 * 1024);
+        }
+        socket.connect(new InetSocketAddress(settings.host, settings.port), 5000);
+        socket.setTcpNoDelay(true);
+        out = socket.getOutputStream();
+
+        byte[] key = new byte[16];
+        random.nextBytes(key);
+        String upgrade = "GET / HTTP/1.1\r\nHost: " + settings.host + "\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: " + Base64.getEncoder().encodeToString(key) + "\r\nSec-WebSocket-Version: 13\r\n\r\n";
+        out.write(upgrade.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        //The server ends its response with an empty line, \n or \r\n
+        InputStream raw = socket.getInputStream();
+        int previous = 0;
+        int current;
+        while ((current = raw.read()) != -1) {
+            if (current == '\n' && previous == '\n') {
+                in = new DataInputStream(slowReader
+                        ? new ThrottledInputStream(raw, settings.slowBytesPerSecond)
+                        : new BufferedInputStream(raw, 64 * 1024));
+                return;
+            }
+            if (current != '\r') {
+                previous = current;
+            }
+        }
+        throw new IOException("Handshake cut short");
+    }
+
+    /**
+     * Plays one video to the end of its stream
+     */
+    private void play(String video) throws IOException {
+
+        int stream;
+        long now = System.nanoTime();
+
+        synchronized (this) {
+
+            stream = ++streamId;
+            buffered = 0;
+            played = 0;
+            playing = false;
+            requested = now;
+            grants.clear();
+
+            //The initial window is paid for by the request itself
+            for (int n = 0; n < settings.bufferFrames; n++) {
+                grants.addLast(now);
+            }
+        }
+
+        statistics.streams.increment();
+
+        byte[] path = video.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer request = ByteBuffer.allocate(13 + path.length);
+        request.put((byte) (FlareOpCode.OPEN_VIDEO | FlareOpCode.STREAM_FLAG));
+        request.putInt(stream);
+        request.put((byte) 128);
+        request.putInt(7 + path.length);
+        request.put((byte) path.length);
+        request.put(path);
+        request.put((byte) (OpenVideoTask.FLAG_CREDIT | (deltas ? OpenVideoTask.FLAG_DELTA : 0)));
+        send(request.array());
+        credit(stream, settings.bufferFrames);
+
+        while (running) {
+
+            byte[] message = receive();
+            statistics.bytes.add(message.length);
+
+            byte opCode = message[4];
+            int body = 5;
+            if ((opCode & FlareOpCode.STREAM_FLAG) != 0) {
+                opCode &= ~FlareOpCode.STREAM_FLAG;
+                body = 9;
+                if (ByteBuffer.wrap(message, 5, 4).getInt() != stream) {
+                    continue;
+                }
+            }
+
+            if (opCode == FlareOpCode.FRAME || opCode == FlareOpCode.FRAME_DELTA || opCode == FlareOpCode.REPEAT_FRAME) {
+
+                frameReceived();
+
+            } else if (opCode == FlareOpCode.OPEN_VIDEO) {
+
+                if (message[body] == 0) {
+                    statistics.unavailable.increment();
+                }
+
+            } else if (opCode == FlareOpCode.END_STREAM) {
+
+                streamEnded(message[body]);
+                return;
+            }
+        }
+    }
+
+    private void frameReceived() {
+
+        long now = System.nanoTime();
+        statistics.frames.increment();
+
+        synchronized (this) {
+
+            Long granted = grants.pollFirst();
+            if (granted != null) {
+                statistics.frameLatency.recordValue((now - granted) / 1000);
+            }
+
+            if (!playing) {
+                playing = true;
+                firstFrame = now;
+                statistics.timeToFirstFrame.recordValue((now - requested) / 1000);
+            }
+            buffered++;
+        }
+    }
+
+    private void streamEnded(byte status) {
+
+        synchronized (this) {
+
+            playing = false;
+
+            double seconds = (System.nanoTime() - firstFrame) / 1e9;
+            if (played > 0 && seconds >= 1) {
+                statistics.addStreamFps(played / seconds);
+            }
+        }
+
+        if (status == EndStreamMessage.COMPLETE) {
+            statistics.completed.increment();
+        } else if (status == EndStreamMessage.REFUSED) {
+            statistics.refused.increment();
+        } else {
+            statistics.failed.increment();
+        }
+    }
+
+    private void credit(int stream, int frames) throws IOException {
+
+        ByteBuffer credit = ByteBuffer.allocate(18);
+        credit.put((byte) (FlareOpCode.CREDIT | FlareOpCode.STREAM_FLAG));
+        credit.putInt(stream);
+        credit.put((byte) 0);
+        credit.putInt(13);
+        credit.putInt(frames);
+        credit.putInt(0);
+        send(credit.array());
+    }
+
+    /**
+     * Writes one masked binary frame, requests are always below 126 bytes
+     */
+    private void send(byte[] payload) throws IOException {
+
+        synchronized (sendLock) {
+
+            random.nextBytes(mask);
+            byte[] frame = new byte[6 + payload.length];
+            frame[0] = (byte) 0x82;
+            frame[1] = (byte) (0x80 | payload.length);
+            System.arraycopy(mask, 0, frame, 2, 4);
+            for (int n = 0; n < payload.length; n++) {
+                frame[6 + n] = (byte) (payload[n] ^ mask[n % 4]);
+            }
+
+            if (out == null) {
+                throw new IOException("Not connected");
+            }
+            out.write(frame);
+        }
+    }
+
+    private byte[] receive() throws IOException {
+
+        in.readUnsignedByte();
+        long length = in.readUnsignedByte() & 0x7f;
+        if (length == 126) {
+            length = in.readUnsignedShort();
+        } else if (length == 127) {
+            length = in.readLong();
+        }
+
+        byte[] payload = new byte[(int) length];
+        in.readFully(payload);
+        return payload;
+    }
+
+    private void close() {
+
+        Socket socket = this.socket;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                //Closing anyway
+            }
+        }
+    }
+
+    private static void sleepUntil(long deadline) {
+
+        long wait;
+        while ((wait = deadline - System.nanoTime()) > 0) {
+            try {
+                Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads no faster than a given rate, the server sees a slow consumer
+     */
+    private static final class ThrottledInputStream extends FilterInputStream {
+
+        private final long bytesPerSecond;
+        private final long start = System.nanoTime();
+        private long read;
+
+        ThrottledInputStream(InputStream in, long bytesPerSecond) {
+            super(in);
+            this.bytesPerSecond = Math.max(1, bytesPerSecond);
+        }
+
+        @Override
+        public int read() throws IOException {
+            throttle();
+            int value = super.read();
+            if (value >= 0) {
+                read++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            throttle();
+            int count = super.read(buffer, offset, (int) Math.min(length, Math.max(1, bytesPerSecond / 20)));
+            if (count > 0) {
+                read += count;
+            }
+            return count;
+        }
+
+        private void throttle() {
+            sleepUntil(start + read * 1000000000L / bytesPerSecond);
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+package Benchmark;
+
+import Core.FlareConfiguration;
+import FlareMedia.RenditionIngest;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+/**
+ * Generates video directories for the benchmarks: JPEG frames of a moving
+ * scene, a meta.txt, random bytes standing in for the audio, then the
+ * renditions, hashes and deltas of a regular ingest.
+ *
+ * @author Team 2
+ */
+public class SyntheticVideo {
+
+    /**
+     * Draws one frame, a gradient with a block moving across it
+     *
+     * @param n frame index
+     * @param width frame width
+     * @param height frame height
+     * @return the frame
+     */
+    public static BufferedImage frame(int n, int width, int height) {
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = image.createGraphics();
+
+        graphics.setPaint(new GradientPaint(0, 0, Color.DARK_GRAY, width, height, Color.ORANGE));
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(Color.CYAN);
+        graphics.fillRect((n * 8) % width, height / 3, width / 8, height / 3);
+        graphics.setColor(Color.WHITE);
+        graphics.drawString("frame " + n, 20, 40);
+        graphics.dispose();
+
+        return image;
+    }
+
+    /**
+     * Writes a video directory and ingests it
+     *
+     * @param directory video directory, created or overwritten
+     * @param frameCount number of frames
+     * @param width frame width
+     * @param height frame height
+     * @param fps frames per second
+     * @param audioBytes size of the audio file, 0 for none
+     * @throws IOException if the directory cannot be written
+     */
+    public static void create(Path directory, int frameCount, int width, int height, double fps, int audioBytes)
+            throws IOException {
+
+        Files.createDirectories(directory);
+
+        for (int n = 0; n < frameCount; n++) {
+            ImageIO.write(frame(n, width, height), "jpg", directory.resolve("frame" + n + ".jpg").toFile());
+        }
+
+        if (audioBytes > 0) {
+            byte[] audio = new byte[audioBytes];
+            new Random(1).nextBytes(audio);
+            Files.write(directory.resolve("audio.m4a"), audio);
+        }
+
+        String meta = frameCount + "\n" + width + "\n" + height + "\n" + (int) fps + "\n"
+                + Math.round(frameCount * 1000 / fps) + "\n";
+        Files.write(directory.resolve("meta.txt"), meta.getBytes(Charset.forName("UTF-8")));
+
+        RenditionIngest ingest = new RenditionIngest(RenditionIngest.parseHeights(FlareConfiguration.INGEST_HEIGHTS),
+                FlareConfiguration.INGEST_QUALITY, FlareConfiguration.INGEST_PARALLELISM);
+        try {
+            ingest.ingestVideo(directory, frameCount, width, height);
+        } finally {
+            ingest.shutdown();
+        }
+    }
+
+}
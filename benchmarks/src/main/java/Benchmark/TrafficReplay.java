@@ -0,0 +1,355 @@
+package Benchmark;
+
+import FlareProtocol.FlareOpCode;
+import Utility.TrafficCapture;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Plays sessions recorded with flare.capture.dir against a running server.
+ * Every session connects at its original offset from the first one and
+ * sends its messages at their original offsets, so the opens, credit
+ * grants, seeks and reconnects of real viewers reach the server in the
+ * shape they had in production. --speed compresses time, 2 replays twice as
+ * fast.
+ *
+ *     java -cp target/benchmarks.jar Benchmark.TrafficReplay --speed 4 captures/
+ *
+ * Options, with their defaults:
+ * <pre>
+ * --speed 1           playback speed of the recorded time line
+ * --host 127.0.0.1    server address
+ * --port 6661         server port
+ * </pre>
+ * followed by capture files or directories holding them.
+ *
+ * Responses are read and counted but do not steer the replay. Resume tokens
+ * and admin logins of the captures do not carry over, such requests are
+ * answered with errors. The report gives how late messages went out
+ * against the schedule, a large lag means the replay machine fell behind
+ * and the run does not reproduce the capture.
+ *
+ * @author Team 2
+ */
+public class TrafficReplay {
+
+    // Sent request to the first reply on its stream
+    private static final Histogram firstResponse = new ConcurrentHistogram(3);
+
+    // Scheduled to actual send time of each message
+    private static final Histogram sendLag = new ConcurrentHistogram(3);
+
+    private static final LongAdder sent = new LongAdder();
+    private static final LongAdder sentBytes = new LongAdder();
+    private static final LongAdder received = new LongAdder();
+    private static final LongAdder receivedBytes = new LongAdder();
+    private static final LongAdder frames = new LongAdder();
+    private static final LongAdder connected = new LongAdder();
+    private static final LongAdder errors = new LongAdder();
+
+    /**
+     * Entry point
+     *
+     * @param args options and captures, see the class comment
+     * @throws Exception if the captures cannot be read
+     */
+    public static void main(String[] args) throws Exception {
+
+        Map<String, String> options = new HashMap<String, String>();
+        List<Path> paths = new ArrayList<Path>();
+        for (int n = 0; n < args.length; n++) {
+            if (args[n].startsWith("--")) {
+                boolean hasValue = n + 1 < args.length && !args[n + 1].startsWith("--");
+                options.put(args[n].substring(2), hasValue ? args[++n] : "true");
+            } else {
+                paths.add(Paths.get(args[n]));
+            }
+        }
+
+        double speed = Double.parseDouble(options.getOrDefault("speed", "1"));
+        String host = options.getOrDefault("host", "127.0.0.1");
+        int port = Integer.parseInt(options.getOrDefault("port", "6661"));
+
+        List<TrafficCapture.Session> sessions = load(paths);
+        if (sessions.isEmpty()) {
+            System.out.println("No captures given");
+            System.exit(2);
+        }
+        sessions.sort(Comparator.comparingLong(TrafficCapture.Session::getConnectedAt));
+
+        System.out.printf("Replaying %d sessions at %.1fx against %s:%d%n", sessions.size(), speed, host, port);
+
+        long first = sessions.get(0).getConnectedAt();
+        long start = System.nanoTime() + 100000000L;
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (TrafficCapture.Session session : sessions) {
+
+            long connectAt = start + (long) ((session.getConnectedAt() - first) * 1e6 / speed);
+            Replayer replayer = new Replayer(session, host, port, speed, connectAt);
+            Thread thread = new Thread(replayer, "flare-replay-" + session.getSessionId());
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        report((System.nanoTime() - start) / 1e9);
+    }
+
+    private static List<TrafficCapture.Session> load(List<Path> paths) throws IOException {
+
+        List<TrafficCapture.Session> sessions = new ArrayList<TrafficCapture.Session>();
+
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*.flarecap")) {
+                    for (Path file : files) {
+                        sessions.add(TrafficCapture.read(file));
+                    }
+                }
+            } else {
+                sessions.add(TrafficCapture.read(path));
+            }
+        }
+        return sessions;
+    }
+
+    private static void report(double seconds) {
+
+        System.out.println();
+        System.out.printf("Replayed in %.1f s, %d connections, %d errors%n", seconds, connected.sum(), errors.sum());
+        System.out.printf("Sent %d messages, %d bytes%n", sent.sum(), sentBytes.sum());
+        System.out.printf("Received %d messages, %d frames, %.1f MB/s%n",
+                received.sum(), frames.sum(), receivedBytes.sum() / seconds / 1e6);
+        LoadGenerator.printHistogram("First response", firstResponse);
+        LoadGenerator.printHistogram("Send lag", sendLag);
+    }
+
+    /**
+     * Plays one session on a connection of its own
+     */
+    private static final class Replayer implements Runnable {
+
+        private final TrafficCapture.Session session;
+        private final String host;
+        private final int port;
+        private final double speed;
+        private final long connectAt;
+        private final Random random = new Random();
+        private final byte[] mask = new byte[4];
+
+        // Streams waiting for their first reply, with the request time
+        private final Map<Integer, Long> pending = new ConcurrentHashMap<Integer, Long>();
+        private final Set<Integer> opened = new HashSet<Integer>();
+
+        private Socket socket;
+        private OutputStream out;
+        private DataInputStream in;
+
+        Replayer(TrafficCapture.Session session, String host, int port, double speed, long connectAt) {
+            this.session = session;
+            this.host = host;
+            this.port = port;
+            this.speed = speed;
+            this.connectAt = connectAt;
+        }
+
+        @Override
+        public void run() {
+
+            sleepUntil(connectAt);
+
+            try {
+
+                connect();
+                connected.increment();
+
+                Thread reader = new Thread(this::read, Thread.currentThread().getName() + "-read");
+                reader.setDaemon(true);
+                reader.start();
+
+                for (TrafficCapture.Record record : session.getRecords()) {
+
+                    long due = connectAt + (long) (record.getOffsetNanos() / speed);
+                    sleepUntil(due);
+                    sendLag.recordValue(Math.max(0, System.nanoTime() - due) / 1000);
+
+                    //The client went away here, or the capture ends
+                    if (record.getType() == TrafficCapture.END) {
+                        break;
+                    }
+                    send(record.getType(), record.getPayload());
+                }
+
+            } catch (IOException ex) {
+                errors.increment();
+            } finally {
+                close();
+            }
+        }
+
+        private void connect() throws IOException {
+
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(host, port), 5000);
+            socket.setTcpNoDelay(true);
+            out = socket.getOutputStream();
+
+            byte[] key = new byte[16];
+            random.nextBytes(key);
+            String upgrade = "GET / HTTP/1.1\r\nHost: " + host + "\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                    + "Sec-WebSocket-Key: " + Base64.getEncoder().encodeToString(key) + "\r\nSec-WebSocket-Version: 13\r\n\r\n";
+            out.write(upgrade.getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            //The server ends its response with an empty line, \n or \r\n
+            InputStream raw = socket.getInputStream();
+            int previous = 0;
+            int current;
+            while ((current = raw.read()) != -1) {
+                if (current == '\n' && previous == '\n') {
+                    in = new DataInputStream(new BufferedInputStream(raw, 64 * 1024));
+                    return;
+                }
+                if (current != '\r') {
+                    previous = current;
+                }
+            }
+            throw new IOException("Handshake cut short");
+        }
+
+        /**
+         * Writes one masked frame, the payload as the client sent it
+         */
+        private void send(byte type, byte[] payload) throws IOException {
+
+            //The first request of a stream opens it, later ones only steer it
+            if (type == TrafficCapture.BINARY && payload.length >= 5 && (payload[0] & FlareOpCode.STREAM_FLAG) != 0) {
+                int stream = ByteBuffer.wrap(payload, 1, 4).getInt();
+                if (opened.add(stream)) {
+                    pending.put(stream, System.nanoTime());
+                }
+            }
+
+            ByteBuffer frame = ByteBuffer.allocate(14 + payload.length);
+            frame.put((byte) (0x80 | type));
+            if (payload.length < 126) {
+                frame.put((byte) (0x80 | payload.length));
+            } else if (payload.length <= 0xFFFF) {
+                frame.put((byte) (0x80 | 126));
+                frame.putShort((short) payload.length);
+            } else {
+                frame.put((byte) (0x80 | 127));
+                frame.putLong(payload.length);
+            }
+
+            random.nextBytes(mask);
+            frame.put(mask);
+            for (int n = 0; n < payload.length; n++) {
+                frame.put((byte) (payload[n] ^ mask[n % 4]));
+            }
+
+            out.write(frame.array(), 0, frame.position());
+            sent.increment();
+            sentBytes.add(payload.length);
+        }
+
+        /**
+         * Reader thread, counts the replies until the connection closes
+         */
+        private void read() {
+
+            try {
+                while (true) {
+
+                    int opCode = in.readUnsignedByte() & 0x0F;
+                    long length = in.readUnsignedByte() & 0x7F;
+                    if (length == 126) {
+                        length = in.readUnsignedShort();
+                    } else if (length == 127) {
+                        length = in.readLong();
+                    }
+
+                    byte[] message = new byte[(int) length];
+                    in.readFully(message);
+                    received.increment();
+                    receivedBytes.add(length);
+
+                    if (opCode != TrafficCapture.BINARY || message.length < 5) {
+                        continue;
+                    }
+
+                    byte flareOpCode = message[4];
+                    if ((flareOpCode & FlareOpCode.STREAM_FLAG) != 0 && message.length >= 9) {
+                        flareOpCode &= ~FlareOpCode.STREAM_FLAG;
+                        Long requested = pending.remove(ByteBuffer.wrap(message, 5, 4).getInt());
+                        if (requested != null) {
+                            firstResponse.recordValue((System.nanoTime() - requested) / 1000);
+                        }
+                    }
+
+                    if (flareOpCode == FlareOpCode.FRAME || flareOpCode == FlareOpCode.FRAME_DELTA
+                            || flareOpCode == FlareOpCode.REPEAT_FRAME) {
+                        frames.increment();
+                    }
+                }
+            } catch (IOException ex) {
+                //Connection closed by the replay or the server
+            }
+        }
+
+        private void close() {
+
+            Socket socket = this.socket;
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ex) {
+                    //Closing anyway
+                }
+            }
+        }
+    }
+
+    private static void sleepUntil(long deadline) {
+
+        long wait;
+        while ((wait = deadline - System.nanoTime()) > 0) {
+            try {
+                Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package Benchmark;
+
+import WebSocket.Message.WebSocketMessage;
+import WebSocket.WebSocket;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decode path of the WebSocket codec: getMessage reading one masked client
+ * frame through ProcessBinaryFrame or ProcessTextFrame. The frame handlers
+ * only read 7 bit lengths, so payloads stop at 125 bytes, which covers
+ * every flare request.
+ *
+ * @author Team 2
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class WebSocketDecodeBenchmark {
+
+    @Param({"0", "16", "64", "125"})
+    public int payloadSize;
+
+    private MemorySocket binarySocket;
+    private MemorySocket textSocket;
+
+    @Setup
+    public void setup() throws IOException {
+
+        byte[] payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'a');
+
+        binarySocket = new MemorySocket(MemorySocket.clientFrame(WebSocket.OP_CODE.BINARY, payload));
+        textSocket = new MemorySocket(MemorySocket.clientFrame(WebSocket.OP_CODE.TEXT, payload));
+    }
+
+    @Benchmark
+    public WebSocketMessage getBinaryMessage() throws IOException {
+        return binarySocket.getMessage();
+    }
+
+    @Benchmark
+    public WebSocketMessage getTextMessage() throws IOException {
+        return textSocket.getMessage();
+    }
+
+}
@@ -0,0 +1,75 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encode path of the WebSocket codec: framing a payload and writing it to
+ * the socket stream. Sizes cover each length encoding, 7, 16 and 64 bit,
+ * up to a large frame.
+ *
+ * @author Team 2
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class WebSocketEncodeBenchmark {
+
+    @Param({"16", "1024", "65536", "1048576"})
+    public int payloadSize;
+
+    private MemorySocket socket;
+    private byte[] payload;
+    private String text;
+    private ByteBuffer header;
+    private ByteBuffer[] body;
+
+    @Setup
+    public void setup() throws IOException {
+
+        socket = new MemorySocket(new byte[0]);
+        payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'a');
+        text = new String(payload, StandardCharsets.US_ASCII);
+
+        //A flare message: short header, body sent without copying
+        header = ByteBuffer.allocate(Math.min(9, payloadSize));
+        body = new ByteBuffer[]{ByteBuffer.wrap(payload, header.capacity(), payloadSize - header.capacity())};
+    }
+
+    @Benchmark
+    public long sendBinaryData() throws IOException {
+        socket.sendBinaryData(payload);
+        return socket.getWritten();
+    }
+
+    @Benchmark
+    public long sendBinarySlices() throws IOException {
+        socket.sendBinaryData(header, body);
+        return socket.getWritten();
+    }
+
+    @Benchmark
+    public long sendTextData() throws IOException {
+        socket.sendTextData(text);
+        return socket.getWritten();
+    }
+
+}
@@ -0,0 +1,224 @@
+package Core;
+
+import FlareMedia.FrameCache;
+import FlareMedia.MediaStore;
+import FlareMetrics.RequestTrace;
+import FlareMetrics.ServerMetrics;
+import FlareMetrics.SlowRequestLog;
+import Utility.AsyncLog;
+import Utility.JsonWriter;
+import Utility.SingleFlight;
+import Utility.Stage;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admin queries sent as text frames, one command per frame, answered with
+ * one JSON text frame:
+ *
+ * AUTH admin password      logs the connection in, see FlareMediaServerAuthentificator
+ * STATS [slowest]          snapshot of the server, needs AUTH first
+ *
+ * The snapshot lists the slowest requests of the last minute and the latest
+ * ones over the slow threshold, each with the stages it went through.
+ *
+ * Errors come back as {"error": "..."}. The snapshot only reads striped
+ * counters and volatile fields, so polling it never holds up playback.
+ *
+ * @author Team 2
+ */
+public class AdminQuery {
+
+    private static final int DEFAULT_SLOWEST = 10;
+
+    private final FlareClient client;
+    private boolean authenticated;
+
+    /**
+     * Constructor
+     *
+     * @param client connection the queries arrive on
+     */
+    public AdminQuery(FlareClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Answers one command
+     *
+     * @param command text of the frame
+     * @return JSON reply
+     */
+    public String answer(String command) {
+
+        StringTokenizer tokens = new StringTokenizer(command == null ? "" : command);
+        String verb = tokens.hasMoreTokens() ? tokens.nextToken().toUpperCase() : "";
+
+        if (verb.equals("AUTH")) {
+
+            String admin = tokens.hasMoreTokens() ? tokens.nextToken() : "";
+            String password = tokens.hasMoreTokens() ? tokens.nextToken() : "";
+            authenticated = FlareMediaServerAuthentificator.serverAuthentification(admin, password);
+            if (!authenticated) {
+                AsyncLog.warn("Admin login failed for client {}", client.getId());
+                return error("authentication failed");
+            }
+            return new JsonWriter().beginObject().name("auth").value(true).endObject().toString();
+        }
+
+        if (verb.equals("STATS")) {
+
+            if (!authenticated) {
+                return error("not authenticated");
+            }
+
+            int slowest = DEFAULT_SLOWEST;
+            if (tokens.hasMoreTokens()) {
+                try {
+                    slowest = Math.max(0, Integer.parseInt(tokens.nextToken()));
+                } catch (NumberFormatException ex) {
+                    return error("slowest must be a number");
+                }
+            }
+            return snapshot(slowest);
+        }
+
+        return error("unknown command");
+    }
+
+    private static String error(String message) {
+        return new JsonWriter().beginObject().name("error").value(message).endObject().toString();
+    }
+
+    /**
+     * Server state as JSON
+     *
+     * @param slowest number of slowest recent requests to list
+     * @return JSON snapshot
+     */
+    public static String snapshot(int slowest) {
+
+        ServerMetrics server = ServerMetrics.getInstance();
+        JsonWriter json = new JsonWriter();
+
+        json.beginObject();
+        json.name("time").value(System.currentTimeMillis());
+
+        json.name("server").beginObject()
+                .name("activeSessions").value(server.getActiveSessions())
+                .name("accepted").value(server.getAccepted())
+                .name("acceptRate").value(server.getAcceptRate())
+                .name("handshakes").value(server.getHandshakes())
+                .name("runningTasks").value(server.getRunningTasks())
+                .name("tasksStarted").value(server.getTasksStarted())
+                .name("framesSent").value(server.getFramesSent())
+                .name("frameRate").value(server.getFrameRate())
+                .name("bytesSent").value(server.getBytesSent())
+                .name("byteRate").value(server.getByteRate())
+                .endObject();
+
+        json.name("sessions").beginArray();
+        for (FlareClient session : FlareClient.getSessions()) {
+            json.beginObject()
+                    .name("id").value(session.getId())
+                    .name("remote").value(session.getRemoteAddress())
+                    .name("connectedAt").value(session.getConnectedAt())
+                    .name("streams").value(session.getStreamTable().size())
+                    .name("bytesSent").value(session.getBytesSent().getCount())
+                    .name("byteRate").value(session.getBytesSent().getRate())
+                    .name("framesSent").value(session.getFramesSent().getCount())
+                    .name("frameRate").value(session.getFramesSent().getRate())
+                    .name("loadsQueued").value(session.getLoadShare().getQueued())
+                    .endObject();
+        }
+        json.endArray();
+
+        FrameCache cache = MediaStore.getFrameCache();
+        long lookups = cache.getHits() + cache.getMisses();
+        json.name("caches").beginObject();
+        json.name("frames").beginObject()
+                .name("hits").value(cache.getHits())
+                .name("misses").value(cache.getMisses())
+                .name("hitRate").value(lookups == 0 ? 0.0 : (double) cache.getHits() / lookups)
+                .name("bytes").value(cache.getSize())
+                .endObject();
+        singleFlight(json, "audioLoads", MediaStore.getAudioLoads());
+        singleFlight(json, "frameLoads", MediaStore.getFrameLoads());
+        singleFlight(json, "deltaLoads", MediaStore.getDeltaLoads());
+        singleFlight(json, "thumbnailLoads", MediaStore.getThumbnailLoads());
+        singleFlight(json, "metadataLoads", MediaStore.getMetadataLoads());
+        json.endObject();
+
+        json.name("queues").beginObject()
+                .name("outbound").value(server.getOutboundQueued())
+                .name("sendGateWaiting").value(server.getSendGateWaiting());
+        json.name("stages").beginArray();
+        for (Stage.Statistics stage : Stage.getAll()) {
+            json.beginObject()
+                    .name("name").value(stage.getName())
+                    .name("threads").value(stage.getThreads())
+                    .name("active").value(stage.getActive())
+                    .name("queued").value(stage.getQueued())
+                    .name("completed").value(stage.getCompleted())
+                    .name("rejected").value(stage.getRejected())
+                    .name("meanWaitMillis").value(stage.getMeanWaitMillis())
+                    .name("meanServiceMillis").value(stage.getMeanServiceMillis())
+                    .endObject();
+        }
+        json.endArray().endObject();
+
+        json.name("slowestRequests").beginArray();
+        for (SlowRequestLog.Request request : SlowRequestLog.getSlowest(slowest)) {
+            json.beginObject()
+                    .name("session").value(request.getSession())
+                    .name("opCode").value(request.getOpCode())
+                    .name("stream").value(request.getStream())
+                    .name("ageMillis").value(request.getAgeMillis())
+                    .name("queuedMillis").value(toMillis(request.getQueuedNanos()))
+                    .name("responseMillis").value(toMillis(request.getResponseNanos()))
+                    .name("totalMillis").value(toMillis(request.getTotalNanos()));
+            stages(json, request.getTrace());
+            json.endObject();
+        }
+        json.endArray();
+
+        json.name("slowLog").beginArray();
+        for (SlowRequestLog.Request request : SlowRequestLog.getSlowLog(slowest)) {
+            json.beginObject()
+                    .name("session").value(request.getSession())
+                    .name("opCode").value(request.getOpCode())
+                    .name("stream").value(request.getStream())
+                    .name("ageMillis").value(request.getAgeMillis())
+                    .name("responseMillis").value(toMillis(request.getResponseNanos()));
+            stages(json, request.getTrace());
+            json.endObject();
+        }
+        json.endArray();
+
+        json.endObject();
+        return json.toString();
+    }
+
+    private static void stages(JsonWriter json, RequestTrace trace) {
+        json.name("stages").beginArray();
+        for (int n = 0; n < trace.getStageCount(); n++) {
+            json.beginObject()
+                    .name("stage").value(trace.getStage(n))
+                    .name("atMillis").value(toMillis(trace.getOffsetNanos(n)))
+                    .endObject();
+        }
+        json.endArray();
+    }
+
+    private static void singleFlight(JsonWriter json, String name, SingleFlight<?, ?> loads) {
+        json.name(name).beginObject()
+                .name("loads").value(loads.getLoads())
+                .name("coalesced").value(loads.getCoalesced())
+                .endObject();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+}
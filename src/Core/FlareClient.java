@@ -1,8 +1,22 @@
 package Core;
 
+import FlareMessage.EndStreamMessage;
+import FlareMedia.LoadScheduler;
+import FlareMessage.FlareMessage;
+import FlareMetrics.Meter;
+import FlareMetrics.RequestTrace;
+import FlareMetrics.ServerMetrics;
+import FlareMetrics.SlowRequestLog;
+import FlareMetrics.TaskDispatchEvent;
 import FlareProtocol.FlareOpCode;
 import FlareTask.FlareTask;
+import Utility.AsyncLog;
+import Utility.TrafficCapture;
 import FlareProtocol.TaskTable;
+import FlareStream.BandwidthEstimator;
+import FlareStream.LogicalStream;
+import FlareStream.ResumableSession;
+import FlareStream.StreamTable;
 import WebSocket.Message.WebSocketBinaryMessage;
 import WebSocket.WebSocket;
 import WebSocket.Message.WebSocketMessage;
@@ -18,12 +32,16 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
@@ -52,6 +70,21 @@ public class FlareClient implements Runnable {
     private boolean running = true;
     BufferedReader in;
     private Queue<FlareTask> taskeQueue;
+    private final BandwidthEstimator bandwidthEstimator = new BandwidthEstimator(FlareConfiguration.ABR_WINDOW);
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(HEADER_BUFFER_LENGTH);
+    private final StreamTable streams = new StreamTable(this);
+    private final LoadScheduler.Share loadShare;
+    private final long connectedAt = System.currentTimeMillis();
+    private final Meter bytesSent = new Meter();
+    private final Meter framesSent = new Meter();
+    private final AdminQuery adminQuery = new AdminQuery(this);
+    private TrafficCapture capture;
+
+    //Clients connected right now, for the admin stats query
+    private static final Set<FlareClient> sessions = ConcurrentHashMap.newKeySet();
+
+    //Longer headers, such as a catalog page, get a buffer of their own
+    private static final int HEADER_BUFFER_LENGTH = 4096;
 
     //This is our table to look up handlers for each WebSocketMessage
     private static final Map<Byte, Class> messageTable = initializeTable();
@@ -95,11 +128,13 @@ public class FlareClient implements Runnable {
     public FlareClient(String sessionId, WebSocket clientSocket) throws IOException {
         this.sessionId = sessionId;
         this.clientSocket = clientSocket;
+        clientSocket.setSessionId(sessionId);
 
         inputStream = clientSocket.getInputStream();
         outputStream = clientSocket.getOutputStream();
         dataInputStream = new DataInputStream(inputStream);
         in = new BufferedReader(new InputStreamReader(inputStream));
+        loadShare = LoadScheduler.getInstance().open("client-" + sessionId, FlareConfiguration.LOAD_SESSION_WEIGHT);
 
     }
 
@@ -120,8 +155,171 @@ public class FlareClient implements Runnable {
      */
     public void sendBinaryData(byte[] data) throws IOException {
         //System.out.println("data length is  " +  data.length);
-        clientSocket.sendBinaryData(data);
+        //Watch party subscribers send from their own thread
+        long requested = System.nanoTime();
+        synchronized (clientSocket) {
+            long start = System.nanoTime();
+            clientSocket.sendBinaryData(data, requested);
+            long elapsed = System.nanoTime() - start;
+            bandwidthEstimator.record(data.length, elapsed);
+            ServerMetrics.sent(data.length > 4 ? data[4] : -1, data.length, elapsed);
+            countSent(data.length > 4 ? data[4] : -1, data.length);
+        }
+
+    }
+
+    /**
+     * Sends a message without copying its payload. The header is written
+     * into a buffer reused for every message of this client.
+     *
+     * @param message message to send
+     * @throws IOException if cannot write to output
+     */
+    public void sendMessage(FlareMessage message) throws IOException {
+
+        long requested = System.nanoTime();
+        synchronized (clientSocket) {
+
+            long acquired = System.nanoTime();
+            int headerLength = message.getHeaderLength();
+            ByteBuffer header = headerLength <= headerBuffer.capacity() ? headerBuffer : ByteBuffer.allocate(headerLength);
+
+            long start = System.nanoTime();
+            header.clear();
+            message.writeHeader(header);
+            header.flip();
+            ServerMetrics.encoded(header.get(4), System.nanoTime() - start);
+
+            //Only waiting for the lock counts as blocked, not the encoding
+            sendBuffers(header, message.getPayload(), 0, requested + System.nanoTime() - acquired);
+        }
+
+    }
+
+    /**
+     * Sends an already serialized message, see FlareMessage.toBuffers. The
+     * buffers are not modified and may be shared with other clients, they
+     * go out without being copied.
+     *
+     * @param buffers message header followed by the payload slices
+     * @throws IOException if cannot write to output
+     */
+    public void sendMessage(ByteBuffer[] buffers) throws IOException {
+
+        sendBuffers(buffers[0], buffers, 1, System.nanoTime());
+
+    }
+
+    private void sendBuffers(ByteBuffer header, ByteBuffer[] payload, int offset, long requested) throws IOException {
+
+        long length = header.remaining();
+        for (int n = offset; n < payload.length; n++) {
+            length += payload[n].remaining();
+        }
+
+        synchronized (clientSocket) {
+            long start = System.nanoTime();
+            clientSocket.sendBinaryData(header, payload, offset, requested);
+            long elapsed = System.nanoTime() - start;
+            bandwidthEstimator.record(length, elapsed);
+            ServerMetrics.sent(header.get(header.position() + 4), length, elapsed);
+            countSent(header.get(header.position() + 4), length);
+        }
+
+    }
+
+    private void countSent(byte opCode, long length) {
+        bytesSent.mark(length);
+        if (ServerMetrics.isFrame(opCode)) {
+            framesSent.mark();
+        }
+    }
+
+    /**
+     * Sends a text message over websocket
+     *
+     * @param text text to send
+     * @throws IOException if cannot write to output
+     */
+    public void sendText(String text) throws IOException {
+
+        synchronized (clientSocket) {
+            clientSocket.sendTextData(text);
+            bytesSent.mark(text.length());
+        }
+
+    }
+
+    /**
+     * Clients connected right now
+     *
+     * @return live view of the connected clients
+     */
+    public static Collection<FlareClient> getSessions() {
+        return Collections.unmodifiableSet(sessions);
+    }
+
+    /**
+     * When the client connected
+     *
+     * @return time in ms since the epoch
+     */
+    public long getConnectedAt() {
+        return connectedAt;
+    }
+
+    /**
+     * Address the client connected from
+     *
+     * @return remote address as text
+     */
+    public String getRemoteAddress() {
+        return String.valueOf(clientSocket.getRemoteSocketAddress());
+    }
+
+    /**
+     * Bytes sent to this client and their recent rate
+     *
+     * @return meter of the bytes sent
+     */
+    public Meter getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Frames sent to this client and their recent rate
+     *
+     * @return meter of the frames sent
+     */
+    public Meter getFramesSent() {
+        return framesSent;
+    }
 
+    /**
+     * Logical streams open on this connection
+     *
+     * @return the stream table of this session
+     */
+    public StreamTable getStreamTable() {
+        return streams;
+    }
+
+    /**
+     * Part of the loader threads this session gets for its disk reads
+     *
+     * @return the load share of this session
+     */
+    public LoadScheduler.Share getLoadShare() {
+        return loadShare;
+    }
+
+    /**
+     * Throughput estimate of this client's connection, updated on every send
+     *
+     * @return the bandwidth estimator of this session
+     */
+    public BandwidthEstimator getBandwidthEstimator() {
+        return bandwidthEstimator;
     }
 
     /**
@@ -131,11 +329,18 @@ public class FlareClient implements Runnable {
     @Override
     public void run() {
 
+        ServerMetrics.sessionOpened();
+        sessions.add(this);
+        capture = TrafficCapture.open(sessionId, connectedAt);
+
         while (running) {
             try {
 
                 WebSocketMessageHandler messageHandler = null;
                 WebSocketMessage message = clientSocket.getMessage();
+                if (capture != null) {
+                    capture.record(message);
+                }
                 Class messageClass = FlareClient.messageTable.get(message.getOpcode());
 
                 try {
@@ -150,9 +355,27 @@ public class FlareClient implements Runnable {
 
             } catch (IOException e) {
 
+                //Connection is gone, resumable playbacks keep their grace period
+                running = false;
+                AsyncLog.info("Client {} disconnected: {}", sessionId, e);
             }
 
         }
+
+        streams.cancelAll();
+        loadShare.close();
+        sessions.remove(this);
+        if (capture != null) {
+            capture.close();
+        }
+        bytesSent.close();
+        framesSent.close();
+        ServerMetrics.sessionClosed();
+        try {
+            clientSocket.close();
+        } catch (IOException ex) {
+            Logger.getLogger(FlareClient.class.getName()).log(Level.SEVERE, null, ex);
+        }
     }
 
     /**
@@ -186,10 +409,18 @@ public class FlareClient implements Runnable {
     public class TextMessageHandler extends WebSocketMessageHandler {
 
         /**
-         * Not needed for now since using binary only
+         * Text frames carry admin queries, see AdminQuery. The reply goes
+         * back as a text frame.
          */
         public void process() {
-            //Do Nothing, not using text 
+
+            String text = ((WebSocketTextMessage) message).getText();
+
+            try {
+                sendText(adminQuery.answer(text));
+            } catch (IOException ex) {
+                Logger.getLogger(FlareClient.class.getName()).log(Level.SEVERE, null, ex);
+            }
         }
 
         //END TESTING
@@ -203,25 +434,152 @@ public class FlareClient implements Runnable {
     public class BinaryMessageHandler extends WebSocketMessageHandler {
 
         /**
-         * Processes the binary message here
+         * Processes the binary message here. Requests without a stream id
+         * run right here on the connection stream, one at a time as before.
+         * Requests with a stream id open a stream and run on their own
+         * thread, so the connection keeps reading while they are served.
          */
         public void process() {
 
             //System.out.println();
-            byte flareOpCode = ((WebSocketBinaryMessage) message).getData()[0];
+            byte[] data = ((WebSocketBinaryMessage) message).getData();
+            byte flareOpCode = data[0];
+
+            AsyncLog.debug("flare op code is {}", flareOpCode);
+            ServerMetrics.decoded(flareOpCode);
+
+            boolean tagged = (flareOpCode & FlareOpCode.STREAM_FLAG) != 0;
+
+            //Acknowledgements name their session, they never open a stream
+            if ((flareOpCode & ~FlareOpCode.STREAM_FLAG) == FlareOpCode.ACK_FRAME) {
+                ResumableSession.acknowledge(data, tagged ? 10 : 5);
+                return;
+            }
+
+            if (!tagged) {
+                runTask(flareOpCode, message, streams.getConnectionStream(), System.nanoTime());
+                return;
+            }
+
+            if (data.length < 6) {
+                AsyncLog.warn("Stream header cut short");
+                return;
+            }
 
-            System.out.println("flare op code is + " + flareOpCode);
+            //Stream id and priority follow the op code, then a regular request
+            byte opCode = (byte) (flareOpCode & ~FlareOpCode.STREAM_FLAG);
+            int streamId = readInt(data, 1);
+            int priority = data[5] & 0xff;
+
+            if (opCode == FlareOpCode.CANCEL_STREAM) {
+                streams.cancel(streamId);
+                return;
+            }
+
+            if (opCode == FlareOpCode.PRIORITIZE_STREAM) {
+                streams.prioritize(streamId, priority);
+                return;
+            }
+
+            //Frames and bytes granted follow the message length
+            if (opCode == FlareOpCode.CREDIT) {
+                if (data.length >= 18) {
+                    streams.grant(streamId, readInt(data, 10), readInt(data, 14));
+                }
+                return;
+            }
+
+            LogicalStream stream = streams.open(streamId, priority);
+            if (stream == null) {
+                streams.refuse(streamId);
+                return;
+            }
+
+            byte[] request = new byte[data.length - 5];
+            request[0] = opCode;
+            System.arraycopy(data, 6, request, 1, data.length - 6);
+
+            WebSocketBinaryMessage requestMessage = new WebSocketBinaryMessage();
+            requestMessage.setOpcode(message.getOpcode());
+            requestMessage.setData(request);
+
+            long received = System.nanoTime();
+            streams.execute(stream, () -> runTask(opCode, requestMessage, stream, received));
+
+        }
+
+        private int readInt(byte[] data, int offset) {
+            return (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16
+                    | (data[offset + 2] & 0xff) << 8 | (data[offset + 3] & 0xff);
+        }
+
+        /**
+         * Runs the task of an op code and ends its stream afterwards
+         */
+        private void runTask(byte flareOpCode, WebSocketMessage request, LogicalStream stream, long received) {
+
+            TaskDispatchEvent event = new TaskDispatchEvent();
+            RequestTrace trace = new RequestTrace(received);
+            trace.mark("dispatched");
+            long queued = trace.getOffsetNanos(0);
+            event.begin();
+
+            //Stream 0 is shared by every request without a stream id
+            stream.takeFirstSent();
+
+            Class<?> taskClass = TaskTable.taskTable.get(flareOpCode);
+            boolean keepOpen = false;
+            byte status = EndStreamMessage.FAILED;
 
             try {
-                FlareTask task = (FlareTask) TaskTable.taskTable.get(flareOpCode).newInstance();
-                task.setMessage(message);
+
+                if (taskClass == null) {
+                    AsyncLog.warn("Unknown flare op code {}", flareOpCode);
+                    return;
+                }
+
+                FlareTask task = (FlareTask) taskClass.newInstance();
+                task.setMessage(request);
                 task.setFlareClient(FlareClient.this);
-                task.process();
+                task.setStream(stream);
+                task.setTrace(trace);
 
-            } catch (InstantiationException | IllegalAccessException ex) {
+                ServerMetrics.taskStarted();
+                try {
+                    task.process();
+                } finally {
+                    ServerMetrics.taskFinished();
+                }
+
+                keepOpen = task.keepsStreamOpen();
+                status = stream.isCancelled() ? EndStreamMessage.CANCELLED : EndStreamMessage.COMPLETE;
+
+            } catch (InstantiationException | IllegalAccessException | RuntimeException ex) {
                 Logger.getLogger(FlareClient.class.getName()).log(Level.SEVERE, null, ex);
 
                 //Invalid task op code
+            } finally {
+
+                if (!keepOpen) {
+                    stream.end(status);
+                }
+
+                //Tasks that mark their stages are answered at their last mark,
+                //the others once they sent something back
+                long finished = System.nanoTime();
+                long firstSent = stream.takeFirstSent();
+                long response = trace.getStageCount() > 1 ? trace.getElapsedNanos()
+                        : (firstSent == 0 ? finished : firstSent) - received;
+                SlowRequestLog.record(sessionId, flareOpCode, stream.getId(), trace, response, finished - received);
+
+                event.end();
+                if (event.shouldCommit()) {
+                    event.session = sessionId;
+                    event.opCode = ServerMetrics.getOpCodeName(flareOpCode);
+                    event.stream = stream.getId();
+                    event.queued = queued;
+                    event.commit();
+                }
             }
 
         }
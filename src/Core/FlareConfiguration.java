@@ -0,0 +1,257 @@
+package Core;
+
+/**
+ * Server wide tunables. Every value can be overridden at launch with a
+ * -Dflare.* system property, otherwise the default below is used.
+ *
+ * @author Team 2
+ */
+public class FlareConfiguration {
+
+    /**
+     * Size in bytes of each audio chunk interleaved with the frames
+     */
+    public static final int MUX_AUDIO_CHUNK_BYTES = Integer.getInteger("flare.mux.audioChunkBytes", 16 * 1024);
+
+    /**
+     * How far ahead of its presentation time (ms) audio is sent
+     */
+    public static final int MUX_LEAD_MS = Integer.getInteger("flare.mux.leadMs", 500);
+
+    /**
+     * How far behind the audio (ms) a frame is allowed to be sent
+     */
+    public static final int MUX_LAG_MS = Integer.getInteger("flare.mux.lagMs", 250);
+
+    /**
+     * How far (ms) ahead of its send deadline a playback may run. Each unit
+     * is held back until then, so a stream goes out at the media rate after
+     * the first second. Negative sends at link speed.
+     */
+    public static final int MUX_PACE_MS = Integer.getInteger("flare.mux.paceMs", 1000);
+
+    /**
+     * Directory the video catalog is built from
+     */
+    public static final String MEDIA_ROOT = System.getProperty("flare.media.root", ".");
+
+    /**
+     * How many directory levels below the media root are searched for videos
+     */
+    public static final int CATALOG_DEPTH = Integer.getInteger("flare.catalog.depth", 3);
+
+    /**
+     * Most entries returned by one LIST_VIDEOS page
+     */
+    public static final int CATALOG_PAGE_SIZE = Integer.getInteger("flare.catalog.pageSize", 100);
+
+    /**
+     * Number of recent sends the throughput estimate is computed over
+     */
+    public static final int ABR_WINDOW = Integer.getInteger("flare.abr.window", 32);
+
+    /**
+     * Fraction of the estimated throughput a higher rendition may use before
+     * switching up to it
+     */
+    public static final double ABR_UP_SWITCH = Double.parseDouble(System.getProperty("flare.abr.upSwitch", "0.7"));
+
+    /**
+     * Fraction of the estimated throughput the current rendition may use
+     * before switching down
+     */
+    public static final double ABR_DOWN_SWITCH = Double.parseDouble(System.getProperty("flare.abr.downSwitch", "0.9"));
+
+    /**
+     * Frame heights of the renditions built at ingest, comma separated
+     */
+    public static final String INGEST_HEIGHTS = System.getProperty("flare.ingest.heights", "720,480,360,240");
+
+    /**
+     * JPEG quality of the renditions built at ingest, 0.0 to 1.0
+     */
+    public static final float INGEST_QUALITY = Float.parseFloat(System.getProperty("flare.ingest.quality", "0.75"));
+
+    /**
+     * Worker threads used at ingest
+     */
+    public static final int INGEST_PARALLELISM = Integer.getInteger("flare.ingest.parallelism", Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Messages a watch party subscriber may have queued before frames are
+     * skipped
+     */
+    public static final int CHANNEL_QUEUE_SIZE = Integer.getInteger("flare.channel.queueSize", 60);
+
+    /**
+     * What a watch party subscriber skips when its queue is full,
+     * DROP_NEWEST or DROP_OLDEST
+     */
+    public static final String CHANNEL_SKIP_POLICY = System.getProperty("flare.channel.skipPolicy", "DROP_OLDEST");
+
+    /**
+     * Frames between two thumbnails of the scrub strip
+     */
+    public static final int THUMBNAIL_INTERVAL = Integer.getInteger("flare.thumbnails.interval", 30);
+
+    /**
+     * Height of a scrub strip thumbnail, the width follows the aspect ratio
+     */
+    public static final int THUMBNAIL_HEIGHT = Integer.getInteger("flare.thumbnails.height", 90);
+
+    /**
+     * Thumbnails per row of a sprite sheet
+     */
+    public static final int THUMBNAIL_COLUMNS = Integer.getInteger("flare.thumbnails.columns", 10);
+
+    /**
+     * Thumbnail rows of a sprite sheet
+     */
+    public static final int THUMBNAIL_ROWS = Integer.getInteger("flare.thumbnails.rows", 10);
+
+    /**
+     * Frames between two keyframes of the tile delta encoding, 0 disables
+     * building deltas at ingest
+     */
+    public static final int DELTA_KEYFRAME_INTERVAL = Integer.getInteger("flare.delta.keyframeInterval", 60);
+
+    /**
+     * Edge length in pixels of a delta tile
+     */
+    public static final int DELTA_TILE_SIZE = Integer.getInteger("flare.delta.tileSize", 64);
+
+    /**
+     * Mean difference per color channel above which a tile counts as changed
+     */
+    public static final double DELTA_THRESHOLD = Double.parseDouble(System.getProperty("flare.delta.threshold", "3.0"));
+
+    /**
+     * Bytes of encoded frames kept in the shared frame cache
+     */
+    public static final long FRAME_CACHE_BYTES = Long.getLong("flare.cache.frameBytes", 64L * 1024 * 1024);
+
+    /**
+     * Hard link the renditions of duplicate frames at ingest so each content
+     * hash is encoded and stored once. Source frames are never replaced.
+     */
+    public static final boolean DEDUP_LINK = Boolean.parseBoolean(System.getProperty("flare.dedup.link", "true"));
+
+    /**
+     * Logical streams a single connection may have open at once
+     */
+    public static final int MAX_STREAMS = Integer.getInteger("flare.streams.max", 16);
+
+    /**
+     * Priority of requests sent without a stream id, 0 is the most urgent
+     */
+    public static final int DEFAULT_STREAM_PRIORITY = Integer.getInteger("flare.streams.defaultPriority", 128);
+
+    /**
+     * How long a resumable playback is kept after its connection dropped
+     */
+    public static final long RESUME_GRACE_MS = Long.getLong("flare.resume.graceMs", 60000L);
+
+    /**
+     * Loader threads shared by all sessions for reading frames, deltas and
+     * audio from disk
+     */
+    public static final int LOAD_THREADS = Integer.getInteger("flare.load.threads", Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Fair queuing weight of a client session, a watch party weighs as
+     * much as its viewers
+     */
+    public static final int LOAD_SESSION_WEIGHT = Integer.getInteger("flare.load.sessionWeight", 1);
+
+    /**
+     * Connection stage, one thread reads and decodes the requests of each
+     * connected client, so this caps the number of clients
+     */
+    public static final int STAGE_CONNECTION_THREADS = Integer.getInteger("flare.stage.connection.threads", 256);
+
+    /**
+     * Request stage, runs the requests sent with a stream id
+     */
+    public static final int STAGE_REQUEST_THREADS = Integer.getInteger("flare.stage.request.threads", 64);
+
+    /**
+     * Requests queued when all request threads are busy, refused beyond
+     */
+    public static final int STAGE_REQUEST_QUEUE = Integer.getInteger("flare.stage.request.queue", 256);
+
+    /**
+     * Send stage, writes the queued messages of watch party subscribers
+     */
+    public static final int STAGE_SEND_THREADS = Integer.getInteger("flare.stage.send.threads", 32);
+
+    /**
+     * Subscriber drains queued when all send threads are busy
+     */
+    public static final int STAGE_SEND_QUEUE = Integer.getInteger("flare.stage.send.queue", 1024);
+
+    /**
+     * Port the server listens on for WebSocket connections
+     */
+    public static final int PORT = Integer.getInteger("flare.port", 6661);
+
+    /**
+     * Port of the HTTP endpoint serving the metrics as text, 0 to serve
+     * them over JMX only
+     */
+    public static final int METRICS_PORT = Integer.getInteger("flare.metrics.port", 0);
+
+    /**
+     * Address the metrics endpoint binds to. It has no authentication, so
+     * it only listens on loopback unless set to an outside address
+     */
+    public static final String METRICS_HOST = System.getProperty("flare.metrics.host", "127.0.0.1");
+
+    /**
+     * Completed requests remembered for the slowest requests of the admin
+     * stats query
+     */
+    public static final int SLOW_REQUEST_LOG = Integer.getInteger("flare.slowRequests.log", 256);
+
+    /**
+     * Age in seconds after which a request no longer counts as recent
+     */
+    public static final int SLOW_REQUEST_WINDOW_S = Integer.getInteger("flare.slowRequests.window", 60);
+
+    /**
+     * Lowest level printed by AsyncLog: TRACE, DEBUG, INFO, WARN, ERROR or OFF
+     */
+    public static final String LOG_LEVEL = System.getProperty("flare.log.level", "INFO");
+
+    /**
+     * Messages AsyncLog holds for its writer thread, more are dropped
+     */
+    public static final int LOG_BUFFER = Integer.getInteger("flare.log.buffer", 8192);
+
+    /**
+     * Debug and info messages printed per second at most
+     */
+    public static final int LOG_RATE = Integer.getInteger("flare.log.rate", 1000);
+
+    /**
+     * Response time in ms from which a request is logged with its stage
+     * breakdown
+     */
+    public static final int SLOW_REQUEST_MS = Integer.getInteger("flare.slowRequests.thresholdMs", 500);
+
+    /**
+     * Requests over the slow threshold kept for the admin stats query
+     */
+    public static final int SLOW_REQUEST_SLOW_LOG = Integer.getInteger("flare.slowRequests.slowLog", 64);
+
+    /**
+     * Directory to record the messages of every session in, for replaying
+     * them later. Empty turns capturing off.
+     */
+    public static final String CAPTURE_DIR = System.getProperty("flare.capture.dir", "");
+
+    /**
+     * Size in MB after which a session is no longer recorded
+     */
+    public static final int CAPTURE_MAX_MB = Integer.getInteger("flare.capture.maxMB", 64);
+
+}
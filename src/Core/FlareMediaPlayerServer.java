@@ -1,12 +1,15 @@
 package Core;
 
+import FlareMedia.VideoCatalog;
+import FlareMetrics.Metrics;
+import Utility.AsyncLog;
+import Utility.Stage;
 import WebSocket.WebSocket;
 import WebSocket.WebSocketServer;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,8 +41,10 @@ public class FlareMediaPlayerServer {
     private WebSocketServer serverSocket;
     private boolean running = false;
     private boolean auth = false;
-    private final ExecutorService threadPool;
-    private Map<String, FlareClient> clientThreads = new HashMap<String, FlareClient>(); // Session ID -> Client
+    private final Stage threadPool;
+
+    //Numbers the connections, the random part keeps ids apart across restarts
+    private final AtomicLong connectionCount = new AtomicLong();
 
     // Singleton Instance
     private static FlareMediaPlayerServer mediaServer;
@@ -58,7 +63,9 @@ public class FlareMediaPlayerServer {
         
 
         configure();
-        threadPool = Executors.newCachedThreadPool();
+        //One thread per connection reads and decodes its requests, bounded so
+        //a flood of clients is turned away instead of growing without limit
+        threadPool = new Stage("connection", FlareConfiguration.STAGE_CONNECTION_THREADS, 0);
 
     }
 
@@ -74,8 +81,8 @@ public class FlareMediaPlayerServer {
     private void run() {
         try {
             // Open a connection using the given port to accept incoming connections
-            serverSocket = new WebSocketServer(6661);
-            System.out.println("Running server on port 6661");
+            serverSocket = new WebSocketServer(FlareConfiguration.PORT);
+            System.out.println("Running server on port " + FlareConfiguration.PORT);
             running = true;
             // Loop indefinitely to establish multiple connections
             while (running) {
@@ -85,13 +92,15 @@ public class FlareMediaPlayerServer {
 
                     WebSocket clientSocket = serverSocket.accept();
 
-                    String sessionToken = "asdasd"; //Put the actual token the client sent 
-
-                    FlareClient client = new FlareClient(sessionToken, clientSocket);
+                    FlareClient client = new FlareClient(newSessionId(), clientSocket);
 
-                    addToActiveThreads(client);
-                    // Initiate the client
-                    threadPool.submit(client);
+                    // Initiate the client, it lists itself in FlareClient.getSessions()
+                    try {
+                        threadPool.execute(client);
+                    } catch (RejectedExecutionException ex) {
+                        AsyncLog.warn("Connection stage saturated, closing new connection");
+                        clientSocket.close();
+                    }
 
                 } catch (IOException e) {
                     running = false;
@@ -110,19 +119,29 @@ public class FlareMediaPlayerServer {
     public void configure(){
 
         //Load configuration stuff here
+
+        //Scan the media root up front so the first open is a lookup
+        VideoCatalog.getInstance();
+
+        if (FlareConfiguration.METRICS_PORT > 0) {
+            try {
+                Metrics.startHttp(FlareConfiguration.METRICS_HOST, FlareConfiguration.METRICS_PORT);
+            } catch (IOException ex) {
+                Logger.getLogger(FlareMediaPlayerServer.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
     }
 
 
     /**
-     * Adds new client to threads
+     * Id of a new connection, unique within this server and unlikely to
+     * repeat after a restart
      *
-     * <p>Add the FlareClient to the local thread pool in this server.</p>
-     * @param client FlareClient to be added to the local thread pool.
+     * @return session id such as 42-9f3c1a
      */
-    public void addToActiveThreads(FlareClient client) {
-
-        clientThreads.put(client.getId(), client);
-
+    private String newSessionId() {
+        return connectionCount.incrementAndGet() + "-"
+                + Integer.toHexString(0x1000000 | ThreadLocalRandom.current().nextInt(0x1000000)).substring(1);
     }
 
 
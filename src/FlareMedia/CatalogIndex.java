@@ -0,0 +1,295 @@
+package FlareMedia;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the video catalog. Entries are sorted by name and
+ * their metadata is kept in parallel primitive arrays, so a lookup is one
+ * hash probe and reading a field is an array load. A new snapshot is built
+ * whenever the catalog changes, readers never see a partial update.
+ *
+ * @author Team 2
+ */
+public final class CatalogIndex {
+
+    static final CatalogIndex EMPTY = new CatalogIndex(new VideoEntry[0]);
+
+    private final String[] names;
+    private final String[] paths;
+    private final int[] frameCounts;
+    private final int[] widths;
+    private final int[] heights;
+    private final double[] fps;
+    private final double[] durations;
+    private final long[] audioLengths;
+    private final int[] keyframeIntervals;
+    private final Map<String, Integer> slots;
+
+    // Rendition ladders of all videos back to back, largest frames first
+    private final int[] renditionStarts;
+    private final int[] renditionCounts;
+    private final int[] renditionIds;
+    private final int[] renditionWidths;
+    private final int[] renditionHeights;
+    private final long[] renditionFrameBytes;
+    private final String[] renditionPaths;
+
+    /**
+     * Builds the snapshot from parsed entries
+     *
+     * @param entries parsed catalog entries
+     */
+    CatalogIndex(Collection<VideoEntry> entries) {
+        this(entries.toArray(new VideoEntry[entries.size()]));
+    }
+
+    private CatalogIndex(VideoEntry[] entries) {
+
+        Arrays.sort(entries, (a, b) -> a.name.compareTo(b.name));
+
+        int size = entries.length;
+        names = new String[size];
+        paths = new String[size];
+        frameCounts = new int[size];
+        widths = new int[size];
+        heights = new int[size];
+        fps = new double[size];
+        durations = new double[size];
+        audioLengths = new long[size];
+        keyframeIntervals = new int[size];
+        slots = new HashMap<String, Integer>(size * 2);
+        renditionStarts = new int[size];
+        renditionCounts = new int[size];
+
+        int renditions = 0;
+        for (VideoEntry entry : entries) {
+            renditions += entry.renditionCount();
+        }
+        renditionIds = new int[renditions];
+        renditionWidths = new int[renditions];
+        renditionHeights = new int[renditions];
+        renditionFrameBytes = new long[renditions];
+        renditionPaths = new String[renditions];
+
+        int rendition = 0;
+        for (int n = 0; n < size; n++) {
+            VideoEntry entry = entries[n];
+            names[n] = entry.name;
+            paths[n] = entry.path;
+            frameCounts[n] = entry.frameCount;
+            widths[n] = entry.width;
+            heights[n] = entry.height;
+            fps[n] = entry.fps;
+            durations[n] = entry.duration;
+            audioLengths[n] = entry.audioLength;
+            keyframeIntervals[n] = entry.keyframeInterval;
+            slots.put(entry.name, n);
+
+            renditionStarts[n] = rendition;
+            renditionCounts[n] = entry.renditionCount();
+            for (int r = 0; r < entry.renditionCount(); r++, rendition++) {
+                renditionIds[rendition] = entry.renditionIds[r];
+                renditionWidths[rendition] = entry.renditionWidths[r];
+                renditionHeights[rendition] = entry.renditionHeights[r];
+                renditionFrameBytes[rendition] = entry.renditionFrameBytes[r];
+                renditionPaths[rendition] = entry.renditionPaths[r];
+            }
+        }
+    }
+
+    /**
+     * Looks up a video by its catalog name
+     *
+     * @param name name relative to the media root
+     * @return slot of the video or -1 if it is not in the catalog
+     */
+    public int find(String name) {
+        Integer slot = slots.get(VideoCatalog.normalize(name));
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Number of videos in the snapshot
+     *
+     * @return video count
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Catalog name of a video
+     *
+     * @param slot video slot
+     * @return name relative to the media root
+     */
+    public String getName(int slot) {
+        return names[slot];
+    }
+
+    /**
+     * Directory holding the frames and audio of a video
+     *
+     * @param slot video slot
+     * @return directory path
+     */
+    public String getPath(int slot) {
+        return paths[slot];
+    }
+
+    /**
+     * Number of frames of a video
+     *
+     * @param slot video slot
+     * @return frame count
+     */
+    public int getFrameCount(int slot) {
+        return frameCounts[slot];
+    }
+
+    /**
+     * Frame width of a video
+     *
+     * @param slot video slot
+     * @return width in pixels
+     */
+    public int getWidth(int slot) {
+        return widths[slot];
+    }
+
+    /**
+     * Frame height of a video
+     *
+     * @param slot video slot
+     * @return height in pixels
+     */
+    public int getHeight(int slot) {
+        return heights[slot];
+    }
+
+    /**
+     * Frames per second of a video
+     *
+     * @param slot video slot
+     * @return frames per second
+     */
+    public double getFps(int slot) {
+        return fps[slot];
+    }
+
+    /**
+     * Duration of a video
+     *
+     * @param slot video slot
+     * @return duration in ms
+     */
+    public double getDuration(int slot) {
+        return durations[slot];
+    }
+
+    /**
+     * Length of audio.m4a in bytes
+     *
+     * @param slot video slot
+     * @return audio length, 0 if the video has no audio
+     */
+    public long getAudioLength(int slot) {
+        return audioLengths[slot];
+    }
+
+    /**
+     * Keyframe interval of the tile deltas of a video
+     *
+     * @param slot video slot
+     * @return frames between keyframes, 0 if the video has no deltas
+     */
+    public int getKeyframeInterval(int slot) {
+        return keyframeIntervals[slot];
+    }
+
+    /**
+     * Number of renditions of a video, the source counts as one
+     *
+     * @param slot video slot
+     * @return rendition count
+     */
+    public int getRenditionCount(int slot) {
+        return renditionCounts[slot];
+    }
+
+    /**
+     * Id of a rendition as signalled in FrameMessage
+     *
+     * @param slot video slot
+     * @param rendition position in the ladder, 0 has the largest frames
+     * @return rendition id, 0 for the source frames
+     */
+    public int getRenditionId(int slot, int rendition) {
+        return renditionIds[renditionStarts[slot] + rendition];
+    }
+
+    /**
+     * Frame width of a rendition
+     *
+     * @param slot video slot
+     * @param rendition position in the ladder
+     * @return width in pixels
+     */
+    public int getRenditionWidth(int slot, int rendition) {
+        return renditionWidths[renditionStarts[slot] + rendition];
+    }
+
+    /**
+     * Frame height of a rendition
+     *
+     * @param slot video slot
+     * @param rendition position in the ladder
+     * @return height in pixels
+     */
+    public int getRenditionHeight(int slot, int rendition) {
+        return renditionHeights[renditionStarts[slot] + rendition];
+    }
+
+    /**
+     * Average encoded frame size of a rendition
+     *
+     * @param slot video slot
+     * @param rendition position in the ladder
+     * @return bytes per frame
+     */
+    public long getRenditionFrameBytes(int slot, int rendition) {
+        return renditionFrameBytes[renditionStarts[slot] + rendition];
+    }
+
+    /**
+     * Directory holding the frames of a rendition
+     *
+     * @param slot video slot
+     * @param rendition position in the ladder
+     * @return directory path
+     */
+    public String getRenditionPath(int slot, int rendition) {
+        return renditionPaths[renditionStarts[slot] + rendition];
+    }
+
+    /**
+     * Position of a rendition in the ladder of a video
+     *
+     * @param slot video slot
+     * @param id rendition id, 0 for the source frames
+     * @return position in the ladder or -1 if the video has no such rendition
+     */
+    public int findRendition(int slot, int id) {
+
+        for (int r = 0; r < renditionCounts[slot]; r++) {
+            if (renditionIds[renditionStarts[slot] + r] == id) {
+                return r;
+            }
+        }
+        return -1;
+    }
+
+}
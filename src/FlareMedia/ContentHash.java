@@ -0,0 +1,79 @@
+package FlareMedia;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-1 of the bytes of a frame file, kept as two longs and an int so it is
+ * cheap to store and compare. Frames with the same hash are byte identical.
+ *
+ * @author Team 2
+ */
+public final class ContentHash {
+
+    static final int LENGTH = 20;
+
+    private static final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    });
+
+    private final long high;
+    private final long low;
+    private final int tail;
+
+    private ContentHash(long high, long low, int tail) {
+        this.high = high;
+        this.low = low;
+        this.tail = tail;
+    }
+
+    /**
+     * Hashes file contents
+     *
+     * @param data file bytes
+     * @return content hash
+     */
+    public static ContentHash of(byte[] data) {
+        return read(ByteBuffer.wrap(digests.get().digest(data)));
+    }
+
+    /**
+     * Reads a hash written by write
+     *
+     * @param buffer buffer positioned at the hash
+     * @return content hash
+     */
+    static ContentHash read(ByteBuffer buffer) {
+        return new ContentHash(buffer.getLong(), buffer.getLong(), buffer.getInt());
+    }
+
+    /**
+     * Writes the hash as 20 bytes
+     *
+     * @param buffer buffer to write to
+     */
+    void write(ByteBuffer buffer) {
+        buffer.putLong(high).putLong(low).putInt(tail);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+
+        if (!(other instanceof ContentHash)) {
+            return false;
+        }
+        ContentHash hash = (ContentHash) other;
+        return high == hash.high && low == hash.low && tail == hash.tail;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) high;
+    }
+
+}
@@ -0,0 +1,139 @@
+package FlareMedia;
+
+import FlareMetrics.CacheMXBean;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Least recently used cache of encoded frames shared by all sessions. It is
+ * keyed by content hash and rendition, so a frame repeated inside a video or
+ * across videos is cached once.
+ *
+ * @author Team 2
+ */
+public class FrameCache implements CacheMXBean {
+
+    private final long capacity;
+    private final LinkedHashMap<Key, byte[]> frames = new LinkedHashMap<Key, byte[]>(256, 0.75f, true);
+    // Written under the map lock, read without it by the metrics
+    private volatile long size;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param capacity bytes of frame data to keep
+     */
+    public FrameCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Looks a frame up
+     *
+     * @param hash content hash of the source frame
+     * @param rendition rendition id
+     * @return encoded frame or null
+     */
+    public byte[] get(ContentHash hash, int rendition) {
+
+        byte[] frame;
+        synchronized (frames) {
+            frame = frames.get(new Key(hash, rendition));
+        }
+
+        if (frame == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return frame;
+    }
+
+    /**
+     * Adds a frame, evicting the least recently used ones if needed
+     *
+     * @param hash content hash of the source frame
+     * @param rendition rendition id
+     * @param frame encoded frame
+     */
+    public void put(ContentHash hash, int rendition, byte[] frame) {
+
+        if (frame.length > capacity) {
+            return;
+        }
+
+        synchronized (frames) {
+
+            byte[] previous = frames.put(new Key(hash, rendition), frame);
+            size += frame.length - (previous == null ? 0 : previous.length);
+
+            Iterator<Map.Entry<Key, byte[]>> eldest = frames.entrySet().iterator();
+            while (size > capacity && eldest.hasNext()) {
+                size -= eldest.next().getValue().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Number of lookups that found the frame
+     *
+     * @return hit count
+     */
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of lookups that missed
+     *
+     * @return miss count
+     */
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Bytes currently cached
+     *
+     * @return cached bytes
+     */
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    private static final class Key {
+
+        final ContentHash hash;
+        final int rendition;
+
+        Key(ContentHash hash, int rendition) {
+            this.hash = hash;
+            this.rendition = rendition;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return rendition == key.rendition && hash.equals(key.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode() * 31 + rendition;
+        }
+    }
+
+}
@@ -0,0 +1,196 @@
+package FlareMedia;
+
+import Utility.AsyncLog;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Content hashes of the source frames of a video. Ingest stores them in
+ * hashes.bin, 20 bytes per frame. Videos that were not ingested are hashed
+ * on first read instead, one frame at a time. Such a hash remembers the
+ * modification time and size of its file and is dropped once the file no
+ * longer matches, nothing else tells the server a frame was replaced. The
+ * file is checked at most once a second per frame, so playback does not stat
+ * every frame it looks up.
+ *
+ * Since identical source frames give identical renditions, the source hash
+ * identifies a frame in every rendition.
+ *
+ * @author Team 2
+ */
+public final class FrameHashes {
+
+    static final String FILE = "hashes.bin";
+
+    // Video directory -> hashes, dropped when the catalog rereads the video
+    private static final ConcurrentHashMap<String, FrameHashes> videos = new ConcurrentHashMap<String, FrameHashes>();
+
+    // How long a hash taken on read is trusted before its file is checked again
+    private static final long CHECK_INTERVAL_NANOS = 1000000000L;
+
+    private final AtomicReferenceArray<Hashed> hashes;
+
+    // Source frames of hashes taken on read, null when ingest keeps them
+    private final Path directory;
+
+    FrameHashes(int frameCount) {
+        this(frameCount, null);
+    }
+
+    private FrameHashes(int frameCount, Path directory) {
+        hashes = new AtomicReferenceArray<Hashed>(frameCount);
+        this.directory = directory;
+    }
+
+    /**
+     * Hashes of a video, read from hashes.bin on first use
+     *
+     * @param index catalog snapshot
+     * @param slot video slot
+     * @return hashes of the video, possibly still incomplete
+     */
+    public static FrameHashes of(CatalogIndex index, int slot) {
+        return videos.computeIfAbsent(index.getPath(slot), path -> load(Paths.get(path), index.getFrameCount(slot)));
+    }
+
+    /**
+     * Forgets the hashes of a video, the frames may have changed
+     *
+     * @param path video directory
+     */
+    static void invalidate(String path) {
+        videos.remove(path);
+    }
+
+    /**
+     * Hash of a frame
+     *
+     * @param frame frame index
+     * @return hash or null if the frame was not hashed yet or its file
+     * changed since
+     */
+    public ContentHash get(int frame) {
+
+        Hashed hashed = frame < hashes.length() ? hashes.get(frame) : null;
+        if (hashed == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (hashed.modified < 0 || now - hashed.checked < CHECK_INTERVAL_NANOS) {
+            return hashed.hash;
+        }
+
+        //Hashed on read, only as good as the file it was read from
+        try {
+            BasicFileAttributes attributes = readAttributes(directory, frame);
+            if (attributes.lastModifiedTime().toMillis() == hashed.modified && attributes.size() == hashed.size) {
+                hashed.checked = now;
+                return hashed.hash;
+            }
+        } catch (IOException ex) {
+            //Gone, hash it again once it is back
+        }
+        hashes.compareAndSet(frame, hashed, null);
+        return null;
+    }
+
+    /**
+     * Records the hash of a frame that ingest keeps current
+     *
+     * @param frame frame index
+     * @param hash its content hash
+     */
+    public void set(int frame, ContentHash hash) {
+        if (frame < hashes.length()) {
+            hashes.set(frame, new Hashed(hash, -1, -1));
+        }
+    }
+
+    /**
+     * Records the hash of a frame that was just read
+     *
+     * @param frame frame index
+     * @param hash its content hash
+     * @param attributes the frame file as it was before the read
+     */
+    public void set(int frame, ContentHash hash, BasicFileAttributes attributes) {
+        if (frame < hashes.length()) {
+            hashes.set(frame, new Hashed(hash, attributes.lastModifiedTime().toMillis(), attributes.size()));
+        }
+    }
+
+    /**
+     * Stat of a source frame, taken before reading it so a change during the
+     * read is caught by the next get
+     *
+     * @param directory video directory
+     * @param frame frame index
+     * @return attributes of the frame file
+     * @throws IOException if the file cannot be read
+     */
+    public static BasicFileAttributes readAttributes(Path directory, int frame) throws IOException {
+        return Files.readAttributes(directory.resolve("frame" + frame + ".jpg"), BasicFileAttributes.class);
+    }
+
+    /**
+     * Reads hashes.bin, an empty table if it is missing or from an older
+     * frame count
+     */
+    static FrameHashes load(Path directory, int frameCount) {
+
+        FrameHashes frameHashes = new FrameHashes(frameCount, directory);
+
+        try {
+
+            Path file = directory.resolve(FILE);
+            if (Files.isRegularFile(file) && Files.size(file) == (long) frameCount * ContentHash.LENGTH) {
+                ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+                for (int n = 0; n < frameCount; n++) {
+                    frameHashes.set(n, ContentHash.read(buffer));
+                }
+            }
+
+        } catch (IOException ex) {
+            AsyncLog.warn("Cannot read hashes of {}: {}", directory, ex);
+        }
+
+        return frameHashes;
+    }
+
+    /**
+     * Writes hashes.bin, every frame must be hashed
+     */
+    void save(Path directory) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocate(hashes.length() * ContentHash.LENGTH);
+        for (int n = 0; n < hashes.length(); n++) {
+            hashes.get(n).hash.write(buffer);
+        }
+        RenditionIngest.writeAtomically(directory.resolve(FILE), buffer.array());
+    }
+
+    /**
+     * A hash with the file it was taken from, modified is -1 when ingest
+     * keeps it current. checked is when the file last matched.
+     */
+    private static final class Hashed {
+
+        final ContentHash hash;
+        final long modified;
+        final long size;
+        volatile long checked = System.nanoTime();
+
+        Hashed(ContentHash hash, long modified, long size) {
+            this.hash = hash;
+            this.modified = modified;
+            this.size = size;
+        }
+    }
+
+}
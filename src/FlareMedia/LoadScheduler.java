@@ -0,0 +1,335 @@
+package FlareMedia;
+
+import Core.FlareConfiguration;
+import Utility.SingleFlight;
+import Utility.Stage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the disk reads of all sessions on a fixed set of loader threads,
+ * sharing them by weighted fair queuing. Each session has a share with a
+ * weight, a read costs its expected size in bytes, and reads are served in
+ * the order of their virtual finish time, so a session streaming at full
+ * speed gets its weighted part of the disk and no more while others wait.
+ * An idle session starts at the current virtual time and cannot save up
+ * credit.
+ *
+ * Urgent reads, the first frame of a playback or of a resume, go ahead of
+ * the fair queue so time to first frame stays low under load. They are
+ * still charged to their session.
+ *
+ * @author Team 2
+ */
+public class LoadScheduler {
+
+    private static final LoadScheduler instance = new LoadScheduler(FlareConfiguration.LOAD_THREADS);
+
+    private final PriorityQueue<Job<?>> queue = new PriorityQueue<Job<?>>();
+    private final List<Share> shares = new CopyOnWriteArrayList<Share>();
+    private final LongAdder servedCost = new LongAdder();
+    private final Stage.Statistics statistics;
+    private double virtualTime;
+    private long arrivals;
+
+    // Written under the scheduler lock, read without it by the metrics
+    private volatile int queueDepth;
+    private volatile int busy;
+
+    private LoadScheduler(int threads) {
+
+        statistics = Stage.register("load", Math.max(1, threads), this::getQueued, this::getBusy);
+
+        for (int n = 0; n < Math.max(1, threads); n++) {
+            Thread loader = new Thread(this::work, "flare-loader-" + n);
+            loader.setDaemon(true);
+            loader.start();
+        }
+    }
+
+    /**
+     * The scheduler shared by all sessions
+     *
+     * @return scheduler
+     */
+    public static LoadScheduler getInstance() {
+        return instance;
+    }
+
+    /**
+     * Opens a share for a session
+     *
+     * @param name name shown in the metrics
+     * @param weight relative part of the loader threads, at least 1
+     * @return the new share, close it when the session ends
+     */
+    public Share open(String name, int weight) {
+        Share share = new Share(this, name, weight);
+        shares.add(share);
+        return share;
+    }
+
+    /**
+     * Shares of the sessions currently open
+     *
+     * @return snapshot of the shares
+     */
+    public List<Share> getShares() {
+        return new ArrayList<Share>(shares);
+    }
+
+    /**
+     * Reads waiting for a loader thread
+     *
+     * @return queue depth
+     */
+    public int getQueued() {
+        return queueDepth;
+    }
+
+    private int getBusy() {
+        return busy;
+    }
+
+    /**
+     * Runs a read on a loader thread and waits for it
+     *
+     * @param <V> loaded value type
+     * @param share session the read is for
+     * @param urgent true to go ahead of the fair queue
+     * @param cost expected bytes read
+     * @param loader the read
+     * @return loaded value
+     * @throws IOException if the read failed
+     */
+    public <V> V load(Share share, boolean urgent, long cost, SingleFlight.Loader<V> loader) throws IOException {
+
+        Job<V> job = new Job<V>(share, urgent, loader);
+
+        synchronized (this) {
+
+            //Self clocked: an idle share restarts at the current virtual time
+            double start = Math.max(virtualTime, share.lastFinish);
+            job.finish = start + (double) Math.max(1, cost) / share.weight;
+            job.cost = Math.max(1, cost);
+            job.arrival = arrivals++;
+            share.lastFinish = job.finish;
+            share.queued++;
+
+            queue.add(job);
+            queueDepth = queue.size();
+            notify();
+        }
+
+        try {
+            return job.result.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for a load", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    private void work() {
+
+        while (true) {
+
+            Job<?> job;
+            synchronized (this) {
+                while (queue.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                job = queue.poll();
+                queueDepth = queue.size();
+                virtualTime = Math.max(virtualTime, job.finish);
+                job.share.queued--;
+                busy++;
+            }
+
+            long started = System.nanoTime();
+            job.run(started);
+            servedCost.add(job.cost);
+            statistics.record(started - job.submitted, System.nanoTime() - started);
+
+            synchronized (this) {
+                busy--;
+            }
+        }
+    }
+
+    /**
+     * Part of the loader threads one session is entitled to, with the
+     * metrics of what it got
+     */
+    public static final class Share {
+
+        private final LoadScheduler scheduler;
+        private final String name;
+        private volatile int weight;
+
+        // Guarded by the scheduler, queued is also read without it
+        private double lastFinish;
+        private volatile int queued;
+
+        private final LongAdder loads = new LongAdder();
+        private final LongAdder urgentLoads = new LongAdder();
+        private final LongAdder cost = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+
+        private Share(LoadScheduler scheduler, String name, int weight) {
+            this.scheduler = scheduler;
+            this.name = name;
+            this.weight = Math.max(1, weight);
+        }
+
+        /**
+         * Name shown in the metrics
+         *
+         * @return share name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Relative part of the loader threads
+         *
+         * @return weight
+         */
+        public int getWeight() {
+            return weight;
+        }
+
+        /**
+         * Changes the weight, applies to reads submitted from now on
+         *
+         * @param weight new weight, at least 1
+         */
+        public void setWeight(int weight) {
+            this.weight = Math.max(1, weight);
+        }
+
+        /**
+         * Reads performed for this session
+         *
+         * @return load count
+         */
+        public long getLoads() {
+            return loads.sum();
+        }
+
+        /**
+         * Reads that went ahead of the fair queue
+         *
+         * @return urgent load count
+         */
+        public long getUrgentLoads() {
+            return urgentLoads.sum();
+        }
+
+        /**
+         * Bytes charged to this session
+         *
+         * @return served cost
+         */
+        public long getCost() {
+            return cost.sum();
+        }
+
+        /**
+         * Time reads of this session spent queued
+         *
+         * @return total wait in ms
+         */
+        public long getWaitMillis() {
+            return waitNanos.sum() / 1000000;
+        }
+
+        /**
+         * Reads of this session waiting for a loader thread
+         *
+         * @return queue length
+         */
+        public int getQueued() {
+            return queued;
+        }
+
+        /**
+         * Part of everything served so far that went to this session
+         *
+         * @return share from 0.0 to 1.0
+         */
+        public double getServedShare() {
+            long total = scheduler.servedCost.sum();
+            return total == 0 ? 0 : (double) cost.sum() / total;
+        }
+
+        /**
+         * Removes the share from the metrics, the session is over
+         */
+        public void close() {
+            scheduler.shares.remove(this);
+        }
+    }
+
+    private static final class Job<V> implements Comparable<Job<?>> {
+
+        final Share share;
+        final boolean urgent;
+        final SingleFlight.Loader<V> loader;
+        final CompletableFuture<V> result = new CompletableFuture<V>();
+        final long submitted = System.nanoTime();
+        double finish;
+        long cost;
+        long arrival;
+
+        Job(Share share, boolean urgent, SingleFlight.Loader<V> loader) {
+            this.share = share;
+            this.urgent = urgent;
+            this.loader = loader;
+        }
+
+        void run(long started) {
+
+            share.waitNanos.add(started - submitted);
+            share.loads.increment();
+            share.cost.add(cost);
+            if (urgent) {
+                share.urgentLoads.increment();
+            }
+
+            try {
+                result.complete(loader.load());
+            } catch (IOException | RuntimeException ex) {
+                result.completeExceptionally(ex);
+            }
+        }
+
+        @Override
+        public int compareTo(Job<?> other) {
+
+            if (urgent != other.urgent) {
+                return urgent ? -1 : 1;
+            }
+            if (finish != other.finish) {
+                return Double.compare(finish, other.finish);
+            }
+            return Long.compare(arrival, other.arrival);
+        }
+    }
+
+}
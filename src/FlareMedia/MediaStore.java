@@ -0,0 +1,283 @@
+package FlareMedia;
+
+import Core.FlareConfiguration;
+import FlareMetrics.Metrics;
+import FlareMetrics.ServerMetrics;
+import Utility.SingleFlight;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Reads video files from disk. Concurrent requests for the same audio file,
+ * frame, tile delta or scrub strip share one read, so a burst of clients opening the
+ * same video does the I/O once. The counters of each kind of load tell how
+ * many requests were coalesced.
+ *
+ * @author Team 2
+ */
+public class MediaStore {
+
+    private static final SingleFlight<String, byte[]> audioLoads = new SingleFlight<String, byte[]>();
+    private static final SingleFlight<FrameKey, byte[]> frameLoads = new SingleFlight<FrameKey, byte[]>();
+    private static final SingleFlight<FrameKey, byte[]> deltaLoads = new SingleFlight<FrameKey, byte[]>();
+    private static final SingleFlight<String, ThumbnailAtlas> thumbnailLoads = new SingleFlight<String, ThumbnailAtlas>();
+    static final SingleFlight<String, VideoEntry> metadataLoads = new SingleFlight<String, VideoEntry>();
+
+    // Encoded frames by content hash, shared by all sessions and videos
+    private static final FrameCache frameCache = new FrameCache(FlareConfiguration.FRAME_CACHE_BYTES);
+
+    // Reads made on behalf of no session in particular
+    private static final LoadScheduler.Share background = LoadScheduler.getInstance().open("background", 1);
+
+    static {
+        Metrics.register("Cache", "frames", frameCache);
+        Metrics.register("SingleFlight", "audio", audioLoads);
+        Metrics.register("SingleFlight", "frames", frameLoads);
+        Metrics.register("SingleFlight", "deltas", deltaLoads);
+        Metrics.register("SingleFlight", "thumbnails", thumbnailLoads);
+        Metrics.register("SingleFlight", "metadata", metadataLoads);
+    }
+
+    /**
+     * Reads the audio of a video
+     *
+     * @param index catalog snapshot
+     * @param slot video slot
+     * @return audio bytes, empty if the video has no audio
+     * @throws IOException if the audio cannot be read
+     */
+    public static byte[] loadAudio(CatalogIndex index, int slot) throws IOException {
+        return loadAudio(index, slot, background, false);
+    }
+
+    /**
+     * Reads the audio of a video on the loader threads, charged to a session
+     *
+     * @param index catalog snapshot
+     * @param slot video slot
+     * @param share session the read is for
+     * @param urgent true if playback cannot start without it
+     * @return audio bytes, empty if the video has no audio
+     * @throws IOException if the audio cannot be read
+     */
+    public static byte[] loadAudio(CatalogIndex index, int slot, LoadScheduler.Share share, boolean urgent) throws IOException {
+
+        if (index.getAudioLength(slot) <= 0) {
+            return new byte[0];
+        }
+
+        final String path = index.getPath(slot);
+        return audioLoads.load(path, () -> LoadScheduler.getInstance().load(share, urgent, index.getAudioLength(slot),
+                () -> Files.readAllBytes(Paths.get(path, "audio.m4a"))));
+    }
+
+    /**
+     * Reads the encoded JPEG of a frame. Frames with a known content hash
+     * are served from the shared frame cache.
+     *
+     * @param index catalog snapshot
+     * @param slot video slot
+     * @param rendition position of the rendition in the ladder
+     * @param frame frame index
+     * @return JPEG bytes
+     * @throws IOException if the frame cannot be read
+     */
+    public static byte[] loadFrame(CatalogIndex index, int slot, int rendition, int frame) throws IOException {
+        return loadFrame(index, slot, rendition, frame, background, false);
+    }
+
+    /**
+     * Reads the encoded JPEG of a frame, charged to a session. Cache hits and
+     * reads already in flight for another session do not wait for a loader
+     * thread.
+     *
+     * @param index catalog snapshot
+     * @param slot video slot
+     * @param rendition position of the rendition in the ladder
+     * @param frame frame index
+     * @param share session the read is for
+     * @param urgent true for the first frame of a playback
+     * @return JPEG bytes
+     * @throws IOException if the frame cannot be read
+     */
+    public static byte[] loadFrame(CatalogIndex index, int slot, int rendition, int frame,
+            LoadScheduler.Share share, boolean urgent) throws IOException {
+
+        long start = System.nanoTime();
+        try {
+            return readFrame(index, slot, rendition, frame, share, urgent);
+        } finally {
+            ServerMetrics.getFrameLoad().recordSince(start);
+        }
+    }
+
+    private static byte[] readFrame(CatalogIndex index, int slot, int rendition, int frame,
+            LoadScheduler.Share share, boolean urgent) throws IOException {
+
+        FrameHashes hashes = FrameHashes.of(index, slot);
+        ContentHash hash = hashes.get(frame);
+        int id = index.getRenditionId(slot, rendition);
+
+        if (hash != null) {
+            byte[] cached = frameCache.get(hash, id);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        final String path = index.getRenditionPath(slot, rendition);
+        long cost = index.getRenditionFrameBytes(slot, rendition);
+
+        //Videos that were not ingested are hashed on first read
+        BasicFileAttributes attributes = hash == null && id == 0 ? FrameHashes.readAttributes(Paths.get(path), frame) : null;
+        byte[] data = frameLoads.load(new FrameKey(path, frame), () -> LoadScheduler.getInstance().load(share, urgent, cost,
+                () -> Files.readAllBytes(Paths.get(path, "frame" + frame + ".jpg"))));
+
+        if (attributes != null) {
+            hash = ContentHash.of(data);
+            hashes.set(frame, hash, attributes);
+        }
+
+        if (hash != null) {
+            frameCache.put(hash, id, data);
+        }
+
+        return data;
+    }
+
+    /**
+     * Reads the tile delta of a source frame
+     *
+     * @param index catalog snapshot
+     * @param slot video slot
+     * @param frame frame index, not a keyframe
+     * @return delta bytes, null if the full frame has to be sent instead
+     * @throws IOException if the delta cannot be read
+     */
+    public static byte[] loadDelta(CatalogIndex index, int slot, int frame) throws IOException {
+        return loadDelta(index, slot, frame, background);
+    }
+
+    /**
+     * Reads the tile delta of a source frame, charged to a session
+     *
+     * @param index catalog snapshot
+     * @param slot video slot
+     * @param frame frame index, not a keyframe
+     * @param share session the read is for
+     * @return delta bytes, null if the full frame has to be sent instead
+     * @throws IOException if the delta cannot be read
+     */
+    public static byte[] loadDelta(CatalogIndex index, int slot, int frame, LoadScheduler.Share share) throws IOException {
+
+        long start = System.nanoTime();
+        final Path path = Paths.get(index.getPath(slot), TileDelta.DIRECTORY, "frame" + frame + ".bin");
+        byte[] delta = deltaLoads.load(new FrameKey(path.getParent().toString(), frame),
+                () -> LoadScheduler.getInstance().load(share, false, Files.isRegularFile(path) ? Files.size(path) : 0,
+                        () -> Files.isRegularFile(path) ? Files.readAllBytes(path) : new byte[0]));
+
+        ServerMetrics.getFrameLoad().recordSince(start);
+        return delta.length == 0 ? null : delta;
+    }
+
+    /**
+     * Reads the scrub strip of a video
+     *
+     * @param index catalog snapshot
+     * @param slot video slot
+     * @return the atlas or null if none was generated
+     * @throws IOException if the sheets cannot be read
+     */
+    public static ThumbnailAtlas loadThumbnails(CatalogIndex index, int slot) throws IOException {
+
+        final String path = index.getPath(slot);
+        return thumbnailLoads.load(path, () -> ThumbnailAtlas.load(path));
+    }
+
+    /**
+     * The shared frame cache
+     *
+     * @return frame cache
+     */
+    public static FrameCache getFrameCache() {
+        return frameCache;
+    }
+
+    /**
+     * Audio loads, performed and coalesced
+     *
+     * @return the audio single flight
+     */
+    public static SingleFlight<?, ?> getAudioLoads() {
+        return audioLoads;
+    }
+
+    /**
+     * Frame loads, performed and coalesced
+     *
+     * @return the frame single flight
+     */
+    public static SingleFlight<?, ?> getFrameLoads() {
+        return frameLoads;
+    }
+
+    /**
+     * Tile delta loads, performed and coalesced
+     *
+     * @return the delta single flight
+     */
+    public static SingleFlight<?, ?> getDeltaLoads() {
+        return deltaLoads;
+    }
+
+    /**
+     * Scrub strip loads, performed and coalesced
+     *
+     * @return the thumbnail single flight
+     */
+    public static SingleFlight<?, ?> getThumbnailLoads() {
+        return thumbnailLoads;
+    }
+
+    /**
+     * meta.txt loads of the catalog, performed and coalesced
+     *
+     * @return the metadata single flight
+     */
+    public static SingleFlight<?, ?> getMetadataLoads() {
+        return metadataLoads;
+    }
+
+    /**
+     * Identifies one frame file
+     */
+    public static final class FrameKey {
+
+        private final String path;
+        private final int frame;
+
+        FrameKey(String path, int frame) {
+            this.path = path;
+            this.frame = frame;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+
+            if (!(other instanceof FrameKey)) {
+                return false;
+            }
+            FrameKey key = (FrameKey) other;
+            return frame == key.frame && path.equals(key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode() * 31 + frame;
+        }
+    }
+
+}
@@ -0,0 +1,849 @@
+package FlareMedia;
+
+import Core.FlareConfiguration;
+import Utility.AsyncLog;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Builds the rendition ladder, scrub strip and tile deltas of every video in the catalog. Frames are split
+ * into ranges on a ForkJoinPool, each frame is decoded once and then scaled
+ * and encoded for every rendition, with one ImageReader and ImageWriter per
+ * worker thread. Source frames come from the video directory or, if it has
+ * none, from a frames.zip archive which is then unpacked as the source
+ * rendition.
+ *
+ * Ingest is incremental: a rendition frame is only encoded when it is missing
+ * or older than its source frame, and outputs are written to a temporary file
+ * and moved in place, so an interrupted run resumes where it stopped. The
+ * ladder is published to the catalog by writing renditions.txt last. The
+ * scrub strip sprite sheets are rebuilt whenever any frame changed, tile
+ * deltas whenever a frame of their keyframe interval changed.
+ *
+ * Every source frame is hashed into hashes.bin. Frames whose content was
+ * already seen in this run, in the same video or another one, are not
+ * encoded again: their renditions become hard links to those of the first
+ * copy, so each rendition of a content is encoded and stored once
+ * (flare.dedup.link).
+ * Frame files themselves are never replaced, they belong to the library and
+ * editing one in place must not change another video.
+ *
+ * Usage: java FlareMedia.RenditionIngest [media root]
+ *
+ * @author Team 2
+ */
+public class RenditionIngest {
+
+    private static final String ARCHIVE = "frames.zip";
+    private static final String SPEC_FILE = "ingest.txt";
+
+    // Frames handled by one leaf task
+    private static final int FRAMES_PER_TASK = 8;
+
+    private final int[] heights;
+    private final float quality;
+    private final String spec;
+    private final int thumbnailInterval = Math.max(1, FlareConfiguration.THUMBNAIL_INTERVAL);
+    private final int thumbnailHeight = Math.max(1, FlareConfiguration.THUMBNAIL_HEIGHT);
+    private final int thumbnailColumns = Math.max(1, FlareConfiguration.THUMBNAIL_COLUMNS);
+    private final int thumbnailRows = Math.max(1, FlareConfiguration.THUMBNAIL_ROWS);
+    private final int deltaInterval = FlareConfiguration.DELTA_KEYFRAME_INTERVAL;
+    private final int deltaTileSize = Math.max(8, FlareConfiguration.DELTA_TILE_SIZE);
+    private final double deltaThreshold = FlareConfiguration.DELTA_THRESHOLD;
+    private final ForkJoinPool pool;
+
+    // Content hash -> first source frame seen with it, across all videos
+    private final ConcurrentHashMap<ContentHash, Path> canonicalFrames = new ConcurrentHashMap<ContentHash, Path>();
+
+    // One decoder and encoder per worker, both are expensive to look up
+    private final ThreadLocal<Codec> codecs = new ThreadLocal<Codec>() {
+        @Override
+        protected Codec initialValue() {
+            return new Codec(quality);
+        }
+    };
+
+    /**
+     * Constructor
+     *
+     * @param heights frame heights of the renditions, rendition n + 1 gets
+     * heights[n]
+     * @param quality JPEG quality from 0.0 to 1.0
+     * @param parallelism worker threads
+     */
+    public RenditionIngest(int[] heights, float quality, int parallelism) {
+        this.heights = heights.clone();
+        this.quality = quality;
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+
+        StringBuilder builder = new StringBuilder("# spec");
+        for (int height : heights) {
+            builder.append(' ').append(height);
+        }
+        builder.append(" q").append(quality);
+        this.spec = builder.toString();
+    }
+
+    /**
+     * Ingests every video of a catalog snapshot
+     *
+     * @param index catalog snapshot
+     */
+    public void ingest(CatalogIndex index) {
+
+        for (int slot = 0; slot < index.size(); slot++) {
+
+            long start = System.currentTimeMillis();
+            try {
+
+                int encoded = ingestVideo(Paths.get(index.getPath(slot)), index.getFrameCount(slot),
+                        index.getWidth(slot), index.getHeight(slot));
+                AsyncLog.info("{}: {}", index.getName(slot),
+                        encoded + " frames encoded in " + (System.currentTimeMillis() - start) + " ms");
+
+            } catch (IOException | RuntimeException ex) {
+                Logger.getLogger(RenditionIngest.class.getName()).log(Level.SEVERE, index.getName(slot), ex);
+            }
+        }
+    }
+
+    /**
+     * Builds the renditions of a single video
+     *
+     * @param directory the video directory
+     * @param frameCount number of frames
+     * @param width source frame width
+     * @param height source frame height
+     * @return number of frames that had to be encoded
+     * @throws IOException if the renditions cannot be written
+     */
+    public int ingestVideo(Path directory, int frameCount, int width, int height) throws IOException {
+
+        Job job = new Job(directory, frameCount);
+
+        //Only scale down, a rendition as large as the source is pointless
+        for (int n = 0; n < heights.length; n++) {
+            if (heights[n] > 0 && heights[n] < height) {
+                int renditionWidth = Math.max(1, (int) Math.round((double) width * heights[n] / height)) & ~1;
+                job.addRendition(n + 1, Math.max(2, renditionWidth), heights[n]);
+            }
+        }
+
+        Path renditions = directory.resolve(VideoEntry.RENDITIONS_DIRECTORY);
+        Files.createDirectories(renditions);
+
+        //Outputs of a different ladder cannot be reused
+        Path specFile = renditions.resolve(SPEC_FILE);
+        job.force = !Files.isRegularFile(specFile)
+                || !spec.equals(new String(Files.readAllBytes(specFile), Charset.forName("UTF-8")).trim());
+        if (job.force) {
+            writeAtomically(specFile, spec.getBytes(Charset.forName("UTF-8")));
+        }
+
+        for (Path output : job.outputs) {
+            Files.createDirectories(output);
+        }
+
+        try {
+
+            pool.invoke(new FrameRange(job, 0, frameCount, this::hashFrame));
+            findDuplicates(job);
+            pool.invoke(new FrameRange(job, 0, frameCount, this::ingestFrame));
+            linkDuplicates(job);
+
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            job.source.close();
+        }
+
+        job.hashes.save(directory);
+
+        buildThumbnails(job, width, height);
+
+        if (deltaInterval > 0) {
+            buildDeltas(job);
+        }
+
+        //Written last, the catalog rereads the video when it changes
+        writeAtomically(directory.resolve(VideoEntry.RENDITIONS_FILE), job.describe().getBytes(Charset.forName("UTF-8")));
+
+        return (int) job.encoded.sum();
+    }
+
+    /**
+     * Stops the worker threads
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Ingests all videos below the media root
+     *
+     * @param args optional media root, defaults to flare.media.root
+     */
+    public static void main(String[] args) {
+
+        Path root = Paths.get(args.length > 0 ? args[0] : FlareConfiguration.MEDIA_ROOT);
+
+        VideoCatalog catalog = new VideoCatalog(root, FlareConfiguration.CATALOG_DEPTH);
+        catalog.scan();
+
+        RenditionIngest ingest = new RenditionIngest(parseHeights(FlareConfiguration.INGEST_HEIGHTS),
+                FlareConfiguration.INGEST_QUALITY, FlareConfiguration.INGEST_PARALLELISM);
+        ingest.ingest(catalog.getIndex());
+        ingest.shutdown();
+    }
+
+    /**
+     * Parses a comma separated list of heights
+     *
+     * @param heights list such as "720,480,240"
+     * @return the heights
+     */
+    public static int[] parseHeights(String heights) {
+
+        String[] fields = heights.split(",");
+        int[] parsed = new int[fields.length];
+        for (int n = 0; n < fields.length; n++) {
+            parsed[n] = Integer.parseInt(fields[n].trim());
+        }
+        return parsed;
+    }
+
+    private void ingestFrame(Job job, int n) throws IOException {
+
+        String fileName = "frame" + n + ".jpg";
+        long sourceTime = job.source.lastModified(n);
+
+        //Archived frames are unpacked as the source rendition
+        if (job.source instanceof ArchiveSource) {
+            Path target = job.directory.resolve(fileName);
+            if (job.force || isStale(target, sourceTime)) {
+                try (InputStream in = job.source.open(n)) {
+                    writeAtomically(target, readFully(in));
+                }
+            }
+        }
+
+        //Duplicates are linked to their first copy afterwards
+        if (job.duplicateOf[n] != null) {
+            return;
+        }
+
+        boolean[] stale = new boolean[job.outputs.size()];
+        boolean anyStale = false;
+
+        for (int r = 0; r < stale.length; r++) {
+            Path output = job.outputs.get(r).resolve(fileName);
+            stale[r] = job.force || isStale(output, sourceTime);
+            if (!stale[r]) {
+                job.bytes[r].add(Files.size(output));
+            }
+            anyStale |= stale[r];
+        }
+
+        if (anyStale) {
+            encodeRenditions(job, n, stale);
+        }
+    }
+
+    private void encodeRenditions(Job job, int n, boolean[] stale) throws IOException {
+
+        String fileName = "frame" + n + ".jpg";
+        Codec codec = codecs.get();
+        BufferedImage source;
+        try (InputStream in = job.source.open(n)) {
+            source = codec.decode(in);
+        }
+
+        for (int r = 0; r < stale.length; r++) {
+            if (stale[r]) {
+                byte[] encoded = codec.encode(scale(source, job.widths.get(r), job.heights.get(r)));
+                writeAtomically(job.outputs.get(r).resolve(fileName), encoded);
+                job.bytes[r].add(encoded.length);
+            }
+        }
+
+        job.encoded.increment();
+    }
+
+    /**
+     * Hashes a source frame, reusing the hash from the last ingest if the
+     * frame did not change since
+     */
+    private void hashFrame(Job job, int n) throws IOException {
+
+        if (job.previousHashes.get(n) != null && job.source.lastModified(n) <= job.hashesTime) {
+            job.hashes.set(n, job.previousHashes.get(n));
+            return;
+        }
+
+        try (InputStream in = job.source.open(n)) {
+            job.hashes.set(n, ContentHash.of(readFully(in)));
+        }
+    }
+
+    /**
+     * Finds the frames whose content was already seen, in this video or an
+     * earlier one. Runs in frame order so the first copy stays canonical.
+     */
+    private void findDuplicates(Job job) {
+
+        if (!FlareConfiguration.DEDUP_LINK) {
+            return;
+        }
+
+        for (int n = 0; n < job.frameCount; n++) {
+
+            Path frame = job.directory.resolve("frame" + n + ".jpg");
+            Path canonical = canonicalFrames.putIfAbsent(job.hashes.get(n), frame);
+
+            if (canonical != null && !canonical.equals(frame)) {
+                job.duplicateOf[n] = canonical;
+            }
+        }
+    }
+
+    /**
+     * Replaces the renditions of duplicate frames with hard links to those
+     * of the first copy, encoding them only if the first copy has no such
+     * rendition. The frame files themselves stay as they are.
+     */
+    private void linkDuplicates(Job job) throws IOException {
+
+        for (int n = 0; n < job.frameCount; n++) {
+
+            Path canonical = job.duplicateOf[n];
+            if (canonical == null) {
+                continue;
+            }
+
+            String fileName = "frame" + n + ".jpg";
+
+            boolean[] stale = new boolean[job.outputs.size()];
+            boolean anyStale = false;
+
+            for (int r = 0; r < stale.length; r++) {
+
+                Path canonicalOutput = Paths.get(VideoEntry.renditionPath(canonical.getParent().toString(), job.ids.get(r)))
+                        .resolve(canonical.getFileName());
+                Path output = job.outputs.get(r).resolve(fileName);
+
+                if (Files.isRegularFile(canonicalOutput)) {
+                    link(output, canonicalOutput);
+                    job.bytes[r].add(Files.size(output));
+                } else {
+                    stale[r] = true;
+                    anyStale = true;
+                }
+            }
+
+            if (anyStale) {
+                encodeRenditions(job, n, stale);
+            }
+        }
+    }
+
+    /**
+     * Points a file at the same data as another one. Falls back to a copy
+     * where hard links are not supported.
+     */
+    private static void link(Path target, Path canonical) throws IOException {
+
+        if (Files.exists(target) && Files.isSameFile(target, canonical)) {
+            return;
+        }
+
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.deleteIfExists(temporary);
+
+        try {
+            Files.createLink(temporary, canonical);
+        } catch (IOException | UnsupportedOperationException ex) {
+            Files.copy(canonical, temporary);
+        }
+
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Builds the scrub strip sprite sheets of a video, one sheet per task.
+     * Thumbnails are decoded from the smallest rendition when there is one.
+     */
+    private void buildThumbnails(Job job, int width, int height) throws IOException {
+
+        Path directory = job.directory.resolve(ThumbnailAtlas.DIRECTORY);
+        final int count = (job.frameCount + thumbnailInterval - 1) / thumbnailInterval;
+
+        //The sampled source frames are part of the spec, a changed frame rebuilds the sheets
+        long sourceStamp = job.frameCount;
+        for (int t = 0; t < count; t++) {
+            sourceStamp = sourceStamp * 31 + job.source.lastModified(t * thumbnailInterval);
+        }
+        String thumbnailSpec = "# thumbnails " + thumbnailInterval + " " + thumbnailHeight + " "
+                + thumbnailColumns + "x" + thumbnailRows + " q" + quality
+                + " src " + job.frameCount + " " + Long.toHexString(sourceStamp);
+
+        if (!job.force && ThumbnailAtlas.isCurrent(directory, thumbnailSpec)) {
+            return;
+        }
+
+        Files.createDirectories(directory);
+
+        final int thumbWidth = Math.max(1, (int) Math.round((double) width * thumbnailHeight / height));
+        final int perSheet = thumbnailColumns * thumbnailRows;
+        int sheetCount = (count + perSheet - 1) / perSheet;
+
+        Path smallest = job.directory;
+        int smallestHeight = height;
+        for (int r = 0; r < job.outputs.size(); r++) {
+            if (job.heights.get(r) < smallestHeight) {
+                smallest = job.outputs.get(r);
+                smallestHeight = job.heights.get(r);
+            }
+        }
+        final Path frames = smallest;
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+        for (int k = 0; k < sheetCount; k++) {
+
+            final int sheet = k;
+            tasks.add(pool.submit(new RecursiveAction() {
+                @Override
+                protected void compute() {
+
+                    int first = sheet * perSheet;
+                    int last = Math.min(count, first + perSheet);
+                    int columns = Math.min(thumbnailColumns, last - first);
+                    int rows = (last - first + thumbnailColumns - 1) / thumbnailColumns;
+
+                    BufferedImage sheetImage = new BufferedImage(columns * thumbWidth, rows * thumbnailHeight,
+                            BufferedImage.TYPE_INT_RGB);
+                    Graphics2D graphics = sheetImage.createGraphics();
+                    Codec codec = codecs.get();
+
+                    try {
+
+                        for (int t = first; t < last; t++) {
+                            BufferedImage frame;
+                            try (InputStream in = Files.newInputStream(frames.resolve("frame" + (t * thumbnailInterval) + ".jpg"))) {
+                                frame = codec.decode(in);
+                            }
+                            int cell = t - first;
+                            graphics.drawImage(scale(frame, thumbWidth, thumbnailHeight),
+                                    (cell % thumbnailColumns) * thumbWidth, (cell / thumbnailColumns) * thumbnailHeight, null);
+                        }
+
+                        writeAtomically(directory.resolve(ThumbnailAtlas.sheetName(sheet)), codec.encode(sheetImage));
+
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    } finally {
+                        graphics.dispose();
+                    }
+                }
+            }));
+        }
+
+        try {
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+
+        ThumbnailAtlas.writeIndex(directory, thumbnailSpec, thumbnailInterval, thumbWidth, thumbnailHeight,
+                thumbnailColumns, thumbnailRows, count, sheetCount);
+    }
+
+    /**
+     * Builds the tile deltas of the source frames. Each keyframe interval
+     * only depends on its own frames, so intervals are encoded in parallel.
+     * A delta that is not smaller than the full frame is stored empty, the
+     * full frame is sent instead.
+     */
+    private void buildDeltas(Job job) throws IOException {
+
+        Path directory = job.directory.resolve(TileDelta.DIRECTORY);
+        Files.createDirectories(directory);
+
+        String deltaSpec = "# delta " + deltaInterval + " " + deltaTileSize + " " + deltaThreshold + " q" + quality;
+        Path index = directory.resolve(TileDelta.INDEX_FILE);
+        final boolean force = !Files.isRegularFile(index)
+                || !Files.readAllLines(index, Charset.forName("UTF-8")).get(0).trim().equals(deltaSpec);
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+
+        for (int k = 0; k < job.frameCount; k += deltaInterval) {
+
+            final int keyframe = k;
+            final int end = Math.min(job.frameCount, k + deltaInterval);
+
+            tasks.add(pool.submit(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    try {
+                        buildDeltaInterval(job, directory, keyframe, end, force);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+            }));
+        }
+
+        try {
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+
+        writeAtomically(index, (deltaSpec + "\n" + deltaInterval + " " + deltaTileSize + "\n").getBytes(Charset.forName("UTF-8")));
+    }
+
+    private void buildDeltaInterval(Job job, Path directory, int keyframe, int end, boolean force) throws IOException {
+
+        long keyTime = Files.getLastModifiedTime(job.directory.resolve("frame" + keyframe + ".jpg")).toMillis();
+
+        boolean stale = force;
+        for (int n = keyframe + 1; n < end && !stale; n++) {
+            Path source = job.directory.resolve("frame" + n + ".jpg");
+            stale = isStale(directory.resolve("frame" + n + ".bin"),
+                    Math.max(keyTime, Files.getLastModifiedTime(source).toMillis()));
+        }
+
+        if (!stale) {
+            return;
+        }
+
+        Codec codec = codecs.get();
+        BufferedImage key = TileDelta.toRgb(decodeSource(codec, job.directory, keyframe));
+        boolean[] previous = null;
+
+        for (int n = keyframe + 1; n < end; n++) {
+
+            Path source = job.directory.resolve("frame" + n + ".jpg");
+            BufferedImage frame = TileDelta.toRgb(decodeSource(codec, job.directory, n));
+            boolean[] changed = TileDelta.changedTiles(key, frame, deltaTileSize, deltaThreshold);
+
+            //Tiles that changed back to the keyframe must be sent once more
+            boolean[] tiles = changed.clone();
+            if (previous != null) {
+                for (int t = 0; t < tiles.length; t++) {
+                    tiles[t] |= previous[t];
+                }
+            }
+
+            byte[] delta = TileDelta.encode(frame, tiles, keyframe, deltaTileSize, codec::encode);
+            if (delta.length >= Files.size(source)) {
+                delta = new byte[0];
+            }
+            writeAtomically(directory.resolve("frame" + n + ".bin"), delta);
+
+            previous = changed;
+        }
+    }
+
+    private static BufferedImage decodeSource(Codec codec, Path directory, int n) throws IOException {
+
+        try (InputStream in = Files.newInputStream(directory.resolve("frame" + n + ".jpg"))) {
+            return codec.decode(in);
+        }
+    }
+
+    private static boolean isStale(Path output, long sourceTime) throws IOException {
+        return !Files.isRegularFile(output) || Files.getLastModifiedTime(output).toMillis() < sourceTime;
+    }
+
+    /**
+     * Scales down in steps of at most one half, a single bilinear step
+     * loses too much detail on large reductions
+     */
+    private static BufferedImage scale(BufferedImage source, int width, int height) {
+
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+
+            BufferedImage next = new BufferedImage(currentWidth, currentHeight, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            graphics.dispose();
+            current = next;
+
+        } while (currentWidth != width || currentHeight != height);
+
+        return current;
+    }
+
+    static void writeAtomically(Path target, byte[] data) throws IOException {
+
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(temporary, data);
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[16 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * State of the ingest of one video, shared by all its frame tasks
+     */
+    private final class Job {
+
+        final Path directory;
+        final FrameSource source;
+        final List<Integer> ids = new ArrayList<Integer>();
+        final List<Integer> widths = new ArrayList<Integer>();
+        final List<Integer> heights = new ArrayList<Integer>();
+        final List<Path> outputs = new ArrayList<Path>();
+        final LongAdder encoded = new LongAdder();
+        LongAdder[] bytes = new LongAdder[0];
+        final int frameCount;
+        final FrameHashes hashes;
+        final FrameHashes previousHashes;
+        final long hashesTime;
+        final Path[] duplicateOf;
+        boolean force;
+
+        Job(Path directory, int frameCount) throws IOException {
+            this.directory = directory;
+            this.frameCount = frameCount;
+            this.hashes = new FrameHashes(frameCount);
+            this.previousHashes = FrameHashes.load(directory, frameCount);
+            Path hashesFile = directory.resolve(FrameHashes.FILE);
+            this.hashesTime = Files.isRegularFile(hashesFile) ? Files.getLastModifiedTime(hashesFile).toMillis() : 0;
+            this.duplicateOf = new Path[frameCount];
+
+            Path archive = directory.resolve(ARCHIVE);
+            if (!Files.isRegularFile(directory.resolve("frame0.jpg")) && Files.isRegularFile(archive)) {
+                source = new ArchiveSource(archive);
+            } else {
+                source = new DirectorySource(directory);
+            }
+        }
+
+        void addRendition(int id, int width, int height) {
+            ids.add(id);
+            widths.add(width);
+            heights.add(height);
+            outputs.add(Paths.get(VideoEntry.renditionPath(directory.toString(), id)));
+
+            bytes = new LongAdder[ids.size()];
+            for (int r = 0; r < bytes.length; r++) {
+                bytes[r] = new LongAdder();
+            }
+        }
+
+        String describe() {
+
+            StringBuilder builder = new StringBuilder(spec).append('\n');
+            for (int r = 0; r < ids.size(); r++) {
+                builder.append(ids.get(r)).append(' ')
+                        .append(widths.get(r)).append(' ')
+                        .append(heights.get(r)).append(' ')
+                        .append(quality).append(' ')
+                        .append(frameCount == 0 ? 0 : bytes[r].sum() / frameCount).append('\n');
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Splits the frames of a video until a range is small enough to process
+     */
+    private final class FrameRange extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Job job;
+        private final int from;
+        private final int to;
+        private final FrameOperation operation;
+
+        FrameRange(Job job, int from, int to, FrameOperation operation) {
+            this.job = job;
+            this.from = from;
+            this.to = to;
+            this.operation = operation;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (to - from > FRAMES_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new FrameRange(job, from, middle, operation), new FrameRange(job, middle, to, operation));
+                return;
+            }
+
+            for (int n = from; n < to; n++) {
+                try {
+                    operation.apply(job, n);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Work done for each frame of a FrameRange
+     */
+    private interface FrameOperation {
+
+        void apply(Job job, int n) throws IOException;
+    }
+
+    /**
+     * Reused JPEG reader and writer of one worker thread
+     */
+    private static final class Codec {
+
+        private final ImageReader reader = ImageIO.getImageReadersByFormatName("jpeg").next();
+        private final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        private final ImageWriteParam param = writer.getDefaultWriteParam();
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        Codec(float quality) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+        }
+
+        BufferedImage decode(InputStream in) throws IOException {
+
+            try (ImageInputStream stream = ImageIO.createImageInputStream(in)) {
+                reader.setInput(stream, true, true);
+                return reader.read(0);
+            } finally {
+                reader.setInput(null);
+            }
+        }
+
+        byte[] encode(BufferedImage image) throws IOException {
+
+            buffer.reset();
+            try (MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(buffer)) {
+                writer.setOutput(stream);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.setOutput(null);
+            }
+            return buffer.toByteArray();
+        }
+    }
+
+    /**
+     * Where the source frames of a video are read from
+     */
+    private interface FrameSource {
+
+        InputStream open(int n) throws IOException;
+
+        long lastModified(int n) throws IOException;
+
+        void close() throws IOException;
+    }
+
+    private static final class DirectorySource implements FrameSource {
+
+        private final Path directory;
+
+        DirectorySource(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public InputStream open(int n) throws IOException {
+            return Files.newInputStream(directory.resolve("frame" + n + ".jpg"));
+        }
+
+        @Override
+        public long lastModified(int n) throws IOException {
+            return Files.getLastModifiedTime(directory.resolve("frame" + n + ".jpg")).toMillis();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class ArchiveSource implements FrameSource {
+
+        private final ZipFile zipFile;
+
+        ArchiveSource(Path archive) throws IOException {
+            zipFile = new ZipFile(archive.toFile());
+        }
+
+        private ZipEntry entry(int n) throws IOException {
+
+            ZipEntry entry = zipFile.getEntry("frame" + n + ".jpg");
+            if (entry == null) {
+                throw new IOException("frame" + n + ".jpg missing from " + zipFile.getName());
+            }
+            return entry;
+        }
+
+        @Override
+        public InputStream open(int n) throws IOException {
+            return zipFile.getInputStream(entry(n));
+        }
+
+        @Override
+        public long lastModified(int n) throws IOException {
+            return entry(n).getTime();
+        }
+
+        @Override
+        public void close() throws IOException {
+            zipFile.close();
+        }
+    }
+
+}
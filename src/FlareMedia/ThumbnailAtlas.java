@@ -0,0 +1,199 @@
+package FlareMedia;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Scrub strip of a video: one thumbnail every interval frames, packed row
+ * by row into a grid on a few sprite sheets. Written at ingest into the
+ * thumbnails directory of the video as sheet0.jpg, sheet1.jpg, ... plus an
+ * index.txt with the grid layout.
+ *
+ * @author Team 2
+ */
+public final class ThumbnailAtlas {
+
+    static final String DIRECTORY = "thumbnails";
+    static final String INDEX_FILE = "index.txt";
+
+    private final int interval;
+    private final int thumbWidth;
+    private final int thumbHeight;
+    private final int columns;
+    private final int rows;
+    private final int count;
+    private final byte[][] sheets;
+
+    private ThumbnailAtlas(int interval, int thumbWidth, int thumbHeight, int columns, int rows, int count, byte[][] sheets) {
+        this.interval = interval;
+        this.thumbWidth = thumbWidth;
+        this.thumbHeight = thumbHeight;
+        this.columns = columns;
+        this.rows = rows;
+        this.count = count;
+        this.sheets = sheets;
+    }
+
+    /**
+     * Loads the scrub strip of a video
+     *
+     * @param videoPath the video directory
+     * @return the atlas or null if none was generated
+     * @throws IOException if the sheets cannot be read
+     */
+    public static ThumbnailAtlas load(String videoPath) throws IOException {
+
+        Path directory = Paths.get(videoPath, DIRECTORY);
+        Path index = directory.resolve(INDEX_FILE);
+
+        if (!Files.isRegularFile(index)) {
+            return null;
+        }
+
+        List<String> lines = Files.readAllLines(index, Charset.forName("UTF-8"));
+        String[] fields = lines.get(1).trim().split("\\s+");
+
+        int sheetCount = Integer.parseInt(fields[6]);
+        byte[][] sheets = new byte[sheetCount][];
+        for (int k = 0; k < sheetCount; k++) {
+            sheets[k] = Files.readAllBytes(directory.resolve(sheetName(k)));
+        }
+
+        return new ThumbnailAtlas(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                Integer.parseInt(fields[3]), Integer.parseInt(fields[4]), Integer.parseInt(fields[5]), sheets);
+    }
+
+    /**
+     * Checks if the atlas in a directory was built with the given settings
+     *
+     * @param directory thumbnails directory
+     * @param spec settings line written with the index
+     * @return true if the atlas can be reused
+     * @throws IOException if the index cannot be read
+     */
+    static boolean isCurrent(Path directory, String spec) throws IOException {
+
+        Path index = directory.resolve(INDEX_FILE);
+        if (!Files.isRegularFile(index)) {
+            return false;
+        }
+
+        List<String> lines = Files.readAllLines(index, Charset.forName("UTF-8"));
+        return !lines.isEmpty() && lines.get(0).trim().equals(spec);
+    }
+
+    /**
+     * Writes the grid layout, after all the sheets were written
+     */
+    static void writeIndex(Path directory, String spec, int interval, int thumbWidth, int thumbHeight,
+            int columns, int rows, int count, int sheetCount) throws IOException {
+
+        String index = spec + "\n" + interval + " " + thumbWidth + " " + thumbHeight + " "
+                + columns + " " + rows + " " + count + " " + sheetCount + "\n";
+        RenditionIngest.writeAtomically(directory.resolve(INDEX_FILE), index.getBytes(Charset.forName("UTF-8")));
+    }
+
+    static String sheetName(int sheet) {
+        return "sheet" + sheet + ".jpg";
+    }
+
+    /**
+     * Frames between two thumbnails
+     *
+     * @return thumbnail interval in frames
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Width of one thumbnail
+     *
+     * @return width in pixels
+     */
+    public int getThumbWidth() {
+        return thumbWidth;
+    }
+
+    /**
+     * Height of one thumbnail
+     *
+     * @return height in pixels
+     */
+    public int getThumbHeight() {
+        return thumbHeight;
+    }
+
+    /**
+     * Number of thumbnails in the atlas
+     *
+     * @return thumbnail count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Number of sprite sheets
+     *
+     * @return sheet count
+     */
+    public int getSheetCount() {
+        return sheets.length;
+    }
+
+    /**
+     * JPEG bytes of a sprite sheet
+     *
+     * @param sheet sheet number
+     * @return encoded sheet
+     */
+    public byte[] getSheet(int sheet) {
+        return sheets[sheet];
+    }
+
+    /**
+     * Frame a thumbnail was taken from
+     *
+     * @param thumbnail thumbnail number
+     * @return frame index
+     */
+    public int getFrameIndex(int thumbnail) {
+        return thumbnail * interval;
+    }
+
+    /**
+     * Sprite sheet holding a thumbnail
+     *
+     * @param thumbnail thumbnail number
+     * @return sheet number
+     */
+    public int getSheetOf(int thumbnail) {
+        return thumbnail / (columns * rows);
+    }
+
+    /**
+     * Left edge of a thumbnail on its sheet
+     *
+     * @param thumbnail thumbnail number
+     * @return x in pixels
+     */
+    public int getX(int thumbnail) {
+        return (thumbnail % columns) * thumbWidth;
+    }
+
+    /**
+     * Top edge of a thumbnail on its sheet
+     *
+     * @param thumbnail thumbnail number
+     * @return y in pixels
+     */
+    public int getY(int thumbnail) {
+        return ((thumbnail % (columns * rows)) / columns) * thumbHeight;
+    }
+
+}
@@ -0,0 +1,179 @@
+package FlareMedia;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Tile based delta encoding for mostly static video such as slides and
+ * screen recordings. A frame is cut into square tiles and compared with the
+ * last keyframe. A delta carries every tile that differs from the keyframe
+ * in this frame or in the previous one, so it can be applied on top of the
+ * previous frame, and also on top of the keyframe when seeking.
+ *
+ * Delta layout, also the FRAME_DELTA body after the frame index: keyframe
+ * index (4 bytes), tile count (2 bytes), then per tile x, y, width, height
+ * (2 bytes each), JPEG length (4 bytes) and the JPEG bytes.
+ *
+ * @author Team 2
+ */
+public final class TileDelta {
+
+    /**
+     * Directory of a video holding one frameN.bin per delta frame
+     */
+    static final String DIRECTORY = "delta";
+
+    /**
+     * Written last, holds the settings and keyframe interval
+     */
+    static final String INDEX_FILE = "index.txt";
+
+    /**
+     * Encodes tile images
+     */
+    interface TileEncoder {
+
+        byte[] encode(BufferedImage tile) throws IOException;
+    }
+
+    private TileDelta() {
+    }
+
+    /**
+     * Converts a decoded frame to packed RGB pixels
+     *
+     * @param image decoded frame
+     * @return frame as TYPE_INT_RGB
+     */
+    static BufferedImage toRgb(BufferedImage image) {
+
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return rgb;
+    }
+
+    /**
+     * Finds the tiles of a frame that differ from the keyframe. A tile
+     * differs when the mean absolute difference of its color channels is
+     * above the threshold, which hides JPEG noise.
+     *
+     * @param keyframe keyframe as TYPE_INT_RGB
+     * @param frame frame as TYPE_INT_RGB
+     * @param tileSize edge length of a tile
+     * @param threshold mean difference per channel that counts as a change
+     * @return one flag per tile, row by row
+     */
+    static boolean[] changedTiles(BufferedImage keyframe, BufferedImage frame, int tileSize, double threshold) {
+
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int columns = (width + tileSize - 1) / tileSize;
+        int rows = (height + tileSize - 1) / tileSize;
+
+        int[] keyPixels = ((DataBufferInt) keyframe.getRaster().getDataBuffer()).getData();
+        int[] pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+
+        long[] differences = new long[columns * rows];
+
+        for (int y = 0; y < height; y++) {
+
+            int row = y / tileSize * columns;
+            int offset = y * width;
+
+            for (int x = 0; x < width; x++) {
+
+                int a = keyPixels[offset + x];
+                int b = pixels[offset + x];
+                if (a == b) {
+                    continue;
+                }
+
+                differences[row + x / tileSize] += Math.abs(((a >> 16) & 0xff) - ((b >> 16) & 0xff))
+                        + Math.abs(((a >> 8) & 0xff) - ((b >> 8) & 0xff))
+                        + Math.abs((a & 0xff) - (b & 0xff));
+            }
+        }
+
+        boolean[] changed = new boolean[columns * rows];
+        for (int t = 0; t < changed.length; t++) {
+            int tileWidth = Math.min(tileSize, width - (t % columns) * tileSize);
+            int tileHeight = Math.min(tileSize, height - (t / columns) * tileSize);
+            changed[t] = differences[t] > threshold * 3 * tileWidth * tileHeight;
+        }
+        return changed;
+    }
+
+    /**
+     * Encodes the flagged tiles of a frame
+     *
+     * @param frame the frame
+     * @param tiles tiles to include, row by row
+     * @param keyframe index of the keyframe the delta is based on
+     * @param tileSize edge length of a tile
+     * @param encoder JPEG encoder for the tiles
+     * @return delta bytes
+     * @throws IOException if a tile cannot be encoded
+     */
+    static byte[] encode(BufferedImage frame, boolean[] tiles, int keyframe, int tileSize, TileEncoder encoder) throws IOException {
+
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int columns = (width + tileSize - 1) / tileSize;
+
+        int tileCount = 0;
+        for (boolean tile : tiles) {
+            if (tile) {
+                tileCount++;
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInt(out, keyframe);
+        writeShort(out, tileCount);
+
+        for (int t = 0; t < tiles.length; t++) {
+
+            if (!tiles[t]) {
+                continue;
+            }
+
+            int x = (t % columns) * tileSize;
+            int y = (t / columns) * tileSize;
+            int tileWidth = Math.min(tileSize, width - x);
+            int tileHeight = Math.min(tileSize, height - y);
+
+            byte[] jpeg = encoder.encode(frame.getSubimage(x, y, tileWidth, tileHeight));
+
+            writeShort(out, x);
+            writeShort(out, y);
+            writeShort(out, tileWidth);
+            writeShort(out, tileHeight);
+            writeInt(out, jpeg.length);
+            out.write(jpeg);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >> 24);
+        out.write(value >> 16);
+        out.write(value >> 8);
+        out.write(value);
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value >> 8);
+        out.write(value);
+    }
+
+}
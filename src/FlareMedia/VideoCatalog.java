@@ -0,0 +1,340 @@
+package FlareMedia;
+
+import Core.FlareConfiguration;
+import Utility.AsyncLog;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Catalog of the videos below the media root. A video is any directory that
+ * holds a meta.txt, its optional renditions.txt lists the rendition ladder
+ * produced at ingest. The root is scanned in parallel once, after that a
+ * WatchService keeps the catalog current, so opening a video is a lookup in
+ * the current {@link CatalogIndex} and needs no metadata I/O.
+ *
+ * @author Team 2
+ */
+public class VideoCatalog implements Runnable {
+
+    // Singleton Instance
+    private static VideoCatalog catalog;
+
+    private final Path root;
+    private final int depth;
+    private final Map<String, VideoEntry> entries = new ConcurrentHashMap<String, VideoEntry>();
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<WatchKey, Path>();
+    private volatile CatalogIndex index = CatalogIndex.EMPTY;
+    private WatchService watchService;
+
+    /**
+     * Gets singleton instance. The first call starts watching the configured
+     * media root and scans it.
+     *
+     * @return the catalog of the configured media root
+     */
+    public static synchronized VideoCatalog getInstance() {
+
+        if (catalog == null) {
+
+            //Watched before the scan so no change in between is missed
+            catalog = new VideoCatalog(Paths.get(FlareConfiguration.MEDIA_ROOT), FlareConfiguration.CATALOG_DEPTH);
+            catalog.startWatching();
+            catalog.scan();
+        }
+
+        return catalog;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param root media root directory
+     * @param depth how many levels below the root are searched
+     */
+    public VideoCatalog(Path root, int depth) {
+        this.root = root.toAbsolutePath().normalize();
+        this.depth = depth;
+    }
+
+    /**
+     * Returns the current snapshot. Keep the returned reference for the
+     * duration of a request so all reads are consistent.
+     *
+     * @return current catalog index
+     */
+    public CatalogIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Rebuilds the whole catalog. Candidate directories are collected first
+     * and their meta.txt files are parsed in parallel.
+     */
+    public synchronized void scan() {
+
+        List<Path> directories = new ArrayList<Path>();
+        collectDirectories(root, 0, directories);
+        for (Path directory : directories) {
+            register(directory);
+        }
+
+        Map<String, VideoEntry> scanned = directories.parallelStream()
+                .map(this::load)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toMap(entry -> entry.name, entry -> entry));
+
+        entries.clear();
+        entries.putAll(scanned);
+        publish();
+
+        AsyncLog.info("Catalog has {} videos under {}", index.size(), root);
+    }
+
+    /**
+     * Starts a daemon thread that applies file system changes to the catalog
+     */
+    public synchronized void startWatching() {
+
+        if (watchService != null) {
+            return;
+        }
+
+        try {
+
+            watchService = FileSystems.getDefault().newWatchService();
+            List<Path> directories = new ArrayList<Path>();
+            collectDirectories(root, 0, directories);
+            for (Path directory : directories) {
+                register(directory);
+            }
+
+            Thread watcher = new Thread(this, "flare-catalog-watch");
+            watcher.setDaemon(true);
+            watcher.start();
+
+        } catch (IOException ex) {
+            Logger.getLogger(VideoCatalog.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Watch loop. Runs until the watch service is closed.
+     */
+    @Override
+    public void run() {
+
+        while (true) {
+
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                return;
+            }
+
+            synchronized (this) {
+
+                Path directory = watchedDirectories.get(key);
+                boolean changed = false;
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        scan();
+                        continue;
+                    }
+
+                    if (directory == null) {
+                        continue;
+                    }
+
+                    Path child = directory.resolve((Path) event.context());
+                    String fileName = child.getFileName().toString();
+
+                    if (fileName.equals("meta.txt") || fileName.equals("audio.m4a") || fileName.equals(VideoEntry.RENDITIONS_FILE)) {
+
+                        changed |= refresh(directory);
+
+                    } else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) {
+
+                        changed |= addTree(child);
+
+                    } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+
+                        changed |= removeTree(child);
+                    }
+                }
+
+                if (!key.reset()) {
+                    watchedDirectories.remove(key);
+                }
+
+                if (changed) {
+                    publish();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops watching the media root
+     */
+    public synchronized void close() {
+
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ex) {
+                Logger.getLogger(VideoCatalog.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            watchService = null;
+        }
+    }
+
+    /**
+     * Turns a requested path into a catalog name
+     *
+     * @param name path as sent by the client
+     * @return name with '/' separators and no leading "./" or trailing '/'
+     */
+    static String normalize(String name) {
+
+        String normalized = name.replace('\\', '/');
+        while (normalized.startsWith("./")) {
+            normalized = normalized.substring(2);
+        }
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    private String nameOf(Path directory) {
+        return normalize(root.relativize(directory).toString());
+    }
+
+    private int depthOf(Path directory) {
+        return directory.equals(root) ? 0 : root.relativize(directory).getNameCount();
+    }
+
+    private VideoEntry load(Path directory) {
+
+        if (!Files.isRegularFile(directory.resolve("meta.txt"))) {
+            return null;
+        }
+
+        try {
+            return MediaStore.metadataLoads.load(directory.toString(), () -> VideoEntry.parse(nameOf(directory), directory));
+        } catch (IOException | RuntimeException ex) {
+            AsyncLog.warn("Skipping {}: {}", directory, ex);
+            return null;
+        }
+    }
+
+    private boolean refresh(Path directory) {
+
+        VideoEntry entry = load(directory);
+        String name = nameOf(directory);
+        FrameHashes.invalidate(directory.toString());
+
+        if (entry == null) {
+            return entries.remove(name) != null;
+        }
+
+        entries.put(name, entry);
+        return true;
+    }
+
+    private boolean addTree(Path directory) {
+
+        if (depthOf(directory) > depth) {
+            return false;
+        }
+
+        List<Path> directories = new ArrayList<Path>();
+        collectDirectories(directory, depthOf(directory), directories);
+
+        boolean changed = false;
+        for (Path added : directories) {
+            register(added);
+            changed |= refresh(added);
+        }
+        return changed;
+    }
+
+    private boolean removeTree(Path directory) {
+
+        String name = nameOf(directory);
+        String prefix = name + "/";
+        boolean changed = false;
+
+        Iterator<String> names = entries.keySet().iterator();
+        while (names.hasNext()) {
+            String entryName = names.next();
+            if (entryName.equals(name) || entryName.startsWith(prefix)) {
+                names.remove();
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private void register(Path directory) {
+
+        if (watchService == null) {
+            return;
+        }
+
+        try {
+            WatchKey key = directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            watchedDirectories.put(key, directory);
+        } catch (IOException ex) {
+            Logger.getLogger(VideoCatalog.class.getName()).log(Level.WARNING, null, ex);
+        }
+    }
+
+    private void collectDirectories(Path directory, int level, List<Path> directories) {
+
+        directories.add(directory);
+
+        //Video directories are leaves, their sub directories hold renditions
+        if (level >= depth || Files.isRegularFile(directory.resolve("meta.txt"))) {
+            return;
+        }
+
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path child : children) {
+                collectDirectories(child, level + 1, directories);
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(VideoCatalog.class.getName()).log(Level.WARNING, null, ex);
+        }
+    }
+
+    private void publish() {
+        index = new CatalogIndex(entries.values());
+    }
+
+}
@@ -0,0 +1,184 @@
+package FlareMedia;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parsed meta.txt and rendition ladder of a single video directory
+ *
+ * @author Team 2
+ */
+final class VideoEntry {
+
+    /**
+     * Rendition ladder of a video, one "id width height quality frameBytes"
+     * line per rendition, lines starting with # are ignored. Rendition 0 is the source frames in the video
+     * directory, rendition n lives in renditions/n.
+     */
+    static final String RENDITIONS_FILE = "renditions.txt";
+
+    static final String RENDITIONS_DIRECTORY = "renditions";
+
+    // Source frames sampled to estimate the average source frame size
+    private static final int FRAME_SAMPLES = 16;
+
+    final String name;
+    final String path;
+    final int frameCount;
+    final int width;
+    final int height;
+    final double fps;
+    final double duration;
+    final long audioLength;
+    final int keyframeInterval;
+
+    // Rendition ladder, largest frames first
+    final int[] renditionIds;
+    final int[] renditionWidths;
+    final int[] renditionHeights;
+    final long[] renditionFrameBytes;
+    final String[] renditionPaths;
+
+    private VideoEntry(String name, String path, int frameCount, int width, int height, double fps, double duration,
+            long audioLength, int keyframeInterval, List<long[]> ladder) {
+        this.name = name;
+        this.path = path;
+        this.frameCount = frameCount;
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+        this.duration = duration;
+        this.audioLength = audioLength;
+        this.keyframeInterval = keyframeInterval;
+
+        int renditions = ladder.size();
+        renditionIds = new int[renditions];
+        renditionWidths = new int[renditions];
+        renditionHeights = new int[renditions];
+        renditionFrameBytes = new long[renditions];
+        renditionPaths = new String[renditions];
+
+        for (int r = 0; r < renditions; r++) {
+            long[] rendition = ladder.get(r);
+            renditionIds[r] = (int) rendition[0];
+            renditionWidths[r] = (int) rendition[1];
+            renditionHeights[r] = (int) rendition[2];
+            renditionFrameBytes[r] = rendition[3];
+            renditionPaths[r] = renditionPath(path, renditionIds[r]);
+        }
+    }
+
+    /**
+     * Directory holding the frames of a rendition
+     *
+     * @param videoPath the video directory
+     * @param id rendition id
+     * @return directory path
+     */
+    static String renditionPath(String videoPath, int id) {
+        return id == 0 ? videoPath : videoPath + "/" + RENDITIONS_DIRECTORY + "/" + id;
+    }
+
+    /**
+     * Reads the metadata of a video directory
+     *
+     * @param name catalog name of the video
+     * @param directory the video directory
+     * @return the parsed entry
+     * @throws IOException if meta.txt cannot be read
+     * @throws NumberFormatException if meta.txt is malformed
+     */
+    static VideoEntry parse(String name, Path directory) throws IOException {
+
+        List<String> metaData = Files.readAllLines(directory.resolve("meta.txt"), Charset.forName("UTF-8"));
+
+        int frameCount = Integer.parseInt(metaData.get(0).trim());
+        int width = Integer.parseInt(metaData.get(1).trim());
+        int height = Integer.parseInt(metaData.get(2).trim());
+        double fps = Double.parseDouble(metaData.get(3).trim());
+        double duration = Double.parseDouble(metaData.get(4).trim());
+
+        Path audio = directory.resolve("audio.m4a");
+        long audioLength = Files.isRegularFile(audio) ? Files.size(audio) : 0;
+
+        List<long[]> ladder = new ArrayList<long[]>();
+        long[] source = new long[]{0, width, height, sourceFrameBytes(directory, frameCount)};
+        ladder.add(source);
+
+        Path renditions = directory.resolve(RENDITIONS_FILE);
+        if (Files.isRegularFile(renditions)) {
+
+            for (String line : Files.readAllLines(renditions, Charset.forName("UTF-8"))) {
+
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length < 5 || fields[0].startsWith("#") || fields[0].equals("0")) {
+                    continue;
+                }
+
+                //id width height frameBytes, quality is only informational
+                ladder.add(new long[]{Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+                    Integer.parseInt(fields[2]), Long.parseLong(fields[4])});
+            }
+        }
+
+        //Source frames of unknown size stay on top, never the smallest rendition
+        if (source[3] == 0) {
+            for (long[] rendition : ladder) {
+                source[3] = Math.max(source[3], rendition[3]);
+            }
+        }
+
+        ladder.sort((a, b) -> Long.compare(b[3], a[3]));
+
+        //Tile deltas are only usable once their index was written
+        int keyframeInterval = 0;
+        Path deltaIndex = directory.resolve(TileDelta.DIRECTORY).resolve(TileDelta.INDEX_FILE);
+        if (Files.isRegularFile(deltaIndex)) {
+            List<String> lines = Files.readAllLines(deltaIndex, Charset.forName("UTF-8"));
+            keyframeInterval = Integer.parseInt(lines.get(1).trim().split("\\s+")[0]);
+        }
+
+        return new VideoEntry(name, directory.toString(), frameCount, width, height, fps, duration, audioLength,
+                keyframeInterval, ladder);
+    }
+
+    /**
+     * Estimates the average size of a source frame from a few evenly spaced
+     * frames, or from the first frame if none of them is on disk
+     */
+    private static long sourceFrameBytes(Path directory, int frameCount) throws IOException {
+
+        int samples = Math.min(FRAME_SAMPLES, frameCount);
+        long total = 0;
+        int found = 0;
+
+        for (int n = 0; n < samples; n++) {
+            Path frame = directory.resolve("frame" + ((long) n * frameCount / samples) + ".jpg");
+            if (Files.isRegularFile(frame)) {
+                total += Files.size(frame);
+                found++;
+            }
+        }
+
+        if (found > 0) {
+            return total / found;
+        }
+
+        Path first = directory.resolve("frame0.jpg");
+        return Files.isRegularFile(first) ? Files.size(first) : 0;
+    }
+
+    /**
+     * Number of renditions including the source
+     *
+     * @return rendition count
+     */
+    int renditionCount() {
+        return renditionIds.length;
+    }
+
+}
@@ -0,0 +1,74 @@
+package FlareMessage;
+
+import FlareProtocol.FlareOpCode;
+import java.nio.ByteBuffer;
+
+/**
+ * Wraps one chunk of the audio file so it can be interleaved with frames.
+ * Layout after the header is the chunk offset, the total audio length and
+ * then the chunk bytes, so the client can place each chunk directly.
+ *
+ * @author Team 2
+ */
+public class AudioChunkMessage extends FlareMessage {
+
+    private byte[] audioData;
+    private int offset;
+    private int length;
+
+    /**
+     * Sets the appropriate OpCode for AudioChunkMessage.
+     */
+    public AudioChunkMessage() {
+        flareOpCode = FlareOpCode.AUDIO_CHUNK;
+    }
+
+    /**
+     * Sets the chunk to send. The audio array is not copied.
+     *
+     * @param audioData the whole audio file
+     * @param offset start of the chunk
+     * @param length length of the chunk
+     */
+    public void setChunk(byte[] audioData, int offset, int length) {
+        this.audioData = audioData;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Length of the header, chunk offset and total length
+     *
+     * @return header length in bytes
+     */
+    @Override
+    public int getHeaderLength() {
+        dataLength = 8 + length; //4 bytes offset + 4 bytes total length + chunk
+        messageLength = dataLength + getPrefixLength();
+        return getPrefixLength() + 8;
+    }
+
+    /**
+     * Adds the header, the chunk offset and the total audio length
+     *
+     * @param buffer buffer to write to
+     */
+    @Override
+    public void writeHeader(ByteBuffer buffer) {
+        getHeaderLength();
+        putHeader(buffer);
+        buffer.putInt(offset);
+        buffer.putInt(audioData.length);
+    }
+
+    /**
+     * The chunk, a slice of the audio array
+     *
+     * @return the chunk as the only slice
+     */
+    @Override
+    public ByteBuffer[] getPayload() {
+        return new ByteBuffer[]{ByteBuffer.wrap(audioData, offset, length)};
+    }
+
+}
@@ -1,14 +1,10 @@
 package FlareMessage;
 
 import FlareProtocol.FlareOpCode;
-import Utility.ByteUtils;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /**
  * Class that wraps audio data. Currently sends as single m4a
@@ -18,14 +14,12 @@ import java.util.logging.Logger;
 public class AudioMessage extends FlareMessage {
 
     byte[] audioData;
-    protected ByteArrayOutputStream byteStream;
 
     /**
      * Constructor
      */
     public AudioMessage() {
 
-        byteStream = new ByteArrayOutputStream();
         flareOpCode = FlareOpCode.AUDIO;
 
     }
@@ -43,26 +37,36 @@ public class AudioMessage extends FlareMessage {
     }
 
     /**
-     * Convert message contents to binary array
+     * Length of the header
      *
-     * @return binary array
+     * @return header length in bytes
      */
     @Override
-    public byte[] toBinary() {
+    public int getHeaderLength() {
         dataLength = 4 + audioData.length; //4 bytes for index + total binary length
-        messageLength = dataLength + HEADER_LENGTH;
-
-        try {
-
-            byteStream.write(ByteUtils.intToByteArray(messageLength)); // total length   
-            byteStream.write(flareOpCode);//op code
-            byteStream.write(audioData);
+        messageLength = dataLength + getPrefixLength();
+        return getPrefixLength();
+    }
 
-        } catch (IOException ex) {
-            Logger.getLogger(AudioMessage.class.getName()).log(Level.SEVERE, null, ex);
-        }
+    /**
+     * Adds the header (messageLength and OpCode)
+     *
+     * @param buffer buffer to write to
+     */
+    @Override
+    public void writeHeader(ByteBuffer buffer) {
+        getHeaderLength();
+        putHeader(buffer);
+    }
 
-        return byteStream.toByteArray();
+    /**
+     * The m4a file, not copied
+     *
+     * @return the audio as the only slice
+     */
+    @Override
+    public ByteBuffer[] getPayload() {
+        return new ByteBuffer[]{ByteBuffer.wrap(audioData)};
     }
 
 }
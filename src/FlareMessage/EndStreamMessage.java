@@ -0,0 +1,77 @@
+package FlareMessage;
+
+import FlareProtocol.FlareOpCode;
+import java.nio.ByteBuffer;
+
+/**
+ * Tells the client that the server is done with a logical stream. After the
+ * header, which carries the stream id, comes a status byte.
+ *
+ * @author Team 2
+ */
+public class EndStreamMessage extends FlareMessage {
+
+    /**
+     * The request was served completely
+     */
+    public static final byte COMPLETE = 0;
+
+    /**
+     * The client cancelled the stream
+     */
+    public static final byte CANCELLED = 1;
+
+    /**
+     * The request failed on the server
+     */
+    public static final byte FAILED = 2;
+
+    /**
+     * The stream was not opened, the connection has too many streams or the
+     * id is in use
+     */
+    public static final byte REFUSED = 3;
+
+    private byte status;
+
+    /**
+     * Sets the appropriate OpCode for EndStreamMessage.
+     */
+    public EndStreamMessage() {
+        flareOpCode = FlareOpCode.END_STREAM;
+    }
+
+    /**
+     * Sets why the stream ended.
+     *
+     * @param status one of the status constants
+     */
+    public void setStatus(byte status) {
+        this.status = status;
+    }
+
+    /**
+     * Length of the whole message, it has no payload
+     *
+     * @return header length in bytes
+     */
+    @Override
+    public int getHeaderLength() {
+        dataLength = 1;
+        messageLength = dataLength + getPrefixLength();
+        return messageLength;
+    }
+
+    /**
+     * Adds the header and the status byte
+     *
+     * @param buffer buffer to write to
+     */
+    @Override
+    public void writeHeader(ByteBuffer buffer) {
+        getHeaderLength();
+        putHeader(buffer);
+        buffer.put(status);
+    }
+
+}
@@ -1,11 +1,17 @@
 package FlareMessage;
 
+import FlareProtocol.FlareOpCode;
 import java.nio.ByteBuffer;
 
 /**
  * Abstract base class for FlareMessages. Flare messages will be the main method
  * of client/server communication
  *
+ * A message is sent as its header, written into a buffer supplied by the
+ * caller, followed by its payload slices. Large bodies such as JPEG frames
+ * and audio are only wrapped as payload slices, so they go from the loaded
+ * array to the socket without being copied.
+ *
  * @author Brian Parra
  */
 public abstract class FlareMessage {
@@ -14,17 +20,152 @@ public abstract class FlareMessage {
 
     protected int messageLength;
     protected int dataLength;
+    protected int streamId;
 
     protected final static int HEADER_LENGTH = 5;
 
-    //Header is Opcode 1 byte
-    //Followed by messageLength 1 int
+    protected final static int STREAM_ID_LENGTH = 4;
+
+    protected final static ByteBuffer[] NO_PAYLOAD = new ByteBuffer[0];
+
+    //Header is messageLength 1 int
+    //Followed by Opcode 1 byte
+    //Followed by the stream id 1 int if the op code has STREAM_FLAG set
+    /**
+     * Sets the logical stream the message answers. Stream 0 is the
+     * connection itself and is sent without a stream id, as before streams
+     * existed.
+     *
+     * @param streamId id chosen by the client when it opened the stream
+     */
+    public void setStreamId(int streamId) {
+        this.streamId = streamId;
+    }
+
     /**
-     * Convert the message contents to binary array
+     * Length of the message length, op code and stream id
+     *
+     * @return prefix length in bytes
+     */
+    protected int getPrefixLength() {
+        return streamId == 0 ? HEADER_LENGTH : HEADER_LENGTH + STREAM_ID_LENGTH;
+    }
+
+    /**
+     * Number of bytes writeHeader puts into the buffer. Also updates
+     * messageLength and dataLength.
+     *
+     * @return header length in bytes
+     */
+    public abstract int getHeaderLength();
+
+    /**
+     * Writes the message header and any small fields into a buffer. The
+     * buffer must have getHeaderLength() bytes remaining.
+     *
+     * @param buffer buffer to write to
+     */
+    public abstract void writeHeader(ByteBuffer buffer);
+
+    /**
+     * Slices sent after the header, in order. They wrap the message data
+     * without copying it and must not be modified.
+     *
+     * @return payload slices, empty if the header is the whole message
+     */
+    public ByteBuffer[] getPayload() {
+        return NO_PAYLOAD;
+    }
+
+    /**
+     * Exact size of the serialized message
+     *
+     * @return header and payload length in bytes
+     */
+    public int getLength() {
+
+        int length = getHeaderLength();
+        for (ByteBuffer slice : getPayload()) {
+            length += slice.remaining();
+        }
+        return length;
+    }
+
+    /**
+     * Convert the message contents to binary array. This copies the payload,
+     * sending through FlareClient.sendMessage does not.
      *
      * @return binary representation of message
      */
-    public abstract byte[] toBinary();
+    public byte[] toBinary() {
+
+        ByteBuffer buffer = ByteBuffer.allocate(getLength());
+        writeHeader(buffer);
+        for (ByteBuffer slice : getPayload()) {
+            buffer.put(slice.duplicate());
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Serializes the header into its own array and returns it with the
+     * payload slices. The result can be shared by several senders.
+     *
+     * @return header followed by the payload slices
+     */
+    public ByteBuffer[] toBuffers() {
+
+        ByteBuffer header = ByteBuffer.allocate(getHeaderLength());
+        writeHeader(header);
+        header.flip();
+
+        ByteBuffer[] payload = getPayload();
+        ByteBuffer[] buffers = new ByteBuffer[1 + payload.length];
+        buffers[0] = header;
+        System.arraycopy(payload, 0, buffers, 1, payload.length);
+        return buffers;
+    }
+
+    /**
+     * Writes the message length, op code and stream id
+     *
+     * @param buffer buffer to write to
+     */
+    protected void putHeader(ByteBuffer buffer) {
+        buffer.putInt(messageLength);
+        if (streamId == 0) {
+            buffer.put(flareOpCode);
+        } else {
+            buffer.put((byte) (flareOpCode | FlareOpCode.STREAM_FLAG));
+            buffer.putInt(streamId);
+        }
+    }
+
+    /**
+     * Copies a serialized header sent without stream id and adds one, so a
+     * message serialized once can be sent on several streams
+     *
+     * @param header header as written by writeHeader for stream 0
+     * @param streamId stream to tag the message with
+     * @return the tagged header, the original one if streamId is 0
+     */
+    public static ByteBuffer withStreamId(ByteBuffer header, int streamId) {
+
+        if (streamId == 0) {
+            return header;
+        }
+
+        ByteBuffer source = header.duplicate();
+        ByteBuffer tagged = ByteBuffer.allocate(source.remaining() + STREAM_ID_LENGTH);
+
+        tagged.putInt(source.getInt() + STREAM_ID_LENGTH);
+        tagged.put((byte) (source.get() | FlareOpCode.STREAM_FLAG));
+        tagged.putInt(streamId);
+        tagged.put(source);
+        tagged.flip();
+
+        return tagged;
+    }
 
     /**
      * Adds an int to a data array without copying
@@ -48,12 +189,9 @@ public abstract class FlareMessage {
      * @param input the double to add
      */
     public static void doubleToData(byte[] data, int offset, double input) {
-        byte[] bytes = new byte[8];
-        ByteBuffer.wrap(bytes).putDouble(input);
-
-        for (int n = 0; n < 8; n++) {
-            data[offset + n] = bytes[n];
-        }
+        long bits = Double.doubleToLongBits(input);
+        intToData(data, offset, (int) (bits >> 32));
+        intToData(data, offset + 4, (int) bits);
     }
 
 }
@@ -0,0 +1,78 @@
+package FlareMessage;
+
+import FlareProtocol.FlareOpCode;
+import java.nio.ByteBuffer;
+
+/**
+ * Sends the changed tiles of a frame. After the header comes the frame
+ * index followed by the delta as built at ingest: keyframe index, tile
+ * count and the tiles with their position, size and JPEG bytes. The client
+ * draws the tiles over the previous frame.
+ *
+ * @author Team 2
+ */
+public class FrameDeltaMessage extends FlareMessage {
+
+    private int index;
+    private byte[] delta;
+
+    /**
+     * Sets the appropriate OpCode for FrameDeltaMessage.
+     */
+    public FrameDeltaMessage() {
+        flareOpCode = FlareOpCode.FRAME_DELTA;
+    }
+
+    /**
+     * Sets index.
+     *
+     * @param index the index of the frame
+     */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Sets the delta to send. The array is not copied.
+     *
+     * @param delta delta bytes as stored at ingest
+     */
+    public void setDelta(byte[] delta) {
+        this.delta = delta;
+    }
+
+    /**
+     * Length of the header and frame index
+     *
+     * @return header length in bytes
+     */
+    @Override
+    public int getHeaderLength() {
+        dataLength = 4 + delta.length; //4 bytes for index + delta
+        messageLength = dataLength + getPrefixLength();
+        return getPrefixLength() + 4;
+    }
+
+    /**
+     * Adds the header and the frame index
+     *
+     * @param buffer buffer to write to
+     */
+    @Override
+    public void writeHeader(ByteBuffer buffer) {
+        getHeaderLength();
+        putHeader(buffer);
+        buffer.putInt(index);
+    }
+
+    /**
+     * The delta as stored at ingest, not copied
+     *
+     * @return the delta as the only slice
+     */
+    @Override
+    public ByteBuffer[] getPayload() {
+        return new ByteBuffer[]{ByteBuffer.wrap(delta)};
+    }
+
+}
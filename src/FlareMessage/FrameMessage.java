@@ -1,13 +1,11 @@
 package FlareMessage;
 
-import static FlareMessage.FlareMessage.HEADER_LENGTH;
+import FlareMetrics.JpegEncodeEvent;
 import FlareProtocol.FlareOpCode;
-import Utility.ByteUtils;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
@@ -24,6 +22,8 @@ public class FrameMessage extends FlareMessage {
     private BufferedImage frame;
     protected ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
     private int index;
+    private byte rendition;
+    private byte[] frameData;
 
     /**
      * Sets the appropriate OpCode for FrameMessage.
@@ -41,9 +41,32 @@ public class FrameMessage extends FlareMessage {
     public void setFrame(BufferedImage frame) {
 
         this.frame = frame;
+        this.frameData = null;
 
     }
 
+    /**
+     * Sets an already encoded JPEG as the frame. It is sent as is, without
+     * decoding and encoding it again.
+     *
+     * @param frameData JPEG bytes to send
+     */
+    public void setFrameData(byte[] frameData) {
+
+        this.frameData = frameData;
+        this.frame = null;
+
+    }
+
+    /**
+     * Sets the rendition the frame belongs to.
+     *
+     * @param rendition rendition id, 0 for the source frames
+     */
+    public void setRendition(int rendition) {
+        this.rendition = (byte) rendition;
+    }
+
     /**
      * Sets index.
      *
@@ -54,38 +77,60 @@ public class FrameMessage extends FlareMessage {
     }
 
     /**
-     * It adds the header (messageLength and OpCode) to the video data, sends
-     * the entire message to a byte array and returns the byte array.
+     * Length of the header, frame index and rendition id. A BufferedImage
+     * frame is encoded here, an encoded frame is used as is.
      *
-     * @return binary array
+     * @return header length in bytes
      */
     @Override
-    public byte[] toBinary() {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try {
-            ImageIO.write(frame, "jpg", baos);
-        } catch (IOException ex) {
-            Logger.getLogger(FrameMessage.class.getName()).log(Level.SEVERE, null, ex);
+    public int getHeaderLength() {
+        if (frameData == null) {
+            JpegEncodeEvent event = new JpegEncodeEvent();
+            event.begin();
+            byteStream.reset();
+            try {
+                ImageIO.write(frame, "jpg", byteStream);
+            } catch (IOException ex) {
+                Logger.getLogger(FrameMessage.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            frameData = byteStream.toByteArray();
+            event.end();
+            if (event.shouldCommit()) {
+                event.width = frame.getWidth();
+                event.height = frame.getHeight();
+                event.bytes = frameData.length;
+                event.commit();
+            }
         }
-        byte[] frameBytes = baos.toByteArray();
 
-        dataLength = 4 + frameBytes.length; //4 bytes for index + total binary length
-        messageLength = dataLength + HEADER_LENGTH;
+        dataLength = 5 + frameData.length; //4 bytes for index + 1 byte rendition + total binary length
+        messageLength = dataLength + getPrefixLength();
+        return getPrefixLength() + 5;
+    }
 
-        try {
-            byteStream.reset();
-            byteStream.write(ByteUtils.intToByteArray(messageLength)); // total length   
-            byteStream.write(flareOpCode);//op code
-            byteStream.write(ByteUtils.intToByteArray(index));//frame number
-            byteStream.write(frameBytes);
-            byteStream.flush();
-
-        } catch (IOException ex) {
-            Logger.getLogger(FrameMessage.class.getName()).log(Level.SEVERE, null, ex);
-            System.out.println(ex.getMessage());
-        }
+    /**
+     * Adds the header (messageLength and OpCode), the frame index and the
+     * rendition id. The JPEG bytes follow as the payload.
+     *
+     * @param buffer buffer to write to
+     */
+    @Override
+    public void writeHeader(ByteBuffer buffer) {
+        getHeaderLength();
+        putHeader(buffer);
+        buffer.putInt(index);//frame number
+        buffer.put(rendition);//rendition id
+    }
 
-        return byteStream.toByteArray();
+    /**
+     * The JPEG bytes, not copied
+     *
+     * @return the frame as the only slice
+     */
+    @Override
+    public ByteBuffer[] getPayload() {
+        getHeaderLength();
+        return new ByteBuffer[]{ByteBuffer.wrap(frameData)};
     }
 
 }
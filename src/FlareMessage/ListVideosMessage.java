@@ -0,0 +1,94 @@
+package FlareMessage;
+
+import FlareMedia.CatalogIndex;
+import FlareProtocol.FlareOpCode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One page of the video catalog. After the header comes the total number of
+ * videos, the page offset and the number of entries on the page. Each entry
+ * is the name length (2 bytes), the UTF-8 name, width, height, fps, duration
+ * and frame count in the same order as OpenVideoMessage.
+ *
+ * @author Team 2
+ */
+public class ListVideosMessage extends FlareMessage {
+
+    private CatalogIndex index;
+    private int offset;
+    private int count;
+    private byte[][] names = new byte[0][];
+
+    /**
+     * Sets the appropriate OpCode for ListVideosMessage.
+     */
+    public ListVideosMessage() {
+        flareOpCode = FlareOpCode.LIST_VIDEOS;
+    }
+
+    /**
+     * Sets the page to send
+     *
+     * @param index catalog snapshot to read from
+     * @param offset first slot of the page
+     * @param count number of entries on the page
+     */
+    public void setPage(CatalogIndex index, int offset, int count) {
+        this.index = index;
+        this.offset = offset;
+        this.count = count;
+
+        names = new byte[count][];
+        for (int n = 0; n < count; n++) {
+            names[n] = index.getName(offset + n).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Length of the whole page, it has no payload
+     *
+     * @return header length in bytes
+     */
+    @Override
+    public int getHeaderLength() {
+
+        dataLength = 12;
+        for (byte[] name : names) {
+            dataLength += 2 + name.length + 28;
+        }
+        messageLength = dataLength + getPrefixLength();
+        return messageLength;
+    }
+
+    /**
+     * Adds the header, the page position and the entries
+     *
+     * @param buffer buffer to write to
+     */
+    @Override
+    public void writeHeader(ByteBuffer buffer) {
+
+        getHeaderLength();
+        putHeader(buffer);
+
+        buffer.putInt(index.size());
+        buffer.putInt(offset);
+        buffer.putInt(count);
+
+        for (int n = 0; n < count; n++) {
+
+            int slot = offset + n;
+
+            buffer.putShort((short) names[n].length);
+            buffer.put(names[n]);
+
+            buffer.putInt(index.getWidth(slot));
+            buffer.putInt(index.getHeight(slot));
+            buffer.putDouble(index.getFps(slot));
+            buffer.putDouble(index.getDuration(slot));
+            buffer.putInt(index.getFrameCount(slot));
+        }
+    }
+
+}
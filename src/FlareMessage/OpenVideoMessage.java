@@ -1,7 +1,7 @@
 package FlareMessage;
 
-import static FlareMessage.FlareMessage.HEADER_LENGTH;
 import FlareProtocol.FlareOpCode;
+import java.nio.ByteBuffer;
 
 /**
  * This class adds the header to the dataLength. The header contains the
@@ -85,60 +85,41 @@ public class OpenVideoMessage extends FlareMessage {
         this.frameCount = frameCount;
     }
 
+    /**
+     * Length of the whole message, it has no payload
+     *
+     * @return header length in bytes
+     */
+    @Override
+    public int getHeaderLength() {
+        dataLength = videoIsAvailable ? 29 : 1;
+        messageLength = dataLength + getPrefixLength();
+        return messageLength;
+    }
+
     /**
      * Checks if the video is available. If yes, it adds the header
-     * (messageLength and OpCode) to the video data and sends the entire message
-     * to a byte array and returns the byte array.
+     * (messageLength and OpCode) followed by the video data, otherwise the
+     * header followed by (byte) 0.
      *
-     * @return binary array of message
+     * @param buffer buffer to write to
      */
     @Override
-    public byte[] toBinary() {
-        byte[] data = null;
+    public void writeHeader(ByteBuffer buffer) {
+        getHeaderLength();
+        putHeader(buffer);
 
         if (!videoIsAvailable) {
-
-            dataLength = 1;
-            messageLength = dataLength + HEADER_LENGTH;
-            data = new byte[messageLength];
-
-            //Put Message Length
-            FlareMessage.intToData(data, 0, messageLength);
-            data[4] = flareOpCode;
-
-            //Followed by (byte) 0
-            data[5] = 0;
-            //System.out.println(data[5]);
-
-        } else {
-
-            dataLength = 29;
-            messageLength = dataLength + HEADER_LENGTH;
-            data = new byte[messageLength];
-
-            FlareMessage.intToData(data, 0, messageLength);
-            data[4] = flareOpCode;
-
-            //Followed by (byte) 0
-            data[5] = 1;
-
-            //width
-            FlareMessage.intToData(data, 6, width);
-
-            //height
-            FlareMessage.intToData(data, 10, height);
-
-            //fps
-            FlareMessage.doubleToData(data, 14, fps);
-
-            //duration
-            FlareMessage.doubleToData(data, 22, duration);
-
-            FlareMessage.intToData(data, 30, frameCount);
-
+            buffer.put((byte) 0);
+            return;
         }
 
-        return data;
+        buffer.put((byte) 1);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putDouble(fps);
+        buffer.putDouble(duration);
+        buffer.putInt(frameCount);
     }
 
 }
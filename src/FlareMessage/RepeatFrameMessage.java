@@ -0,0 +1,68 @@
+package FlareMessage;
+
+import FlareProtocol.FlareOpCode;
+import java.nio.ByteBuffer;
+
+/**
+ * Tells the client that a frame is byte identical to one it already has.
+ * After the header comes the index of the frame followed by the index of the
+ * frame to show again.
+ *
+ * @author Team 2
+ */
+public class RepeatFrameMessage extends FlareMessage {
+
+    private int index;
+    private int sourceIndex;
+
+    /**
+     * Sets the appropriate OpCode for RepeatFrameMessage.
+     */
+    public RepeatFrameMessage() {
+        flareOpCode = FlareOpCode.REPEAT_FRAME;
+    }
+
+    /**
+     * Sets index.
+     *
+     * @param index the index of the frame
+     */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Sets the frame to show again.
+     *
+     * @param sourceIndex index of a frame the client already received
+     */
+    public void setSourceIndex(int sourceIndex) {
+        this.sourceIndex = sourceIndex;
+    }
+
+    /**
+     * Length of the whole message, it has no payload
+     *
+     * @return header length in bytes
+     */
+    @Override
+    public int getHeaderLength() {
+        dataLength = 8;
+        messageLength = dataLength + getPrefixLength();
+        return messageLength;
+    }
+
+    /**
+     * Adds the header, the frame index and the index of the frame to repeat
+     *
+     * @param buffer buffer to write to
+     */
+    @Override
+    public void writeHeader(ByteBuffer buffer) {
+        getHeaderLength();
+        putHeader(buffer);
+        buffer.putInt(index);
+        buffer.putInt(sourceIndex);
+    }
+
+}
@@ -0,0 +1,57 @@
+package FlareMessage;
+
+import FlareProtocol.FlareOpCode;
+import java.nio.ByteBuffer;
+
+/**
+ * Hands the client the token of a resumable playback. It follows the
+ * OPEN_VIDEO response of a request with the resumable flag, and the
+ * response to RESUME. After the header come the 16 token bytes.
+ *
+ * @author Team 2
+ */
+public class SessionMessage extends FlareMessage {
+
+    private byte[] token;
+
+    /**
+     * Sets the appropriate OpCode for SessionMessage.
+     */
+    public SessionMessage() {
+        flareOpCode = FlareOpCode.SESSION;
+    }
+
+    /**
+     * Sets the token to send.
+     *
+     * @param token session token
+     */
+    public void setToken(byte[] token) {
+        this.token = token;
+    }
+
+    /**
+     * Length of the whole message, it has no payload
+     *
+     * @return header length in bytes
+     */
+    @Override
+    public int getHeaderLength() {
+        dataLength = token.length;
+        messageLength = dataLength + getPrefixLength();
+        return messageLength;
+    }
+
+    /**
+     * Adds the header and the token
+     *
+     * @param buffer buffer to write to
+     */
+    @Override
+    public void writeHeader(ByteBuffer buffer) {
+        getHeaderLength();
+        putHeader(buffer);
+        buffer.put(token);
+    }
+
+}
@@ -0,0 +1,118 @@
+package FlareMessage;
+
+import FlareMedia.ThumbnailAtlas;
+import FlareProtocol.FlareOpCode;
+import java.nio.ByteBuffer;
+
+/**
+ * Sends the whole scrub strip of a video in one message. After the header
+ * comes an availability byte like OpenVideoMessage. If available it is
+ * followed by the interval, thumbnail width and height, thumbnail count and
+ * sheet count, then one entry per thumbnail (frame index 4 bytes, sheet 2
+ * bytes, x 2 bytes, y 2 bytes) and finally each sheet as its length and
+ * JPEG bytes.
+ *
+ * @author Team 2
+ */
+public class ThumbnailsMessage extends FlareMessage {
+
+    private ThumbnailAtlas atlas;
+
+    /**
+     * Sets the appropriate OpCode for ThumbnailsMessage.
+     */
+    public ThumbnailsMessage() {
+        flareOpCode = FlareOpCode.THUMBNAILS;
+    }
+
+    /**
+     * Sets the atlas to send.
+     *
+     * @param atlas the scrub strip, null if the video has none
+     */
+    public void setAtlas(ThumbnailAtlas atlas) {
+        this.atlas = atlas;
+    }
+
+    /**
+     * Length of the header, availability byte and coordinate table
+     *
+     * @return header length in bytes
+     */
+    @Override
+    public int getHeaderLength() {
+
+        if (atlas == null) {
+            dataLength = 1;
+            messageLength = dataLength + getPrefixLength();
+            return messageLength;
+        }
+
+        int tableLength = 1 + 20 + atlas.getCount() * 10;
+
+        dataLength = tableLength;
+        for (int k = 0; k < atlas.getSheetCount(); k++) {
+            dataLength += 4 + atlas.getSheet(k).length;
+        }
+        messageLength = dataLength + getPrefixLength();
+        return getPrefixLength() + tableLength;
+    }
+
+    /**
+     * Adds the header, the availability byte and if available the layout
+     * and coordinate table
+     *
+     * @param buffer buffer to write to
+     */
+    @Override
+    public void writeHeader(ByteBuffer buffer) {
+
+        getHeaderLength();
+        putHeader(buffer);
+
+        if (atlas == null) {
+            buffer.put((byte) 0);
+            return;
+        }
+
+        int count = atlas.getCount();
+
+        buffer.put((byte) 1);
+        buffer.putInt(atlas.getInterval());
+        buffer.putInt(atlas.getThumbWidth());
+        buffer.putInt(atlas.getThumbHeight());
+        buffer.putInt(count);
+        buffer.putInt(atlas.getSheetCount());
+
+        //Coordinate table
+        for (int t = 0; t < count; t++) {
+            buffer.putInt(atlas.getFrameIndex(t));
+            buffer.putShort((short) atlas.getSheetOf(t));
+            buffer.putShort((short) atlas.getX(t));
+            buffer.putShort((short) atlas.getY(t));
+        }
+    }
+
+    /**
+     * Each sheet as its length followed by the JPEG bytes, which are not
+     * copied
+     *
+     * @return two slices per sheet
+     */
+    @Override
+    public ByteBuffer[] getPayload() {
+
+        if (atlas == null) {
+            return NO_PAYLOAD;
+        }
+
+        ByteBuffer[] payload = new ByteBuffer[2 * atlas.getSheetCount()];
+        for (int k = 0; k < atlas.getSheetCount(); k++) {
+            byte[] sheet = atlas.getSheet(k);
+            payload[2 * k] = ByteBuffer.allocate(4).putInt(0, sheet.length);
+            payload[2 * k + 1] = ByteBuffer.wrap(sheet);
+        }
+        return payload;
+    }
+
+}
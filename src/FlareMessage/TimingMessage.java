@@ -0,0 +1,73 @@
+package FlareMessage;
+
+import FlareMetrics.RequestTrace;
+import FlareProtocol.FlareOpCode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tells the client how long the server spent on each stage of its request,
+ * so slow opens can be matched up on both sides. After the header comes the
+ * number of stages (1 byte), then per stage the name length (1 byte), the
+ * ASCII name and the time it ended in microseconds since the request was
+ * read (4 bytes).
+ *
+ * @author Team 2
+ */
+public class TimingMessage extends FlareMessage {
+
+    private RequestTrace trace;
+
+    /**
+     * Sets the appropriate OpCode for TimingMessage.
+     */
+    public TimingMessage() {
+        flareOpCode = FlareOpCode.TIMING;
+    }
+
+    /**
+     * Sets the stages to report.
+     *
+     * @param trace trace of the request
+     */
+    public void setTrace(RequestTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Length of the whole message, it has no payload
+     *
+     * @return header length in bytes
+     */
+    @Override
+    public int getHeaderLength() {
+
+        dataLength = 1;
+        for (int n = 0; n < trace.getStageCount(); n++) {
+            dataLength += 1 + trace.getStage(n).length() + 4;
+        }
+        messageLength = dataLength + getPrefixLength();
+        return messageLength;
+    }
+
+    /**
+     * Adds the header and the stages
+     *
+     * @param buffer buffer to write to
+     */
+    @Override
+    public void writeHeader(ByteBuffer buffer) {
+
+        getHeaderLength();
+        putHeader(buffer);
+
+        buffer.put((byte) trace.getStageCount());
+        for (int n = 0; n < trace.getStageCount(); n++) {
+            byte[] name = trace.getStage(n).getBytes(StandardCharsets.US_ASCII);
+            buffer.put((byte) name.length);
+            buffer.put(name);
+            buffer.putInt((int) Math.min(Integer.MAX_VALUE, trace.getOffsetNanos(n) / 1000));
+        }
+    }
+
+}
@@ -0,0 +1,25 @@
+package FlareMetrics;
+
+/**
+ * Hit rate and size of a cache
+ *
+ * @author Team 2
+ */
+public interface CacheMXBean {
+
+    /**
+     * @return lookups answered from the cache
+     */
+    long getHits();
+
+    /**
+     * @return lookups that had to load
+     */
+    long getMisses();
+
+    /**
+     * @return bytes held
+     */
+    long getSize();
+
+}
@@ -0,0 +1,30 @@
+package FlareMetrics;
+
+/**
+ * Credit granted by clients and time streams waited for it
+ *
+ * @author Team 2
+ */
+public interface CreditMXBean {
+
+    /**
+     * @return frames granted
+     */
+    long getGrantedFrames();
+
+    /**
+     * @return bytes granted
+     */
+    long getGrantedBytes();
+
+    /**
+     * @return times a stream had to wait for credit
+     */
+    long getStalls();
+
+    /**
+     * @return total time streams waited for credit in ms
+     */
+    long getStallMillis();
+
+}
@@ -0,0 +1,36 @@
+package FlareMetrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for fetching one encoded frame of a playback, from the
+ * frame cache or from disk through the load scheduler.
+ *
+ * @author Team 2
+ */
+@Name("flare.FrameLoad")
+@Label("Frame Load")
+@Category({"Flare", "Media"})
+@Description("An encoded frame fetched for a playback")
+@StackTrace(false)
+public class FrameLoadEvent extends jdk.jfr.Event {
+
+    @Label("Session")
+    public String session;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Frame")
+    public int frame;
+
+    @Label("Size")
+    @DataAmount
+    public int bytes;
+
+}
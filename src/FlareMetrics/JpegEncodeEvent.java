@@ -0,0 +1,31 @@
+package FlareMetrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for encoding a decoded image to JPEG. Frames read
+ * from disk are already encoded and never emit it.
+ *
+ * @author Team 2
+ */
+@Name("flare.JpegEncode")
+@Label("JPEG Encode")
+@Category({"Flare", "Media"})
+@Description("A BufferedImage frame encoded to JPEG")
+public class JpegEncodeEvent extends jdk.jfr.Event {
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+
+    @Label("Encoded Size")
+    @DataAmount
+    public int bytes;
+
+}
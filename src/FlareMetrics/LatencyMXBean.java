@@ -0,0 +1,45 @@
+package FlareMetrics;
+
+/**
+ * Durations of one step of frame delivery
+ *
+ * @author Team 2
+ */
+public interface LatencyMXBean {
+
+    /**
+     * @return durations recorded
+     */
+    long getCount();
+
+    /**
+     * @return mean duration in ms
+     */
+    double getMeanMillis();
+
+    /**
+     * @return median duration in ms
+     */
+    double getMedianMillis();
+
+    /**
+     * @return 90th percentile in ms
+     */
+    double get90thPercentileMillis();
+
+    /**
+     * @return 99th percentile in ms
+     */
+    double get99thPercentileMillis();
+
+    /**
+     * @return 99.9th percentile in ms
+     */
+    double get999thPercentileMillis();
+
+    /**
+     * @return longest duration in ms
+     */
+    double getMaxMillis();
+
+}
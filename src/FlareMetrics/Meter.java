@@ -0,0 +1,100 @@
+package FlareMetrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events and keeps their rate over about the last minute, an
+ * exponentially weighted average updated every five seconds by a shared
+ * daemon thread. Marking an event is a single striped increment.
+ *
+ * @author Team 2
+ */
+public class Meter {
+
+    private static final long TICK_MS = 5000;
+    private static final double ALPHA = 1 - Math.exp(-TICK_MS / 60000.0);
+    private static final List<Meter> meters = new CopyOnWriteArrayList<Meter>();
+
+    static {
+        Thread ticker = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(TICK_MS);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (Meter meter : meters) {
+                    meter.tick();
+                }
+            }
+        }, "flare-meter-tick");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    private final LongAdder count = new LongAdder();
+    private long lastCount;
+    private volatile double rate;
+    private boolean initialized;
+
+    /**
+     * Constructor
+     */
+    public Meter() {
+        meters.add(this);
+    }
+
+    /**
+     * Counts one event
+     */
+    public void mark() {
+        count.increment();
+    }
+
+    /**
+     * Counts several events
+     *
+     * @param events number of events
+     */
+    public void mark(long events) {
+        count.add(events);
+    }
+
+    /**
+     * Events counted so far
+     *
+     * @return count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Recent rate
+     *
+     * @return events per second over about the last minute
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Stops updating the rate, for meters of a session that ended
+     */
+    public void close() {
+        meters.remove(this);
+    }
+
+    private void tick() {
+
+        long current = count.sum();
+        double instant = (current - lastCount) * 1000.0 / TICK_MS;
+        lastCount = current;
+
+        rate = initialized ? rate + ALPHA * (instant - rate) : instant;
+        initialized = true;
+    }
+
+}
@@ -0,0 +1,161 @@
+package FlareMetrics;
+
+import Utility.AsyncLog;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+/**
+ * Publishes metrics as MBeans in the Flare JMX domain and renders all of
+ * them as text, one line per value in the Prometheus exposition format.
+ * Metrics register themselves when their class is first used, so every
+ * stage and cache shows up once the server touched it.
+ *
+ * @author Team 2
+ */
+public class Metrics {
+
+    private static final String DOMAIN = "Flare";
+
+    /**
+     * Publishes an MXBean, replacing one registered under the same name
+     *
+     * @param type kind of metric, e.g. Stage
+     * @param name instance name, null for a singleton
+     * @param mbean object implementing an MXBean interface
+     */
+    public static void register(String type, String name, Object mbean) {
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type
+                    + (name == null ? "" : ",name=" + ObjectName.quote(name)));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(mbean, objectName);
+
+        } catch (JMException ex) {
+            Logger.getLogger(Metrics.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Current value of every published metric
+     *
+     * @return text exposition, one metric per line
+     */
+    public static String toText() {
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        StringBuilder text = new StringBuilder();
+
+        try {
+
+            Set<ObjectName> names = new TreeSet<ObjectName>(server.queryNames(new ObjectName(DOMAIN + ":*"), null));
+
+            for (ObjectName objectName : names) {
+
+                MBeanAttributeInfo[] attributes = server.getMBeanInfo(objectName).getAttributes();
+                String[] attributeNames = new String[attributes.length];
+                for (int n = 0; n < attributes.length; n++) {
+                    attributeNames[n] = attributes[n].getName();
+                }
+
+                String prefix = "flare_" + toSnakeCase(objectName.getKeyProperty("type")) + "_";
+                String instance = objectName.getKeyProperty("name");
+                String labels = instance == null ? "" : "name=\"" + ObjectName.unquote(instance) + "\"";
+
+                AttributeList values = server.getAttributes(objectName, attributeNames);
+                for (Attribute attribute : values.asList()) {
+                    append(text, prefix + toSnakeCase(attribute.getName()), labels, attribute.getValue());
+                }
+            }
+
+        } catch (JMException ex) {
+            Logger.getLogger(Metrics.class.getName()).log(Level.SEVERE, null, ex);
+        }
+
+        return text.toString();
+    }
+
+    private static void append(StringBuilder text, String metric, String labels, Object value) {
+
+        if (value instanceof Number) {
+
+            text.append(metric);
+            if (!labels.isEmpty()) {
+                text.append('{').append(labels).append('}');
+            }
+            text.append(' ').append(value).append('\n');
+
+        } else if (value instanceof TabularData) {
+
+            //Maps are published as tables of key and value
+            for (Object row : ((TabularData) value).values()) {
+                CompositeData entry = (CompositeData) row;
+                String key = "key=\"" + entry.get("key") + "\"";
+                append(text, metric, labels.isEmpty() ? key : labels + "," + key, entry.get("value"));
+            }
+        }
+    }
+
+    private static String toSnakeCase(String name) {
+
+        StringBuilder snake = new StringBuilder(name.length() + 8);
+        for (int n = 0; n < name.length(); n++) {
+            char c = name.charAt(n);
+            if (Character.isUpperCase(c)) {
+                if (n > 0) {
+                    snake.append('_');
+                }
+                snake.append(Character.toLowerCase(c));
+            } else {
+                snake.append(c);
+            }
+        }
+        return snake.toString();
+    }
+
+    /**
+     * Serves the text exposition over HTTP at /metrics
+     *
+     * @param host address to bind to
+     * @param port port to listen on
+     * @throws IOException if the port cannot be opened
+     */
+    public static void startHttp(String host, int port) throws IOException {
+
+        HttpServer http = HttpServer.create(new InetSocketAddress(host, port), 0);
+
+        http.createContext("/metrics", exchange -> {
+            byte[] body = toText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+
+        http.start();
+        AsyncLog.info("Metrics on http://{}/metrics", host + ":" + port);
+    }
+
+}
@@ -0,0 +1,106 @@
+package FlareMetrics;
+
+import java.util.Locale;
+
+/**
+ * Timestamps of the stages one request went through, from its arrival on
+ * the connection. Tasks mark a stage when it is done, so the time between
+ * two marks is the time the later stage took. Only the thread serving the
+ * request marks, readers look once it is over.
+ *
+ * Stage names are constants, marking stores a reference and a timestamp
+ * into arrays sized up front.
+ *
+ * @author Team 2
+ */
+public class RequestTrace {
+
+    /**
+     * Most stages kept, later marks are ignored
+     */
+    public static final int MAX_STAGES = 16;
+
+    private final long arrived;
+    private final String[] stages = new String[MAX_STAGES];
+    private final long[] times = new long[MAX_STAGES];
+    private int count;
+
+    /**
+     * Constructor
+     *
+     * @param arrived System.nanoTime() when the request was read
+     */
+    public RequestTrace(long arrived) {
+        this.arrived = arrived;
+    }
+
+    /**
+     * Marks the end of a stage
+     *
+     * @param stage stage name
+     */
+    public void mark(String stage) {
+        if (count < MAX_STAGES) {
+            stages[count] = stage;
+            times[count++] = System.nanoTime();
+        }
+    }
+
+    /**
+     * Number of stages marked
+     *
+     * @return stage count
+     */
+    public int getStageCount() {
+        return count;
+    }
+
+    /**
+     * Name of a stage
+     *
+     * @param stage index in marking order
+     * @return stage name
+     */
+    public String getStage(int stage) {
+        return stages[stage];
+    }
+
+    /**
+     * When a stage ended, from the arrival of the request
+     *
+     * @param stage index in marking order
+     * @return offset in ns
+     */
+    public long getOffsetNanos(int stage) {
+        return times[stage] - arrived;
+    }
+
+    /**
+     * Time until the last stage marked
+     *
+     * @return offset in ns, 0 before the first mark
+     */
+    public long getElapsedNanos() {
+        return count == 0 ? 0 : times[count - 1] - arrived;
+    }
+
+    /**
+     * The time each stage took, in order, then the total
+     *
+     * @return one line breakdown
+     */
+    @Override
+    public String toString() {
+
+        StringBuilder breakdown = new StringBuilder(32 * (count + 1));
+        long previous = arrived;
+        for (int n = 0; n < count; n++) {
+            breakdown.append(stages[n]).append(' ')
+                    .append(String.format(Locale.ROOT, "%.2f", (times[n] - previous) / 1e6)).append(" ms, ");
+            previous = times[n];
+        }
+        breakdown.append("total ").append(String.format(Locale.ROOT, "%.2f", getElapsedNanos() / 1e6)).append(" ms");
+        return breakdown.toString();
+    }
+
+}
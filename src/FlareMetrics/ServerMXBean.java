@@ -0,0 +1,92 @@
+package FlareMetrics;
+
+import java.util.Map;
+
+/**
+ * Connections, requests and delivery of the whole server
+ *
+ * @author Team 2
+ */
+public interface ServerMXBean {
+
+    /**
+     * @return clients currently connected
+     */
+    long getActiveSessions();
+
+    /**
+     * @return connections accepted
+     */
+    long getAccepted();
+
+    /**
+     * @return connections accepted per second, last minute
+     */
+    double getAcceptRate();
+
+    /**
+     * @return WebSocket handshakes completed
+     */
+    long getHandshakes();
+
+    /**
+     * @return handshakes per second, last minute
+     */
+    double getHandshakeRate();
+
+    /**
+     * @return requests decoded, by flare op code
+     */
+    Map<String, Long> getMessagesDecoded();
+
+    /**
+     * @return messages sent, by flare op code
+     */
+    Map<String, Long> getMessagesSent();
+
+    /**
+     * @return tasks running right now
+     */
+    long getRunningTasks();
+
+    /**
+     * @return tasks started
+     */
+    long getTasksStarted();
+
+    /**
+     * @return frames, deltas and repeats sent
+     */
+    long getFramesSent();
+
+    /**
+     * @return frames sent per second, last minute
+     */
+    double getFrameRate();
+
+    /**
+     * @return bytes sent, WebSocket framing excluded
+     */
+    long getBytesSent();
+
+    /**
+     * @return bytes sent per second, last minute
+     */
+    double getByteRate();
+
+    /**
+     * @return messages queued for watch party subscribers
+     */
+    long getOutboundQueued();
+
+    /**
+     * @return streams waiting for their turn at a connection's send gate
+     */
+    long getSendGateWaiting();
+
+    /**
+     * @return playbacks that can be resumed
+     */
+    int getResumableSessions();
+
+}
@@ -0,0 +1,323 @@
+package FlareMetrics;
+
+import FlareProtocol.FlareOpCode;
+import FlareStream.ResumableSession;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the whole server. The recording methods are called on the
+ * hot paths, each is a striped increment or a lock free histogram update,
+ * so metrics stay on in production. Published over JMX as Flare:type=Server
+ * and Flare:type=Latency.
+ *
+ * @author Team 2
+ */
+public final class ServerMetrics implements ServerMXBean {
+
+    private static final int OP_CODES = 32;
+    private static final String[] opCodeNames = initializeNames();
+
+    private static final LongAdder activeSessions = new LongAdder();
+    private static final Meter accepted = new Meter();
+    private static final Meter handshakes = new Meter();
+    private static final LongAdder[] decoded = newCounters();
+    private static final LongAdder[] sent = newCounters();
+    private static final LongAdder runningTasks = new LongAdder();
+    private static final LongAdder tasksStarted = new LongAdder();
+    private static final Meter framesSent = new Meter();
+    private static final Meter bytesSent = new Meter();
+    private static final LongAdder outboundQueued = new LongAdder();
+    private static final LongAdder sendGateWaiting = new LongAdder();
+
+    private static final LatencyHistogram frameLoad = new LatencyHistogram();
+    private static final LatencyHistogram frameEncode = new LatencyHistogram();
+    private static final LatencyHistogram frameWrite = new LatencyHistogram();
+
+    private static final ServerMetrics instance = new ServerMetrics();
+
+    static {
+        Metrics.register("Server", null, instance);
+        Metrics.register("Latency", "frameLoad", frameLoad);
+        Metrics.register("Latency", "frameEncode", frameEncode);
+        Metrics.register("Latency", "frameWrite", frameWrite);
+    }
+
+    private ServerMetrics() {
+    }
+
+    /**
+     * The counters as published over JMX
+     *
+     * @return server metrics
+     */
+    public static ServerMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Name of an op code as declared in FlareOpCode
+     *
+     * @param opCode op code, with or without the stream flag
+     * @return constant name, UNKNOWN past the known codes
+     */
+    public static String getOpCodeName(byte opCode) {
+        return opCodeNames[slotOf(opCode)];
+    }
+
+    /**
+     * Op code names from FlareOpCode, slot OP_CODES counts unknown codes
+     */
+    private static String[] initializeNames() {
+
+        String[] names = new String[OP_CODES + 1];
+        for (Field field : FlareOpCode.class.getFields()) {
+            try {
+                if (Modifier.isStatic(field.getModifiers()) && field.getType() == byte.class) {
+                    byte code = field.getByte(null);
+                    if (code >= 0 && code < OP_CODES) {
+                        names[code] = field.getName();
+                    }
+                }
+            } catch (IllegalAccessException ex) {
+                //Public constants, cannot happen
+            }
+        }
+        for (int n = 0; n < OP_CODES; n++) {
+            if (names[n] == null) {
+                names[n] = "OP_" + n;
+            }
+        }
+        names[OP_CODES] = "UNKNOWN";
+        return names;
+    }
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[OP_CODES + 1];
+        for (int n = 0; n < counters.length; n++) {
+            counters[n] = new LongAdder();
+        }
+        return counters;
+    }
+
+    private static int slotOf(byte opCode) {
+        int code = opCode & ~FlareOpCode.STREAM_FLAG;
+        return code < OP_CODES ? code : OP_CODES;
+    }
+
+    /**
+     * Tells frames apart from other messages
+     *
+     * @param opCode op code, with or without the stream flag
+     * @return true for a full frame, a delta or a repeated frame
+     */
+    public static boolean isFrame(byte opCode) {
+        int code = opCode & ~FlareOpCode.STREAM_FLAG;
+        return code == FlareOpCode.FRAME || code == FlareOpCode.FRAME_DELTA || code == FlareOpCode.REPEAT_FRAME;
+    }
+
+    /**
+     * A connection was accepted
+     */
+    public static void accepted() {
+        accepted.mark();
+    }
+
+    /**
+     * A WebSocket handshake completed
+     */
+    public static void handshake() {
+        handshakes.mark();
+    }
+
+    /**
+     * A client session started
+     */
+    public static void sessionOpened() {
+        activeSessions.increment();
+    }
+
+    /**
+     * A client session ended
+     */
+    public static void sessionClosed() {
+        activeSessions.decrement();
+    }
+
+    /**
+     * A request was decoded
+     *
+     * @param opCode flare op code, stream flag allowed
+     */
+    public static void decoded(byte opCode) {
+        decoded[slotOf(opCode)].increment();
+    }
+
+    /**
+     * A task started
+     */
+    public static void taskStarted() {
+        tasksStarted.increment();
+        runningTasks.increment();
+    }
+
+    /**
+     * A task finished
+     */
+    public static void taskFinished() {
+        runningTasks.decrement();
+    }
+
+    /**
+     * A message was serialized
+     *
+     * @param opCode flare op code, stream flag allowed
+     * @param nanos time spent serializing, JPEG encoding included
+     */
+    public static void encoded(byte opCode, long nanos) {
+        if (isFrame(opCode)) {
+            frameEncode.record(nanos);
+        }
+    }
+
+    /**
+     * A message was written to a socket
+     *
+     * @param opCode flare op code, stream flag allowed
+     * @param bytes message length
+     * @param nanos time spent writing
+     */
+    public static void sent(byte opCode, long bytes, long nanos) {
+
+        sent[slotOf(opCode)].increment();
+        bytesSent.mark(bytes);
+
+        if (isFrame(opCode)) {
+            framesSent.mark();
+            frameWrite.record(nanos);
+        }
+    }
+
+    /**
+     * Time to get the bytes of a frame or delta, cache hits included
+     *
+     * @return load histogram
+     */
+    public static LatencyHistogram getFrameLoad() {
+        return frameLoad;
+    }
+
+    /**
+     * Messages were queued or taken off an outbound queue
+     *
+     * @param delta change of the queue length
+     */
+    public static void outboundQueued(int delta) {
+        outboundQueued.add(delta);
+    }
+
+    /**
+     * A stream started or stopped waiting at a send gate
+     *
+     * @param delta 1 when it starts waiting, -1 when done
+     */
+    public static void sendGateWaiting(int delta) {
+        sendGateWaiting.add(delta);
+    }
+
+    private static Map<String, Long> toMap(LongAdder[] counters) {
+
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (int n = 0; n < counters.length; n++) {
+            long count = counters[n].sum();
+            if (count > 0) {
+                counts.put(opCodeNames[n], count);
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public long getActiveSessions() {
+        return activeSessions.sum();
+    }
+
+    @Override
+    public long getAccepted() {
+        return accepted.getCount();
+    }
+
+    @Override
+    public double getAcceptRate() {
+        return accepted.getRate();
+    }
+
+    @Override
+    public long getHandshakes() {
+        return handshakes.getCount();
+    }
+
+    @Override
+    public double getHandshakeRate() {
+        return handshakes.getRate();
+    }
+
+    @Override
+    public Map<String, Long> getMessagesDecoded() {
+        return toMap(decoded);
+    }
+
+    @Override
+    public Map<String, Long> getMessagesSent() {
+        return toMap(sent);
+    }
+
+    @Override
+    public long getRunningTasks() {
+        return runningTasks.sum();
+    }
+
+    @Override
+    public long getTasksStarted() {
+        return tasksStarted.sum();
+    }
+
+    @Override
+    public long getFramesSent() {
+        return framesSent.getCount();
+    }
+
+    @Override
+    public double getFrameRate() {
+        return framesSent.getRate();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.getCount();
+    }
+
+    @Override
+    public double getByteRate() {
+        return bytesSent.getRate();
+    }
+
+    @Override
+    public long getOutboundQueued() {
+        return outboundQueued.sum();
+    }
+
+    @Override
+    public long getSendGateWaiting() {
+        return sendGateWaiting.sum();
+    }
+
+    @Override
+    public int getResumableSessions() {
+        return ResumableSession.getCount();
+    }
+
+}
@@ -0,0 +1,20 @@
+package FlareMetrics;
+
+/**
+ * Loads performed and coalesced by a SingleFlight
+ *
+ * @author Team 2
+ */
+public interface SingleFlightMXBean {
+
+    /**
+     * @return loads actually performed
+     */
+    long getLoads();
+
+    /**
+     * @return callers that waited for a load already in flight
+     */
+    long getCoalesced();
+
+}
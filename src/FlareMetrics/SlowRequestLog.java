@@ -0,0 +1,211 @@
+package FlareMetrics;
+
+import Core.FlareConfiguration;
+import Utility.AsyncLog;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The last completed requests in a fixed ring, overwritten oldest first.
+ * Recording claims a slot with one atomic increment, so requests never wait
+ * for each other or for a reader; the slowest are picked when asked for.
+ *
+ * A request is slow by its response time, the time until the client had
+ * its answer: the last stage its task marked, or else its first message.
+ * A playback stays in the server as long as the video, but it only feels
+ * slow if the first frame is late.
+ *
+ * Requests over flare.slowRequests.thresholdMs also go to a second, smaller
+ * ring and to the log with their stage breakdown, so they stay around after
+ * faster traffic pushed them out of the first one.
+ *
+ * @author Team 2
+ */
+public class SlowRequestLog {
+
+    private static final AtomicReferenceArray<Request> ring
+            = new AtomicReferenceArray<Request>(Math.max(1, FlareConfiguration.SLOW_REQUEST_LOG));
+    private static final AtomicLong next = new AtomicLong();
+
+    private static final AtomicReferenceArray<Request> slow
+            = new AtomicReferenceArray<Request>(Math.max(1, FlareConfiguration.SLOW_REQUEST_SLOW_LOG));
+    private static final AtomicLong nextSlow = new AtomicLong();
+    private static final long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(FlareConfiguration.SLOW_REQUEST_MS);
+
+    /**
+     * Records a completed request
+     *
+     * @param session session id of the client
+     * @param opCode request op code
+     * @param stream stream id, 0 for the connection
+     * @param trace stages of the request, the first one ends the queueing
+     * @param responseNanos time from arrival until the client had its answer
+     * @param totalNanos time from arrival until the task returned
+     */
+    public static void record(String session, byte opCode, int stream, RequestTrace trace,
+            long responseNanos, long totalNanos) {
+
+        Request request = new Request(System.nanoTime(), session, ServerMetrics.getOpCodeName(opCode),
+                stream, trace, responseNanos, totalNanos);
+        ring.set((int) (next.getAndIncrement() % ring.length()), request);
+
+        if (responseNanos >= thresholdNanos) {
+            slow.set((int) (nextSlow.getAndIncrement() % slow.length()), request);
+            AsyncLog.warn("Slow {} request: {}", request, trace);
+        }
+    }
+
+    /**
+     * Latest requests over the slow threshold
+     *
+     * @param count most requests to return
+     * @return requests, newest first
+     */
+    public static List<Request> getSlowLog(int count) {
+
+        List<Request> latest = new ArrayList<Request>(slow.length());
+        for (int n = 0; n < slow.length(); n++) {
+            Request request = slow.get(n);
+            if (request != null) {
+                latest.add(request);
+            }
+        }
+
+        Collections.sort(latest, Comparator.comparingLong((Request request) -> request.completed).reversed());
+        return latest.subList(0, Math.min(count, latest.size()));
+    }
+
+    /**
+     * Slowest requests completed within the recent window
+     *
+     * @param count most requests to return
+     * @return requests by descending response time
+     */
+    public static List<Request> getSlowest(int count) {
+
+        long oldest = System.nanoTime() - TimeUnit.SECONDS.toNanos(FlareConfiguration.SLOW_REQUEST_WINDOW_S);
+        List<Request> recent = new ArrayList<Request>(ring.length());
+        for (int n = 0; n < ring.length(); n++) {
+            Request request = ring.get(n);
+            if (request != null && request.completed - oldest > 0) {
+                recent.add(request);
+            }
+        }
+
+        Collections.sort(recent, Comparator.comparingLong(Request::getResponseNanos).reversed());
+        return recent.subList(0, Math.min(count, recent.size()));
+    }
+
+    /**
+     * One completed request, immutable
+     */
+    public static final class Request {
+
+        private final long completed;
+        private final String session;
+        private final String opCode;
+        private final int stream;
+        private final RequestTrace trace;
+        private final long responseNanos;
+        private final long totalNanos;
+
+        private Request(long completed, String session, String opCode, int stream, RequestTrace trace,
+                long responseNanos, long totalNanos) {
+            this.completed = completed;
+            this.session = session;
+            this.opCode = opCode;
+            this.stream = stream;
+            this.trace = trace;
+            this.responseNanos = responseNanos;
+            this.totalNanos = totalNanos;
+        }
+
+        /**
+         * Time since the request completed
+         *
+         * @return age in ms
+         */
+        public long getAgeMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - completed);
+        }
+
+        /**
+         * Session of the client
+         *
+         * @return session id
+         */
+        public String getSession() {
+            return session;
+        }
+
+        /**
+         * Request op code
+         *
+         * @return op code name
+         */
+        public String getOpCode() {
+            return opCode;
+        }
+
+        /**
+         * Stream of the request
+         *
+         * @return stream id, 0 for the connection
+         */
+        public int getStream() {
+            return stream;
+        }
+
+        /**
+         * Time waiting for a request thread
+         *
+         * @return queue time in ns
+         */
+        public long getQueuedNanos() {
+            return trace.getStageCount() == 0 ? 0 : trace.getOffsetNanos(0);
+        }
+
+        /**
+         * Stages the request went through
+         *
+         * @return trace of the request
+         */
+        public RequestTrace getTrace() {
+            return trace;
+        }
+
+        /**
+         * Time until the first message went back to the client
+         *
+         * @return response time in ns
+         */
+        public long getResponseNanos() {
+            return responseNanos;
+        }
+
+        /**
+         * Time until the task returned
+         *
+         * @return total time in ns
+         */
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * Op code, session and stream
+         *
+         * @return short description
+         */
+        @Override
+        public String toString() {
+            return opCode + " " + session + "/" + stream;
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package FlareMetrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for writing one WebSocket frame. The event spans the
+ * write itself, blocked is the time spent waiting for the socket lock while
+ * another thread was writing.
+ *
+ * @author Team 2
+ */
+@Name("flare.SocketWrite")
+@Label("WebSocket Frame Write")
+@Category({"Flare", "WebSocket"})
+@Description("One server frame written to a client socket")
+@StackTrace(false)
+public class SocketWriteEvent extends jdk.jfr.Event {
+
+    @Label("Session")
+    public String session;
+
+    @Label("Flare Op Code")
+    public String opCode;
+
+    @Label("Written")
+    @DataAmount
+    public long bytes;
+
+    @Label("Blocked")
+    @Timespan(Timespan.NANOSECONDS)
+    public long blocked;
+
+}
@@ -0,0 +1,45 @@
+package FlareMetrics;
+
+/**
+ * Pool, queue and timing of one processing stage
+ *
+ * @author Team 2
+ */
+public interface StageMXBean {
+
+    /**
+     * @return most threads running at once
+     */
+    int getThreads();
+
+    /**
+     * @return threads currently busy
+     */
+    int getActive();
+
+    /**
+     * @return work waiting for a thread
+     */
+    int getQueued();
+
+    /**
+     * @return work finished so far
+     */
+    long getCompleted();
+
+    /**
+     * @return work shed because the stage was saturated
+     */
+    long getRejected();
+
+    /**
+     * @return mean time work waited for a thread in ms
+     */
+    double getMeanWaitMillis();
+
+    /**
+     * @return mean time spent on one piece of work in ms
+     */
+    double getMeanServiceMillis();
+
+}
@@ -0,0 +1,37 @@
+package FlareMetrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for one request, from the op code lookup until its
+ * task returned. Streamed tasks also record how long they queued in the
+ * request stage.
+ *
+ * @author Team 2
+ */
+@Name("flare.TaskDispatch")
+@Label("Task Dispatch")
+@Category({"Flare", "Task"})
+@Description("A request served by its task")
+@StackTrace(false)
+public class TaskDispatchEvent extends jdk.jfr.Event {
+
+    @Label("Session")
+    public String session;
+
+    @Label("Op Code")
+    public String opCode;
+
+    @Label("Stream")
+    public int stream;
+
+    @Label("Queued")
+    @Timespan(Timespan.NANOSECONDS)
+    public long queued;
+
+}
@@ -0,0 +1,30 @@
+package FlareMetrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for reading one WebSocket frame, from its first byte
+ * to the unmasked payload. Waiting for the first byte is not included.
+ *
+ * @author Team 2
+ */
+@Name("flare.WebSocketDecode")
+@Label("WebSocket Frame Decode")
+@Category({"Flare", "WebSocket"})
+@Description("Reading and unmasking one client frame")
+@StackTrace(false)
+public class WebSocketDecodeEvent extends jdk.jfr.Event {
+
+    @Label("WebSocket Op Code")
+    public byte opCode;
+
+    @Label("Payload")
+    @DataAmount
+    public int payloadBytes;
+
+}
@@ -14,5 +14,22 @@ public class FlareOpCode {
     public final static byte OPEN_VIDEO = 0;
     public final static byte FRAME = 1;
     public final static byte AUDIO = 2;
+    public final static byte AUDIO_CHUNK = 3;
+    public final static byte LIST_VIDEOS = 4;
+    public final static byte THUMBNAILS = 5;
+    public final static byte JOIN_CHANNEL = 6;
+    public final static byte FRAME_DELTA = 7;
+    public final static byte REPEAT_FRAME = 8;
+    public final static byte CANCEL_STREAM = 9;
+    public final static byte PRIORITIZE_STREAM = 10;
+    public final static byte END_STREAM = 11;
+    public final static byte CREDIT = 12;
+    public final static byte SESSION = 13;
+    public final static byte ACK_FRAME = 14;
+    public final static byte RESUME = 15;
+    public final static byte TIMING = 16;
+
+    //Set on the op code of messages that carry a stream id
+    public final static byte STREAM_FLAG = (byte) 0x80;
     
 }
@@ -7,7 +7,11 @@ package FlareProtocol;
 
 import FlareProtocol.FlareOpCode;
 import Core.FlareClient;
+import FlareTask.JoinChannelTask;
+import FlareTask.ListVideosTask;
 import FlareTask.OpenVideoTask;
+import FlareTask.ResumeTask;
+import FlareTask.ThumbnailsTask;
 import WebSocket.WebSocket;
 import java.util.Collections;
 import java.util.HashMap;
@@ -34,6 +38,10 @@ public class TaskTable {
 
 
             table.put(FlareOpCode.OPEN_VIDEO, OpenVideoTask.class);
+            table.put(FlareOpCode.LIST_VIDEOS, ListVideosTask.class);
+            table.put(FlareOpCode.THUMBNAILS, ThumbnailsTask.class);
+            table.put(FlareOpCode.JOIN_CHANNEL, JoinChannelTask.class);
+            table.put(FlareOpCode.RESUME, ResumeTask.class);
 
 
         } catch (Exception e) {
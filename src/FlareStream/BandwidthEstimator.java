@@ -0,0 +1,73 @@
+package FlareStream;
+
+/**
+ * Estimates the throughput of a client connection from its most recent
+ * sends. Each send records how many bytes were written and how long the
+ * blocking write took, the estimate is the total bytes over the total time
+ * of the window. Writes only block once the socket buffer is full, so a
+ * link that keeps up reports a high throughput and a slow link reports its
+ * real drain rate.
+ *
+ * @author Team 2
+ */
+public class BandwidthEstimator {
+
+    private final long[] bytes;
+    private final long[] nanos;
+    private int next;
+    private int samples;
+    private long totalBytes;
+    private long totalNanos;
+
+    /**
+     * Constructor
+     *
+     * @param window number of sends to average over
+     */
+    public BandwidthEstimator(int window) {
+        bytes = new long[Math.max(1, window)];
+        nanos = new long[Math.max(1, window)];
+    }
+
+    /**
+     * Records a completed send
+     *
+     * @param sentBytes bytes written
+     * @param elapsedNanos time the write took
+     */
+    public synchronized void record(long sentBytes, long elapsedNanos) {
+
+        totalBytes += sentBytes - bytes[next];
+        totalNanos += elapsedNanos - nanos[next];
+        bytes[next] = sentBytes;
+        nanos[next] = elapsedNanos;
+
+        next = (next + 1) % bytes.length;
+        if (samples < bytes.length) {
+            samples++;
+        }
+    }
+
+    /**
+     * Checks if enough sends were recorded for a meaningful estimate
+     *
+     * @return true once the window has filled up
+     */
+    public synchronized boolean hasEstimate() {
+        return samples == bytes.length;
+    }
+
+    /**
+     * Current throughput estimate
+     *
+     * @return bytes per second, Double.MAX_VALUE if no time was measured
+     */
+    public synchronized double getBytesPerSecond() {
+
+        if (totalNanos <= 0) {
+            return Double.MAX_VALUE;
+        }
+        return totalBytes * 1e9 / totalNanos;
+    }
+
+}
@@ -0,0 +1,252 @@
+package FlareStream;
+
+import FlareMessage.EndStreamMessage;
+import FlareMetrics.ServerMetrics;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Outbound path of one client subscribed to a playback channel. Messages are
+ * queued as the shared serialized buffers and written by a drain task on the
+ * channel executor, so a slow subscriber never holds up the producer. When
+ * the queue is full frames are skipped according to the skip policy, audio
+ * is never skipped. The stream of the subscriber ends once the channel
+ * finished and everything queued was sent.
+ *
+ * @author Team 2
+ */
+public class ChannelSubscriber {
+
+    /**
+     * What to skip when the queue is full
+     */
+    public enum SkipPolicy {
+
+        /**
+         * Skip the incoming frame, the client falls behind and catches up later
+         */
+        DROP_NEWEST,
+
+        /**
+         * Skip the oldest queued frame, the client stays close to live
+         */
+        DROP_OLDEST
+    }
+
+    private final LogicalStream stream;
+    private final PlaybackChannel channel;
+    private final Executor executor;
+    private final int capacity;
+    private final SkipPolicy skipPolicy;
+
+    private final ArrayDeque<Entry> queue = new ArrayDeque<Entry>();
+    private boolean draining;
+    private boolean closed;
+    private boolean finished;
+    private long skippedFrames;
+
+    /**
+     * Constructor
+     *
+     * @param stream stream the client joined on
+     * @param channel channel subscribed to
+     * @param executor runs the drain task
+     * @param capacity queued messages before frames are skipped
+     * @param skipPolicy what to skip when full
+     */
+    ChannelSubscriber(LogicalStream stream, PlaybackChannel channel, Executor executor, int capacity, SkipPolicy skipPolicy) {
+        this.stream = stream;
+        this.channel = channel;
+        this.executor = executor;
+        this.capacity = Math.max(1, capacity);
+        this.skipPolicy = skipPolicy;
+    }
+
+    /**
+     * Queues a serialized message. The buffers are shared with the other
+     * subscribers and must not be modified.
+     *
+     * @param message flare message header and payload slices
+     * @param isFrame true if the message may be skipped
+     */
+    void offer(ByteBuffer[] message, boolean isFrame) {
+
+        synchronized (this) {
+
+            if (closed) {
+                return;
+            }
+
+            if (queue.size() >= capacity && isFrame) {
+
+                if (skipPolicy == SkipPolicy.DROP_NEWEST || !dropOldestFrame()) {
+                    skippedFrames++;
+                    return;
+                }
+                skippedFrames++;
+
+            } else if (queue.size() >= capacity) {
+
+                //Make room for audio if a frame can go
+                if (dropOldestFrame()) {
+                    skippedFrames++;
+                }
+            }
+
+            queue.addLast(new Entry(message, isFrame));
+            ServerMetrics.outboundQueued(1);
+
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+
+        schedule();
+    }
+
+    /**
+     * Number of frames this subscriber skipped so far
+     *
+     * @return skipped frame count
+     */
+    public synchronized long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * The stream the client joined on
+     *
+     * @return stream
+     */
+    public LogicalStream getStream() {
+        return stream;
+    }
+
+    /**
+     * The channel played to the end, ends the stream once the queue is sent
+     */
+    void finish() {
+
+        boolean pending;
+        synchronized (this) {
+            finished = true;
+            if (draining || closed) {
+                return;
+            }
+
+            //A drain was shed by the send stage, send the rest first
+            pending = !queue.isEmpty();
+            draining = pending;
+        }
+
+        if (!pending || !schedule()) {
+            stream.end(EndStreamMessage.COMPLETE);
+        }
+    }
+
+    /**
+     * Stops sending to this subscriber
+     */
+    synchronized void close() {
+        closed = true;
+        ServerMetrics.outboundQueued(-queue.size());
+        queue.clear();
+    }
+
+    private boolean dropOldestFrame() {
+
+        Iterator<Entry> entries = queue.iterator();
+        while (entries.hasNext()) {
+            if (entries.next().isFrame) {
+                entries.remove();
+                ServerMetrics.outboundQueued(-1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hands the drain task to the send stage
+     *
+     * @return false if the stage was saturated, the next message retries
+     * and the skip policy bounds the queue meanwhile
+     */
+    private boolean schedule() {
+
+        try {
+            executor.execute(this::drain);
+            return true;
+        } catch (RejectedExecutionException ex) {
+            synchronized (this) {
+                draining = false;
+            }
+            return false;
+        }
+    }
+
+    private void drain() {
+
+        while (true) {
+
+            Entry entry;
+            boolean ended = false;
+            synchronized (this) {
+                entry = closed ? null : queue.pollFirst();
+                if (entry != null) {
+                    ServerMetrics.outboundQueued(-1);
+                }
+                if (entry == null) {
+                    draining = false;
+                    ended = finished && !closed;
+                }
+            }
+
+            if (entry == null) {
+                if (ended) {
+                    stream.end(EndStreamMessage.COMPLETE);
+                }
+                return;
+            }
+
+            try {
+                //Waiting for credit lets the queue fill, the skip policy bounds it
+                if (stream.awaitCredit(entry.isFrame ? 1 : 0, entry.length())) {
+                    stream.send(entry.message);
+                }
+            } catch (IOException ex) {
+                channel.leave(this);
+                stream.end(EndStreamMessage.FAILED);
+                synchronized (this) {
+                    draining = false;
+                }
+                return;
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        final ByteBuffer[] message;
+        final boolean isFrame;
+
+        Entry(ByteBuffer[] message, boolean isFrame) {
+            this.message = message;
+            this.isFrame = isFrame;
+        }
+
+        int length() {
+            int length = 0;
+            for (ByteBuffer buffer : message) {
+                length += buffer.remaining();
+            }
+            return length;
+        }
+    }
+
+}
@@ -0,0 +1,235 @@
+package FlareStream;
+
+import FlareMetrics.CreditMXBean;
+import FlareMetrics.Metrics;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Credit the client granted a stream with CREDIT messages, in frames, bytes
+ * or both. Grants add up and every message sent consumes from them, so the
+ * client decides how far the server may run ahead of its decoder.
+ *
+ * A dimension only limits the stream once the client granted some of it. A
+ * message may overdraw the byte credit, so a frame larger than the window
+ * still goes out once the window is positive. Nothing is sent before the
+ * first grant.
+ *
+ * @author Team 2
+ */
+public class CreditWindow {
+
+    private final Statistics statistics;
+
+    private long frames;
+    private long bytes;
+    private boolean limitsFrames;
+    private boolean limitsBytes;
+    private boolean closed;
+
+    /**
+     * Constructor
+     *
+     * @param statistics session statistics to add to
+     */
+    CreditWindow(Statistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Adds credit
+     *
+     * @param frames frames granted, 0 for none
+     * @param bytes bytes granted, 0 for none
+     */
+    public synchronized void grant(int frames, int bytes) {
+
+        if (frames > 0) {
+            this.frames += frames;
+            limitsFrames = true;
+        }
+
+        if (bytes > 0) {
+            this.bytes += bytes;
+            limitsBytes = true;
+        }
+
+        statistics.granted(Math.max(0, frames), Math.max(0, bytes));
+        notifyAll();
+    }
+
+    /**
+     * Waits for enough credit and consumes it
+     *
+     * @param frames frames about to be sent
+     * @param bytes bytes about to be sent
+     * @return false if the window was closed while waiting
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public synchronized boolean acquire(int frames, int bytes) throws InterruptedIOException {
+
+        if (!isAvailable(frames)) {
+
+            long start = System.nanoTime();
+
+            try {
+                while (!isAvailable(frames)) {
+                    wait();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for credit");
+            } finally {
+                statistics.stalled(System.nanoTime() - start);
+            }
+        }
+
+        if (closed) {
+            return false;
+        }
+
+        //An unlimited dimension keeps no balance, a debt there would swallow its first grant
+        if (limitsFrames) {
+            this.frames -= frames;
+        }
+        if (limitsBytes) {
+            this.bytes -= bytes;
+        }
+        return true;
+    }
+
+    /**
+     * Frames left
+     *
+     * @return frame credit, meaningless until frames were granted
+     */
+    public synchronized long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Bytes left, negative after an overdraw
+     *
+     * @return byte credit, meaningless until bytes were granted
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Wakes up and fails every waiting sender, the stream is over
+     */
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    private boolean isAvailable(int needed) {
+
+        if (closed) {
+            return true;
+        }
+
+        if (!limitsFrames && !limitsBytes) {
+            return false;
+        }
+
+        return (!limitsFrames || frames >= needed) && (!limitsBytes || bytes > 0);
+    }
+
+    /**
+     * Credit and stall counters of all streams of a session. Everything is
+     * also added to the server wide totals, published as Flare:type=Credit.
+     */
+    public static final class Statistics implements CreditMXBean {
+
+        private static final Statistics total = new Statistics(null);
+
+        static {
+            Metrics.register("Credit", null, total);
+        }
+
+        private final Statistics parent;
+        private final LongAdder grantedFrames = new LongAdder();
+        private final LongAdder grantedBytes = new LongAdder();
+        private final LongAdder stalls = new LongAdder();
+        private final LongAdder stallNanos = new LongAdder();
+
+        /**
+         * Constructor
+         */
+        public Statistics() {
+            this(total);
+        }
+
+        private Statistics(Statistics parent) {
+            this.parent = parent;
+        }
+
+        /**
+         * Counters of all sessions together
+         *
+         * @return server wide statistics
+         */
+        public static Statistics getTotal() {
+            return total;
+        }
+
+        private void granted(int frames, int bytes) {
+            grantedFrames.add(frames);
+            grantedBytes.add(bytes);
+            if (parent != null) {
+                parent.granted(frames, bytes);
+            }
+        }
+
+        private void stalled(long nanos) {
+            stalls.increment();
+            stallNanos.add(nanos);
+            if (parent != null) {
+                parent.stalled(nanos);
+            }
+        }
+
+        /**
+         * Frames granted so far
+         *
+         * @return granted frames
+         */
+        @Override
+        public long getGrantedFrames() {
+            return grantedFrames.sum();
+        }
+
+        /**
+         * Bytes granted so far
+         *
+         * @return granted bytes
+         */
+        @Override
+        public long getGrantedBytes() {
+            return grantedBytes.sum();
+        }
+
+        /**
+         * Number of times a stream had to wait for credit
+         *
+         * @return stall count
+         */
+        @Override
+        public long getStalls() {
+            return stalls.sum();
+        }
+
+        /**
+         * Time streams spent waiting for credit
+         *
+         * @return total stall time in ms
+         */
+        @Override
+        public long getStallMillis() {
+            return stallNanos.sum() / 1000000;
+        }
+    }
+
+}
@@ -0,0 +1,257 @@
+package FlareStream;
+
+import Core.FlareClient;
+import FlareMessage.EndStreamMessage;
+import FlareMessage.FlareMessage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One request in flight on a connection, such as a video being played, a
+ * catalog page or a scrub strip. Everything the request sends is tagged
+ * with the stream id the client chose, and goes through the send gate of
+ * the connection so urgent streams overtake bulk ones between two messages.
+ *
+ * Stream 0 is the connection itself, used by requests without a stream id.
+ *
+ * @author Team 2
+ */
+public class LogicalStream {
+
+    private final StreamTable table;
+    private final int id;
+    private volatile int priority;
+    private volatile boolean cancelled;
+    private boolean ended;
+    private volatile boolean flowControlled;
+    private final CreditWindow credit;
+    private final List<Runnable> cancelHandlers = new ArrayList<Runnable>();
+
+    // System.nanoTime() of the first message sent, 0 before
+    private volatile long firstSent;
+
+    /**
+     * Constructor
+     *
+     * @param table stream table of the connection
+     * @param id stream id, 0 for the connection itself
+     * @param priority send priority, 0 is the most urgent
+     */
+    LogicalStream(StreamTable table, int id, int priority) {
+        this.table = table;
+        this.id = id;
+        this.priority = priority;
+        this.credit = new CreditWindow(table.getCreditStatistics());
+    }
+
+    /**
+     * Stream id
+     *
+     * @return id chosen by the client
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Send priority, 0 is the most urgent
+     *
+     * @return priority
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Changes the send priority, applies from the next message on
+     *
+     * @param priority new priority, 0 is the most urgent
+     */
+    void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Whether the client cancelled this stream. Long running requests check
+     * this between two messages.
+     *
+     * @return true once cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Credit the client granted this stream
+     *
+     * @return credit window
+     */
+    public CreditWindow getCredit() {
+        return credit;
+    }
+
+    /**
+     * Makes awaitCredit wait for CREDIT grants from now on. Only for streams
+     * with an id, the connection stream runs on the thread that reads the
+     * grants.
+     */
+    public void enableFlowControl() {
+        flowControlled = id != 0;
+    }
+
+    /**
+     * Waits until the client granted enough credit for the next message.
+     * Returns right away unless flow control is enabled.
+     *
+     * @param frames frames the message carries
+     * @param bytes length of the message
+     * @return false if the stream ended while waiting
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public boolean awaitCredit(int frames, int bytes) throws InterruptedIOException {
+        return !flowControlled || credit.acquire(frames, bytes);
+    }
+
+    /**
+     * The client this stream belongs to
+     *
+     * @return client
+     */
+    public FlareClient getClient() {
+        return table.getClient();
+    }
+
+    /**
+     * Runs an action when the stream is cancelled, right away if it already
+     * is. Used by requests that outlive their task, such as a watch party.
+     *
+     * @param handler action to run
+     */
+    public void onCancel(Runnable handler) {
+
+        synchronized (cancelHandlers) {
+            if (!cancelled) {
+                cancelHandlers.add(handler);
+                return;
+            }
+        }
+        handler.run();
+    }
+
+    /**
+     * Sends a message on this stream
+     *
+     * @param message message to send
+     * @throws IOException if cannot write to output
+     */
+    public void send(FlareMessage message) throws IOException {
+
+        message.setStreamId(id);
+
+        table.acquire(this);
+        try {
+            table.getClient().sendMessage(message);
+            markSent();
+        } finally {
+            table.release();
+        }
+    }
+
+    /**
+     * Sends a message serialized for stream 0, see FlareMessage.toBuffers.
+     * The buffers are not modified.
+     *
+     * @param buffers message header followed by the payload slices
+     * @throws IOException if cannot write to output
+     */
+    public void send(ByteBuffer[] buffers) throws IOException {
+
+        ByteBuffer[] tagged = buffers;
+        if (id != 0) {
+            tagged = buffers.clone();
+            tagged[0] = FlareMessage.withStreamId(buffers[0], id);
+        }
+
+        table.acquire(this);
+        try {
+            table.getClient().sendMessage(tagged);
+            markSent();
+        } finally {
+            table.release();
+        }
+    }
+
+    private void markSent() {
+        if (firstSent == 0) {
+            firstSent = System.nanoTime();
+        }
+    }
+
+    /**
+     * When the stream first sent a message since the last call, and starts
+     * over. Requests on stream 0 take it before and after they run.
+     *
+     * @return System.nanoTime() of the first message, 0 if nothing was sent
+     */
+    public long takeFirstSent() {
+        long sent = firstSent;
+        firstSent = 0;
+        return sent;
+    }
+
+    /**
+     * Tells the client the stream is over and frees its id. Stream 0 never
+     * ends.
+     *
+     * @param status one of the EndStreamMessage status constants
+     */
+    public void end(byte status) {
+
+        if (id == 0) {
+            return;
+        }
+
+        synchronized (this) {
+            if (ended) {
+                return;
+            }
+            ended = true;
+        }
+
+        table.remove(this);
+        credit.close();
+
+        EndStreamMessage message = new EndStreamMessage();
+        message.setStatus(status);
+        try {
+            send(message);
+        } catch (IOException ex) {
+            //Connection is gone, nobody to tell
+        }
+    }
+
+    /**
+     * Marks the stream cancelled and runs the cancel handlers
+     */
+    void cancel() {
+
+        List<Runnable> handlers;
+        synchronized (cancelHandlers) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            credit.close();
+            handlers = new ArrayList<Runnable>(cancelHandlers);
+            cancelHandlers.clear();
+        }
+
+        for (Runnable handler : handlers) {
+            handler.run();
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+package FlareStream;
+
+/**
+ * Decides the order in which audio chunks and frames go out on the wire.
+ * Each unit gets a send deadline: an audio chunk is due lead ms before its
+ * presentation time so the client always has audio buffered ahead, a frame
+ * is due up to lag ms after its presentation time. The unit with the
+ * earliest deadline is sent next (ties go to audio), so both streams are
+ * interleaved by timestamp instead of sending all the audio up front.
+ *
+ * Deadlines of the units picked never decrease, so a sender that holds each
+ * unit back until its release time, a fixed time before its deadline,
+ * streams at the media rate instead of link speed.
+ *
+ * @author Team 2
+ */
+public class MuxScheduler {
+
+    public static final int NONE = -1;
+    public static final int AUDIO = 0;
+    public static final int FRAME = 1;
+
+    private final int frameCount;
+    private final double msPerFrame;
+    private final int audioLength;
+    private final double msPerAudioByte;
+    private final int chunkBytes;
+    private final int leadMs;
+    private final int lagMs;
+
+    private int nextFrame;
+    private int nextAudioOffset;
+
+    // Unit returned by the last call to next()
+    private int frameIndex;
+    private int audioOffset;
+    private int audioChunkLength;
+    private double deadline;
+
+    /**
+     * Constructor
+     *
+     * @param frameCount total frames in the video
+     * @param fps frames per second of the video
+     * @param duration duration of the video in ms, used for the audio byte rate
+     * @param audioLength total length of the audio data in bytes
+     * @param chunkBytes size of each audio chunk
+     * @param leadMs how far ahead of playback audio is sent
+     * @param lagMs how far behind the audio a frame may be sent
+     */
+    public MuxScheduler(int frameCount, double fps, double duration, int audioLength, int chunkBytes, int leadMs, int lagMs) {
+
+        this.frameCount = frameCount;
+        this.msPerFrame = fps > 0 ? 1000.0 / fps : 0;
+        this.audioLength = audioLength;
+        this.chunkBytes = Math.max(1, chunkBytes);
+        this.leadMs = leadMs;
+        this.lagMs = lagMs;
+
+        //Fall back to the frame timeline when the metadata has no duration
+        double audioDuration = duration > 0 ? duration : frameCount * msPerFrame;
+        this.msPerAudioByte = audioLength > 0 ? audioDuration / audioLength : 0;
+
+    }
+
+    /**
+     * Continues from a frame, as if everything before it was sent. Audio
+     * continues with the chunk playing at that frame.
+     *
+     * @param frame index of the next frame to send
+     */
+    public void skipTo(int frame) {
+
+        nextFrame = Math.max(0, Math.min(frame, frameCount));
+
+        if (msPerAudioByte > 0) {
+            int offset = (int) Math.min(audioLength, framePresentationTime(nextFrame) / msPerAudioByte);
+            nextAudioOffset = offset - offset % chunkBytes;
+        }
+    }
+
+    /**
+     * Checks if any audio or frames are left to send
+     *
+     * @return true if there is another unit to send
+     */
+    public boolean hasNext() {
+        return nextFrame < frameCount || nextAudioOffset < audioLength;
+    }
+
+    /**
+     * Picks the next unit to send
+     *
+     * @return AUDIO, FRAME or NONE when everything has been sent
+     */
+    public int next() {
+
+        boolean audioLeft = nextAudioOffset < audioLength;
+        boolean framesLeft = nextFrame < frameCount;
+
+        if (!audioLeft && !framesLeft) {
+            return NONE;
+        }
+
+        if (audioLeft && (!framesLeft || audioDeadline() <= frameDeadline())) {
+
+            deadline = audioDeadline();
+            audioOffset = nextAudioOffset;
+            audioChunkLength = Math.min(chunkBytes, audioLength - audioOffset);
+            nextAudioOffset += audioChunkLength;
+            return AUDIO;
+
+        }
+
+        deadline = frameDeadline();
+        frameIndex = nextFrame++;
+        return FRAME;
+    }
+
+    /**
+     * Index of the frame picked by the last call to next()
+     *
+     * @return frame index
+     */
+    public int getFrameIndex() {
+        return frameIndex;
+    }
+
+    /**
+     * Byte offset of the audio chunk picked by the last call to next()
+     *
+     * @return offset into the audio data
+     */
+    public int getAudioOffset() {
+        return audioOffset;
+    }
+
+    /**
+     * Length of the audio chunk picked by the last call to next()
+     *
+     * @return chunk length in bytes
+     */
+    public int getAudioChunkLength() {
+        return audioChunkLength;
+    }
+
+    /**
+     * Earliest time the unit picked by the last call to next() should go
+     * out, on the presentation timeline
+     *
+     * @param aheadMs how far ahead of its deadline a unit may be sent
+     * @return release time in ms
+     */
+    public double getReleaseTime(int aheadMs) {
+        return deadline - aheadMs;
+    }
+
+    /**
+     * Presentation time of a frame
+     *
+     * @param index frame index
+     * @return timestamp in ms
+     */
+    public double framePresentationTime(int index) {
+        return index * msPerFrame;
+    }
+
+    /**
+     * Presentation time of an audio byte
+     *
+     * @param offset byte offset into the audio data
+     * @return timestamp in ms
+     */
+    public double audioPresentationTime(int offset) {
+        return offset * msPerAudioByte;
+    }
+
+    private double audioDeadline() {
+        return audioPresentationTime(nextAudioOffset) - leadMs;
+    }
+
+    private double frameDeadline() {
+        return framePresentationTime(nextFrame) + lagMs;
+    }
+
+}
@@ -0,0 +1,240 @@
+package FlareStream;
+
+import Core.FlareConfiguration;
+import FlareMedia.CatalogIndex;
+import FlareMedia.LoadScheduler;
+import FlareMedia.MediaStore;
+import FlareMessage.AudioChunkMessage;
+import FlareMessage.EndStreamMessage;
+import FlareMessage.FrameMessage;
+import FlareMetrics.ServerMetrics;
+import FlareProtocol.FlareOpCode;
+import Utility.Stage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shared playback of one video for a watch party. A single producer thread
+ * plays the video in real time, loads and serializes every audio chunk and
+ * frame once and hands the same buffer to every subscriber, so an extra
+ * viewer only costs its socket writes. Clients joining late get the audio
+ * played so far in one chunk and continue with the live frames. The
+ * channel stops when its last subscriber leaves.
+ *
+ * Everyone receives the source rendition, per client rendition switching
+ * would mean serializing each frame more than once.
+ *
+ * @author Team 2
+ */
+public class PlaybackChannel implements Runnable {
+
+    // Video name -> running channel
+    private static final Map<String, PlaybackChannel> channels = new HashMap<String, PlaybackChannel>();
+
+    // Runs the drain tasks of all subscribers
+    private static final Stage senders = new Stage("send", FlareConfiguration.STAGE_SEND_THREADS,
+            FlareConfiguration.STAGE_SEND_QUEUE);
+
+    private final String name;
+    private final CatalogIndex index;
+    private final int slot;
+    private final byte[] audioData;
+    private final List<ChannelSubscriber> subscribers = new CopyOnWriteArrayList<ChannelSubscriber>();
+
+    // Reads of the channel weigh as much as its viewers
+    private final LoadScheduler.Share loadShare;
+
+    // Guards publishing against joins so a late joiner misses no audio
+    private final Object publishLock = new Object();
+    private int audioPublished;
+    private volatile boolean running = true;
+
+    /**
+     * Subscribes a client to the channel of a video, starting the channel if
+     * nobody is watching yet. Cancelling the stream leaves the channel.
+     *
+     * @param index catalog snapshot
+     * @param slot video slot
+     * @param stream stream of the client to feed
+     * @return the new subscriber
+     * @throws IOException if the audio cannot be read
+     */
+    public static ChannelSubscriber join(CatalogIndex index, int slot, LogicalStream stream) throws IOException {
+
+        synchronized (channels) {
+
+            PlaybackChannel channel = channels.get(index.getName(slot));
+
+            if (channel == null || !channel.running) {
+
+                channel = new PlaybackChannel(index, slot);
+                channels.put(channel.name, channel);
+
+                Thread producer = new Thread(channel, "flare-channel-" + channel.name);
+                producer.setDaemon(true);
+                producer.start();
+            }
+
+            ChannelSubscriber subscriber = channel.subscribe(stream);
+            PlaybackChannel joined = channel;
+            stream.onCancel(() -> {
+                joined.leave(subscriber);
+                stream.end(EndStreamMessage.CANCELLED);
+            });
+            return subscriber;
+        }
+    }
+
+    /**
+     * Number of clients watching a video together
+     *
+     * @param name catalog name of the video
+     * @return subscriber count, 0 if there is no channel
+     */
+    public static int getSubscriberCount(String name) {
+
+        synchronized (channels) {
+            PlaybackChannel channel = channels.get(name);
+            return channel == null ? 0 : channel.subscribers.size();
+        }
+    }
+
+    private PlaybackChannel(CatalogIndex index, int slot) throws IOException {
+
+        this.name = index.getName(slot);
+        this.index = index;
+        this.slot = slot;
+        this.loadShare = LoadScheduler.getInstance().open("channel-" + name, FlareConfiguration.LOAD_SESSION_WEIGHT);
+
+        try {
+            this.audioData = MediaStore.loadAudio(index, slot, loadShare, true);
+        } catch (IOException ex) {
+            loadShare.close();
+            throw ex;
+        }
+    }
+
+    private ChannelSubscriber subscribe(LogicalStream stream) {
+
+        ChannelSubscriber subscriber = new ChannelSubscriber(stream, this, senders,
+                FlareConfiguration.CHANNEL_QUEUE_SIZE,
+                ChannelSubscriber.SkipPolicy.valueOf(FlareConfiguration.CHANNEL_SKIP_POLICY));
+
+        synchronized (publishLock) {
+
+            if (audioPublished > 0) {
+                AudioChunkMessage catchUp = new AudioChunkMessage();
+                catchUp.setChunk(audioData, 0, audioPublished);
+                subscriber.offer(catchUp.toBuffers(), false);
+            }
+
+            subscribers.add(subscriber);
+            loadShare.setWeight(subscribers.size() * FlareConfiguration.LOAD_SESSION_WEIGHT);
+        }
+
+        return subscriber;
+    }
+
+    /**
+     * Unsubscribes a client, the channel stops with its last subscriber
+     *
+     * @param subscriber subscriber to remove
+     */
+    public void leave(ChannelSubscriber subscriber) {
+
+        subscriber.close();
+
+        synchronized (channels) {
+            subscribers.remove(subscriber);
+            loadShare.setWeight(subscribers.size() * FlareConfiguration.LOAD_SESSION_WEIGHT);
+            if (subscribers.isEmpty()) {
+                running = false;
+                channels.remove(name, this);
+            }
+        }
+    }
+
+    /**
+     * Producer loop, plays the video in real time
+     */
+    @Override
+    public void run() {
+
+        MuxScheduler scheduler = new MuxScheduler(index.getFrameCount(slot), index.getFps(slot), index.getDuration(slot),
+                audioData.length, FlareConfiguration.MUX_AUDIO_CHUNK_BYTES, FlareConfiguration.MUX_LEAD_MS,
+                FlareConfiguration.MUX_LAG_MS);
+
+        AudioChunkMessage audioMessage = new AudioChunkMessage();
+        FrameMessage frameMessage = new FrameMessage();
+        int source = index.findRendition(slot, 0);
+        long start = System.nanoTime();
+
+        try {
+
+            while (running && scheduler.hasNext()) {
+
+                ByteBuffer[] message;
+                boolean isFrame = scheduler.next() == MuxScheduler.FRAME;
+                double due;
+
+                //Header serialized once for every subscriber, the body is never copied
+                if (isFrame) {
+
+                    int n = scheduler.getFrameIndex();
+                    due = scheduler.framePresentationTime(n);
+                    frameMessage.setFrameData(MediaStore.loadFrame(index, slot, source, n, loadShare, n == 0));
+                    frameMessage.setIndex(n);
+                    long encodeStart = System.nanoTime();
+                    message = frameMessage.toBuffers();
+                    ServerMetrics.encoded(FlareOpCode.FRAME, System.nanoTime() - encodeStart);
+
+                } else {
+
+                    due = scheduler.audioPresentationTime(scheduler.getAudioOffset()) - FlareConfiguration.MUX_LEAD_MS;
+                    audioMessage.setChunk(audioData, scheduler.getAudioOffset(), scheduler.getAudioChunkLength());
+                    message = audioMessage.toBuffers();
+                }
+
+                //Everyone watches in lockstep, so the producer runs in real time
+                long wait = start + (long) (due * 1e6) - System.nanoTime();
+                if (wait > 0) {
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                }
+
+                synchronized (publishLock) {
+
+                    for (ChannelSubscriber subscriber : subscribers) {
+                        subscriber.offer(message, isFrame);
+                    }
+
+                    if (!isFrame) {
+                        audioPublished += scheduler.getAudioChunkLength();
+                    }
+                }
+            }
+
+        } catch (IOException ex) {
+            Logger.getLogger(PlaybackChannel.class.getName()).log(Level.SEVERE, name, ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+
+            synchronized (channels) {
+                running = false;
+                channels.remove(name, this);
+            }
+            loadShare.close();
+
+            for (ChannelSubscriber subscriber : subscribers) {
+                subscriber.finish();
+            }
+        }
+    }
+
+}
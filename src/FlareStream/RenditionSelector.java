@@ -0,0 +1,93 @@
+package FlareStream;
+
+import FlareMedia.CatalogIndex;
+
+/**
+ * Picks the rendition of a video that a client link can sustain in real
+ * time. A rendition needs its average frame size times the fps. Switching
+ * up requires headroom, switching down happens as soon as the current
+ * rendition uses most of the link, so the choice does not flap. Until the
+ * estimator has a full window the smallest rendition is used.
+ *
+ * @author Team 2
+ */
+public class RenditionSelector {
+
+    private final CatalogIndex index;
+    private final int slot;
+    private final double fps;
+    private final double upSwitch;
+    private final double downSwitch;
+    private int current;
+
+    /**
+     * Constructor
+     *
+     * @param index catalog snapshot of the video
+     * @param slot video slot
+     * @param upSwitch share of the throughput a higher rendition may use
+     * @param downSwitch share of the throughput the current rendition may use
+     */
+    public RenditionSelector(CatalogIndex index, int slot, double upSwitch, double downSwitch) {
+        this.index = index;
+        this.slot = slot;
+        this.fps = index.getFps(slot);
+        this.upSwitch = upSwitch;
+        this.downSwitch = downSwitch;
+        this.current = index.getRenditionCount(slot) - 1;
+    }
+
+    /**
+     * Chooses the rendition for the next frame. Call at frame boundaries
+     * only.
+     *
+     * @param estimator throughput estimate of the client
+     * @return position of the rendition in the ladder
+     */
+    public int select(BandwidthEstimator estimator) {
+
+        if (!estimator.hasEstimate()) {
+            return current;
+        }
+
+        double throughput = estimator.getBytesPerSecond();
+
+        //Step down while the current rendition does not fit
+        while (current < index.getRenditionCount(slot) - 1 && required(current) > throughput * downSwitch) {
+            current++;
+        }
+
+        //Step up while the next larger rendition fits with headroom
+        while (current > 0 && required(current - 1) <= throughput * upSwitch) {
+            current--;
+        }
+
+        return current;
+    }
+
+    /**
+     * Starts from a given rendition instead of the smallest, used when a
+     * playback resumes
+     *
+     * @param rendition position of the rendition in the ladder
+     */
+    public void setCurrent(int rendition) {
+        if (rendition >= 0 && rendition < index.getRenditionCount(slot)) {
+            current = rendition;
+        }
+    }
+
+    /**
+     * Rendition chosen by the last call to select
+     *
+     * @return position of the rendition in the ladder
+     */
+    public int getCurrent() {
+        return current;
+    }
+
+    private double required(int rendition) {
+        return index.getRenditionFrameBytes(slot, rendition) * fps;
+    }
+
+}
@@ -0,0 +1,246 @@
+package FlareStream;
+
+import Core.FlareConfiguration;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Playback state kept under a random token so a client whose connection
+ * dropped can continue where it left off with RESUME instead of starting
+ * over. It holds the video, the request flags, the last frame the client
+ * acknowledged and the rendition last sent.
+ *
+ * A session is attached to the stream playing it. When that playback stops
+ * for any reason the session is kept for the grace period, attaching a new
+ * stream takes it over and stops the old one.
+ *
+ * @author Team 2
+ */
+public class ResumableSession {
+
+    public static final int TOKEN_LENGTH = 16;
+
+    // Token in hex -> session
+    private static final Map<String, ResumableSession> sessions = new ConcurrentHashMap<String, ResumableSession>();
+
+    private static final SecureRandom random = new SecureRandom();
+
+    //Expired sessions are dropped at most once a second
+    private static final long PURGE_INTERVAL_MS = 1000;
+    private static volatile long lastPurge;
+
+    private final byte[] token;
+    private final String name;
+    private final byte flags;
+
+    private LogicalStream owner;
+    private long expiresAt;
+    private int lastSentFrame = -1;
+    private int lastAckedFrame = -1;
+    private int renditionId = -1;
+
+    private ResumableSession(byte[] token, String name, byte flags) {
+        this.token = token;
+        this.name = name;
+        this.flags = flags;
+    }
+
+    /**
+     * Starts a new session
+     *
+     * @param name catalog name of the video
+     * @param flags OPEN_VIDEO request flags
+     * @return the new session, not attached yet
+     */
+    public static ResumableSession create(String name, byte flags) {
+
+        purge();
+
+        byte[] token = new byte[TOKEN_LENGTH];
+        random.nextBytes(token);
+
+        ResumableSession session = new ResumableSession(token, name, flags);
+        session.expiresAt = System.currentTimeMillis() + FlareConfiguration.RESUME_GRACE_MS;
+        sessions.put(toKey(token, 0), session);
+        return session;
+    }
+
+    /**
+     * Looks a session up by token
+     *
+     * @param data request data holding the token
+     * @param offset position of the token
+     * @return the session, null if unknown or expired
+     */
+    public static ResumableSession find(byte[] data, int offset) {
+
+        purge();
+
+        if (data.length < offset + TOKEN_LENGTH) {
+            return null;
+        }
+
+        ResumableSession session = sessions.get(toKey(data, offset));
+        return session == null || session.isExpired(System.currentTimeMillis()) ? null : session;
+    }
+
+    /**
+     * Records that the client has shown or buffered a frame. An ack past
+     * the last frame sent is taken as that frame, so resume never skips
+     * frames the client cannot have.
+     *
+     * @param data request data holding the token
+     * @param offset position of the token, the frame index follows it
+     */
+    public static void acknowledge(byte[] data, int offset) {
+
+        ResumableSession session = find(data, offset);
+        if (session == null || data.length < offset + TOKEN_LENGTH + 4) {
+            return;
+        }
+
+        int position = offset + TOKEN_LENGTH;
+        int frame = (data[position] & 0xff) << 24 | (data[position + 1] & 0xff) << 16
+                | (data[position + 2] & 0xff) << 8 | (data[position + 3] & 0xff);
+
+        synchronized (session) {
+            session.lastAckedFrame = Math.max(session.lastAckedFrame, Math.min(frame, session.lastSentFrame));
+        }
+    }
+
+    /**
+     * Number of sessions held, attached or within their grace period
+     *
+     * @return session count
+     */
+    public static int getCount() {
+        purge();
+        return sessions.size();
+    }
+
+    /**
+     * Token identifying the session
+     *
+     * @return a copy of the token
+     */
+    public byte[] getToken() {
+        return token.clone();
+    }
+
+    /**
+     * Catalog name of the video
+     *
+     * @return video name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Flags of the original OPEN_VIDEO request
+     *
+     * @return request flags
+     */
+    public byte getFlags() {
+        return flags;
+    }
+
+    /**
+     * Rendition id of the last frame sent
+     *
+     * @return rendition id, -1 before the first frame
+     */
+    public synchronized int getRenditionId() {
+        return renditionId;
+    }
+
+    /**
+     * Frame playback continues from
+     *
+     * @param requested frame the client asked for, negative to continue
+     * after the last acknowledged frame
+     * @return first frame to send
+     */
+    public synchronized int getResumeFrame(int requested) {
+        return requested >= 0 ? requested : lastAckedFrame + 1;
+    }
+
+    /**
+     * Makes a stream the one playing this session, any earlier stream
+     * stops at its next frame
+     *
+     * @param stream stream to play on
+     */
+    public synchronized void attach(LogicalStream stream) {
+        owner = stream;
+        expiresAt = Long.MAX_VALUE;
+    }
+
+    /**
+     * Whether a stream still plays this session
+     *
+     * @param stream stream to check
+     * @return false once another stream took the session over
+     */
+    public synchronized boolean isAttached(LogicalStream stream) {
+        return owner == stream;
+    }
+
+    /**
+     * The playback of a stream stopped, starts the grace period unless
+     * another stream took over
+     *
+     * @param stream stream that stopped
+     */
+    public synchronized void detach(LogicalStream stream) {
+
+        if (owner == stream) {
+            owner = null;
+            expiresAt = System.currentTimeMillis() + FlareConfiguration.RESUME_GRACE_MS;
+        }
+    }
+
+    /**
+     * Records a frame that went out
+     *
+     * @param frame frame index
+     * @param renditionId rendition it was sent in
+     */
+    public synchronized void sent(int frame, int renditionId) {
+        this.lastSentFrame = frame;
+        this.renditionId = renditionId;
+    }
+
+    private synchronized boolean isExpired(long now) {
+        return now > expiresAt;
+    }
+
+    private static void purge() {
+
+        long now = System.currentTimeMillis();
+        if (now - lastPurge < PURGE_INTERVAL_MS) {
+            return;
+        }
+        lastPurge = now;
+
+        Iterator<ResumableSession> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isExpired(now)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static String toKey(byte[] data, int offset) {
+
+        StringBuilder builder = new StringBuilder(2 * TOKEN_LENGTH);
+        for (int n = 0; n < TOKEN_LENGTH; n++) {
+            builder.append(Character.forDigit((data[offset + n] >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(data[offset + n] & 0xf, 16));
+        }
+        return builder.toString();
+    }
+
+}
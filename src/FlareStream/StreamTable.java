@@ -0,0 +1,273 @@
+package FlareStream;
+
+import Core.FlareClient;
+import Core.FlareConfiguration;
+import FlareMessage.EndStreamMessage;
+import FlareMetrics.ServerMetrics;
+import Utility.AsyncLog;
+import Utility.Stage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Logical streams open on one connection. Requests with a stream id run on
+ * their own thread, so a client can play a video while it loads catalog
+ * pages and scrub strips over the same WebSocket, and cancel any of them.
+ *
+ * All streams share the socket through a send gate. When several streams
+ * wait to send, the one with the lowest priority value goes first, streams
+ * of equal priority take turns in arrival order. A message is never split,
+ * so a large frame delays an urgent reply by at most one message.
+ *
+ * @author Team 2
+ */
+public class StreamTable {
+
+    // Runs the requests of all streams of all connections
+    private static final Stage requests = new Stage("request", FlareConfiguration.STAGE_REQUEST_THREADS,
+            FlareConfiguration.STAGE_REQUEST_QUEUE);
+
+    private final FlareClient client;
+    private final LogicalStream connectionStream;
+    private final Map<Integer, LogicalStream> streams = new HashMap<Integer, LogicalStream>();
+    private final CreditWindow.Statistics creditStatistics = new CreditWindow.Statistics();
+
+    // Size of the stream map, written under its lock and read without it
+    private volatile int openStreams;
+
+    // Send gate
+    private final PriorityQueue<Waiter> waiting = new PriorityQueue<Waiter>();
+    private boolean sending;
+    private long arrivals;
+
+    /**
+     * Constructor
+     *
+     * @param client the connection
+     */
+    public StreamTable(FlareClient client) {
+        this.client = client;
+        this.connectionStream = new LogicalStream(this, 0, FlareConfiguration.DEFAULT_STREAM_PRIORITY);
+    }
+
+    /**
+     * Stream 0, for requests sent without a stream id
+     *
+     * @return the connection stream
+     */
+    public LogicalStream getConnectionStream() {
+        return connectionStream;
+    }
+
+    /**
+     * Opens a stream
+     *
+     * @param id stream id chosen by the client, not 0
+     * @param priority send priority, 0 is the most urgent
+     * @return the new stream, null if the id is in use or too many streams
+     * are open
+     */
+    public LogicalStream open(int id, int priority) {
+
+        synchronized (streams) {
+
+            if (id == 0 || streams.containsKey(id) || streams.size() >= FlareConfiguration.MAX_STREAMS) {
+                return null;
+            }
+
+            LogicalStream stream = new LogicalStream(this, id, priority);
+            streams.put(id, stream);
+            openStreams = streams.size();
+            return stream;
+        }
+    }
+
+    /**
+     * Tells the client a stream could not be opened
+     *
+     * @param id stream id of the refused request
+     */
+    public void refuse(int id) {
+        new LogicalStream(this, id, 0).end(EndStreamMessage.REFUSED);
+    }
+
+    /**
+     * Cancels a stream, unknown ids are ignored since the stream may just
+     * have ended
+     *
+     * @param id stream id
+     */
+    public void cancel(int id) {
+
+        LogicalStream stream;
+        synchronized (streams) {
+            stream = streams.get(id);
+        }
+
+        if (stream != null) {
+            stream.cancel();
+        }
+    }
+
+    /**
+     * Cancels every stream, the connection is closing
+     */
+    public void cancelAll() {
+
+        List<LogicalStream> open;
+        synchronized (streams) {
+            open = new ArrayList<LogicalStream>(streams.values());
+        }
+
+        for (LogicalStream stream : open) {
+            stream.cancel();
+        }
+        connectionStream.cancel();
+    }
+
+    /**
+     * Adds credit to a stream, unknown ids are ignored since the stream may
+     * just have ended
+     *
+     * @param id stream id
+     * @param frames frames granted
+     * @param bytes bytes granted
+     */
+    public void grant(int id, int frames, int bytes) {
+
+        LogicalStream stream;
+        synchronized (streams) {
+            stream = streams.get(id);
+        }
+
+        if (stream != null) {
+            stream.getCredit().grant(frames, bytes);
+        }
+    }
+
+    /**
+     * Credit and stall counters of every stream of this connection
+     *
+     * @return session statistics
+     */
+    public CreditWindow.Statistics getCreditStatistics() {
+        return creditStatistics;
+    }
+
+    /**
+     * Changes the priority of a stream
+     *
+     * @param id stream id, 0 for the connection stream
+     * @param priority new priority, 0 is the most urgent
+     */
+    public void prioritize(int id, int priority) {
+
+        LogicalStream stream;
+        synchronized (streams) {
+            stream = id == 0 ? connectionStream : streams.get(id);
+        }
+
+        if (stream != null) {
+            stream.setPriority(priority);
+        }
+    }
+
+    /**
+     * Number of open streams, not counting the connection stream
+     *
+     * @return open stream count
+     */
+    public int size() {
+        return openStreams;
+    }
+
+    /**
+     * Runs a request of a stream on the shared request threads. When the
+     * request stage is saturated the stream is refused instead.
+     *
+     * @param stream stream the request was sent on
+     * @param request request to run
+     */
+    public void execute(LogicalStream stream, Runnable request) {
+
+        try {
+            requests.execute(request);
+        } catch (RejectedExecutionException ex) {
+            AsyncLog.warn("Request stage saturated, refusing stream {}", stream.getId());
+            stream.end(EndStreamMessage.REFUSED);
+        }
+    }
+
+    FlareClient getClient() {
+        return client;
+    }
+
+    void remove(LogicalStream stream) {
+        synchronized (streams) {
+            streams.remove(stream.getId(), stream);
+            openStreams = streams.size();
+        }
+    }
+
+    /**
+     * Waits until the stream may send, see class comment
+     */
+    synchronized void acquire(LogicalStream stream) throws IOException {
+
+        if (!sending && waiting.isEmpty()) {
+            sending = true;
+            return;
+        }
+
+        Waiter waiter = new Waiter(stream.getPriority(), arrivals++);
+        waiting.add(waiter);
+        ServerMetrics.sendGateWaiting(1);
+
+        try {
+            while (sending || waiting.peek() != waiter) {
+                wait();
+            }
+        } catch (InterruptedException ex) {
+            waiting.remove(waiter);
+            notifyAll();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to send");
+        } finally {
+            ServerMetrics.sendGateWaiting(-1);
+        }
+
+        waiting.poll();
+        sending = true;
+    }
+
+    synchronized void release() {
+        sending = false;
+        notifyAll();
+    }
+
+    private static final class Waiter implements Comparable<Waiter> {
+
+        final int priority;
+        final long arrival;
+
+        Waiter(int priority, long arrival) {
+            this.priority = priority;
+            this.arrival = arrival;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(arrival, other.arrival);
+        }
+    }
+
+}
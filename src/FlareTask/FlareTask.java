@@ -3,7 +3,11 @@ package FlareTask;
 
 
 import Core.FlareClient;
+import FlareMessage.FlareMessage;
+import FlareMetrics.RequestTrace;
+import FlareStream.LogicalStream;
 import WebSocket.Message.WebSocketMessage;
+import java.io.IOException;
 
 /**
  * Abstract class for handlers for each op code
@@ -17,6 +21,10 @@ public abstract class FlareTask {
     
     protected FlareClient flareClient;
     
+    protected LogicalStream stream;
+    
+    protected RequestTrace trace = new RequestTrace(System.nanoTime());
+    
     /**
      * Sets the message to process
      * @param message process this message
@@ -38,6 +46,91 @@ public abstract class FlareTask {
         
     }
     
+    /**
+     * Stream the request arrived on, replies go out on it
+     * @param stream logical stream of the request
+     */
+    public void setStream(LogicalStream stream){
+        
+        this.stream = stream;
+        
+    }
+    
+    /**
+     * Trace the task marks its stages in
+     * @param trace trace started when the request was read
+     */
+    public void setTrace(RequestTrace trace){
+        
+        this.trace = trace;
+        
+    }
+    
+    /**
+     * Stages this request went through so far
+     * @return trace of the request
+     */
+    public RequestTrace getTrace(){
+        
+        return trace;
+        
+    }
+    
+    /**
+     * Sends a reply on the stream of the request
+     * @param message reply to send
+     * @throws IOException if cannot write to output
+     */
+    protected void send(FlareMessage message) throws IOException{
+        
+        stream.send(message);
+        
+    }
+    
+    /**
+     * Whether the stream stays open after process returns, for requests
+     * that keep sending from other threads. Such tasks end the stream
+     * themselves.
+     * @return true to keep the stream open
+     */
+    public boolean keepsStreamOpen(){
+        
+        return false;
+        
+    }
+    
+    /**
+     * Reads a big endian int out of the request data
+     * @param data request data
+     * @param offset position of the int
+     * @return the int value
+     */
+    protected static int dataToInt(byte[] data, int offset){
+        
+        return (data[offset] & 0xff) << 24
+                | (data[offset + 1] & 0xff) << 16
+                | (data[offset + 2] & 0xff) << 8
+                | (data[offset + 3] & 0xff);
+        
+    }
+    
+    /**
+     * Reads a path that is prefixed with its length in one byte
+     * @param data request data
+     * @param offset position of the length byte
+     * @return the path
+     */
+    protected static String dataToPath(byte[] data, int offset){
+        
+        int length = data[offset] & 0xff;
+        StringBuilder pathStringBuilder = new StringBuilder(length);
+        for (int c = 0; c < length; c++) {
+            pathStringBuilder.append((char) (data[offset + 1 + c] & 0xff));
+        }
+        return pathStringBuilder.toString();
+        
+    }
+    
     /**
      * Abstract method to process the flare message
      */
@@ -0,0 +1,79 @@
+package FlareTask;
+
+import FlareMedia.CatalogIndex;
+import FlareMedia.VideoCatalog;
+import FlareMessage.OpenVideoMessage;
+import FlareStream.PlaybackChannel;
+import WebSocket.Message.WebSocketBinaryMessage;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Joins the watch party of a video. The client gets the same metadata
+ * response as OPEN_VIDEO and is then fed from the shared playback channel
+ * of the video instead of running its own stream.
+ *
+ * @author Team 2
+ */
+public class JoinChannelTask extends FlareTask {
+
+    private boolean joined;
+
+    /**
+     * Main method that processes the data and handles the task.
+     */
+    @Override
+    public void process() {
+
+        byte[] data = ((WebSocketBinaryMessage) message).getData();
+        String requestID = dataToPath(data, 5);
+
+        //Optional flags byte after the path, as for OPEN_VIDEO
+        int flagsOffset = 6 + (data[5] & 0xff);
+        byte flags = data.length > flagsOffset ? data[flagsOffset] : 0;
+        if ((flags & OpenVideoTask.FLAG_CREDIT) != 0) {
+            stream.enableFlowControl();
+        }
+
+        CatalogIndex index = VideoCatalog.getInstance().getIndex();
+        int slot = index.find(requestID);
+
+        OpenVideoMessage responseMessage = new OpenVideoMessage();
+
+        if (slot >= 0) {
+            responseMessage.setVideoAvailability(true);
+            responseMessage.setWidth(index.getWidth(slot));
+            responseMessage.setHeight(index.getHeight(slot));
+            responseMessage.setFps(index.getFps(slot));
+            responseMessage.setDuration(index.getDuration(slot));
+            responseMessage.setFrameCount(index.getFrameCount(slot));
+        }
+
+        try {
+
+            send(responseMessage);
+
+            if (slot >= 0) {
+                PlaybackChannel.join(index, slot, stream);
+                joined = true;
+            }
+
+        } catch (IOException ex) {
+            Logger.getLogger(JoinChannelTask.class.getName()).log(Level.SEVERE, null, ex);
+        }
+
+    }
+
+    /**
+     * The channel keeps sending after process returns and ends the stream
+     * when the video is over or the client cancels
+     *
+     * @return true once joined
+     */
+    @Override
+    public boolean keepsStreamOpen() {
+        return joined;
+    }
+
+}
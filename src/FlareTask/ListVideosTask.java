@@ -0,0 +1,57 @@
+package FlareTask;
+
+import Core.FlareConfiguration;
+import FlareMedia.CatalogIndex;
+import FlareMedia.VideoCatalog;
+import FlareMessage.ListVideosMessage;
+import Utility.AsyncLog;
+import WebSocket.Message.WebSocketBinaryMessage;
+import java.io.IOException;
+
+/**
+ * Returns one page of the video catalog. The request carries the page
+ * offset and the page size after the usual op code and data length.
+ *
+ * @author Team 2
+ */
+public class ListVideosTask extends FlareTask {
+
+    /**
+     * Main method that processes the data and handles the task.
+     */
+    @Override
+    public void process() {
+
+        byte[] data = ((WebSocketBinaryMessage) message).getData();
+
+        int offset = 0;
+        int limit = FlareConfiguration.CATALOG_PAGE_SIZE;
+
+        if (data.length >= 13) {
+            offset = dataToInt(data, 5);
+            limit = dataToInt(data, 9);
+        }
+
+        CatalogIndex index = VideoCatalog.getInstance().getIndex();
+
+        offset = Math.max(0, Math.min(offset, index.size()));
+        limit = Math.max(0, Math.min(limit, FlareConfiguration.CATALOG_PAGE_SIZE));
+        int count = Math.min(limit, index.size() - offset);
+
+        ListVideosMessage responseMessage = new ListVideosMessage();
+        responseMessage.setPage(index, offset, count);
+        trace.mark("page");
+
+        try {
+
+            send(responseMessage);
+            trace.mark("sent");
+
+        } catch (IOException ex) {
+
+            AsyncLog.warn("Cannot send list: {}", ex);
+        }
+
+    }
+
+}
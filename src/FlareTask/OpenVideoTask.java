@@ -1,20 +1,32 @@
 package FlareTask;
 
-import FlareMessage.AudioMessage;
+import Core.FlareConfiguration;
+import FlareMessage.AudioChunkMessage;
+import FlareMessage.FrameDeltaMessage;
+import FlareMessage.FlareMessage;
 import FlareMessage.FrameMessage;
+import FlareMedia.CatalogIndex;
+import FlareMedia.ContentHash;
+import FlareMedia.FrameHashes;
+import FlareMedia.LoadScheduler;
+import FlareMedia.MediaStore;
+import FlareMedia.VideoCatalog;
 import FlareMessage.OpenVideoMessage;
+import FlareMessage.RepeatFrameMessage;
+import FlareMessage.SessionMessage;
+import FlareMessage.TimingMessage;
+import FlareMetrics.FrameLoadEvent;
+import FlareStream.MuxScheduler;
+import FlareStream.RenditionSelector;
+import FlareStream.ResumableSession;
+import Utility.AsyncLog;
 import WebSocket.Message.WebSocketBinaryMessage;
-import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.imageio.ImageIO;
 
 
 /*
@@ -27,10 +39,40 @@ import javax.imageio.ImageIO;
 */
 public class OpenVideoTask extends FlareTask {
 
+    /**
+     * Request flag: the client can apply FRAME_DELTA messages
+     */
+    public static final byte FLAG_DELTA = 1;
+
+    /**
+     * Request flag: hold media back until the client grants CREDIT. Only
+     * honoured on requests with a stream id.
+     */
+    public static final byte FLAG_CREDIT = 2;
+
+    /**
+     * Request flag: keep the playback resumable, the server replies with a
+     * SESSION token. Only honoured on requests with a stream id, playback
+     * on stream 0 holds the connection reader so its acks would never be
+     * read.
+     */
+    public static final byte FLAG_RESUMABLE = 4;
+
+    /**
+     * Request flag: report the stage timing of the open in a TIMING message
+     * after the first frame
+     */
+    public static final byte FLAG_TIMING = 8;
+
     String testFile = "sample.mp4";
     String requestID;
-    List<String> metaData;
+    String videoPath;
+    CatalogIndex catalogIndex;
+    int slot = -1;
     int frameCount;
+    double fps;
+    double duration;
+    boolean deltaMode;
 
     private byte[] data;
 
@@ -41,17 +83,16 @@ public class OpenVideoTask extends FlareTask {
     public void process() {
         data = ((WebSocketBinaryMessage) message).getData();
 
-        OpenVideoMessage responseMessage = new OpenVideoMessage();
         //Process link to make sure valid
 
         dataLength = data[4];
         dataLength = dataLength | data[3] << 8;
         dataLength = dataLength | data[2] << 16;
         dataLength = dataLength | data[1] << 32;
-        System.out.println("datalength is + " + dataLength);
+        AsyncLog.debug("datalength is {}", dataLength);
 
         byte requestIDLength = data[5];
-        System.out.println("request ID length is " + requestIDLength);
+        AsyncLog.debug("request ID length is {}", requestIDLength);
 
         //Now Read the path
         StringBuilder pathStringBuilder = new StringBuilder(requestIDLength);
@@ -61,26 +102,45 @@ public class OpenVideoTask extends FlareTask {
         }
 
         requestID = new String(pathStringBuilder);
-        System.out.println(requestID);
+        AsyncLog.debug("open {}", requestID);
+
+        //Optional flags byte after the path
+        int flagsOffset = 6 + (requestIDLength & 0xff);
+        byte flags = data.length > flagsOffset ? data[flagsOffset] : 0;
+        trace.mark("parsed");
+
+        play(flags, null, 0);
+
+    }
+
+    /**
+     * Answers with the metadata of requestID and streams it
+     *
+     * @param flags request flags
+     * @param session playback being resumed, null for a new one
+     * @param startFrame first frame to send
+     */
+    protected void play(byte flags, ResumableSession session, int startFrame) {
+
+        OpenVideoMessage responseMessage = new OpenVideoMessage();
+
+        //Look the video up in the catalog, metadata was parsed at scan time
+        catalogIndex = VideoCatalog.getInstance().getIndex();
+        slot = catalogIndex.find(requestID);
+        trace.mark("lookup");
 
-        //Check if file exists
         if (videoAvailable()) {
 
-            
-            try {
-                metaData = Files.readAllLines(Paths.get(requestID + "/meta.txt"), Charset.forName("UTF-8"));
-            } catch (IOException ex) {
-                Logger.getLogger(OpenVideoTask.class.getName()).log(Level.SEVERE, null, ex);
+            videoPath = catalogIndex.getPath(slot);
+            deltaMode = (flags & FLAG_DELTA) != 0 && catalogIndex.getKeyframeInterval(slot) > 0;
+            if ((flags & FLAG_CREDIT) != 0) {
+                stream.enableFlowControl();
             }
-
-            frameCount = Integer.parseInt(metaData.get(0));
-            int width = Integer.parseInt(metaData.get(1));
-            int height = Integer.parseInt(metaData.get(2));
-            double fps = Double.parseDouble(metaData.get(3));
-            double duration = Double.parseDouble(metaData.get(4));
-            System.out.println(duration);
-        
-                
+            frameCount = catalogIndex.getFrameCount(slot);
+            int width = catalogIndex.getWidth(slot);
+            int height = catalogIndex.getHeight(slot);
+            fps = catalogIndex.getFps(slot);
+            duration = catalogIndex.getDuration(slot);
 
             //If exists return meta data and start a video manager
             responseMessage.setVideoAvailability(true);
@@ -89,9 +149,15 @@ public class OpenVideoTask extends FlareTask {
             responseMessage.setFps(fps);
             responseMessage.setDuration(duration);
             responseMessage.setFrameCount(frameCount);
-            
-            
-            
+
+            if (session == null && (flags & FLAG_RESUMABLE) != 0 && stream.getId() != 0) {
+                session = ResumableSession.create(catalogIndex.getName(slot), flags);
+            }
+            if (session != null) {
+                session.attach(stream);
+            }
+            trace.mark("metadata");
+
 
         } else {
 
@@ -104,12 +170,19 @@ public class OpenVideoTask extends FlareTask {
         
         try {
 
-            flareClient.sendBinaryData(responseMessage.toBinary());
-            System.out.println("So far");
+            send(responseMessage);
+            AsyncLog.debug("metadata sent for {}", requestID);
+
+            if (videoAvailable() && session != null) {
+                SessionMessage sessionMessage = new SessionMessage();
+                sessionMessage.setToken(session.getToken());
+                send(sessionMessage);
+            }
+            trace.mark("responseSent");
             
         } catch (IOException ex) {
 
-            System.out.println(ex.toString());
+            AsyncLog.warn("Cannot answer open: {}", ex);
         }
         
         
@@ -118,57 +191,164 @@ public class OpenVideoTask extends FlareTask {
              */
         if (videoAvailable()) {
 
-            //If exists return meta data and start a video manager
-            
-
-            // ArrayList<BufferedImage> frameList = new ArrayList<BufferedImage>();
-            
-            //BufferedImage img = null;
-            //
-            
-          
-            
             try {
-                // initializes video parser with the file to be parsed
-   
-
-                FrameMessage frameMessage = new FrameMessage(); 
-   
-                
-                
-                //Frame currentFrame = null;
-                BufferedImage img = null;
-                //NOW GET AUDIO
-                AudioMessage audioMessage = new AudioMessage();
-                audioMessage.setAudioPath(requestID +"/audio.m4a");
-                flareClient.sendBinaryData(audioMessage.toBinary());
-                
-                // parse one frame at the time, and send its data to the client
-                for(int n = 0; n < frameCount; n++){
-                    //currentFrame = videoParser.getNextFrame(n); // current frame
-                    //img = currentFrame.getBufferedImage(); // current buff image
-                    img = ImageIO.read(new File(requestID + "/frame" + n + ".jpg"));
-                    frameMessage.setFrame(img);
-                    frameMessage.setIndex(n);
-                    // sent data
-                    flareClient.sendBinaryData(frameMessage.toBinary());
-                    
-                    
+
+                FrameMessage frameMessage = new FrameMessage();
+                AudioChunkMessage audioMessage = new AudioChunkMessage();
+                RenditionSelector renditionSelector = new RenditionSelector(catalogIndex, slot,
+                        FlareConfiguration.ABR_UP_SWITCH, FlareConfiguration.ABR_DOWN_SWITCH);
+                FrameDeltaMessage deltaMessage = new FrameDeltaMessage();
+                RepeatFrameMessage repeatMessage = new RepeatFrameMessage();
+                FrameHashes frameHashes = FrameHashes.of(catalogIndex, slot);
+                trace.mark("hashes");
+                ContentHash shownHash = null;
+                int shownIndex = -1;
+                int shownRenditionId = -1;
+                int keyframeInterval = catalogIndex.getKeyframeInterval(slot);
+                int sourceRendition = catalogIndex.findRendition(slot, 0);
+
+                //Audio is sent in chunks interleaved with the frames. Reads share
+                //the loader threads fairly with the other sessions, playback
+                //cannot start without the audio and the first frame
+                LoadScheduler.Share loadShare = flareClient.getLoadShare();
+                byte[] audioData = MediaStore.loadAudio(catalogIndex, slot, loadShare, true);
+                trace.mark("audio");
+
+                MuxScheduler scheduler = new MuxScheduler(frameCount, fps, duration, audioData.length,
+                        FlareConfiguration.MUX_AUDIO_CHUNK_BYTES, FlareConfiguration.MUX_LEAD_MS, FlareConfiguration.MUX_LAG_MS);
+
+                //A resumed playback continues in its last rendition. The client
+                //may not have the frame before startFrame, so no deltas until a
+                //full frame went out
+                scheduler.skipTo(startFrame);
+                double clockStartMs = scheduler.framePresentationTime(startFrame);
+                long clockStart = System.nanoTime();
+                boolean resyncing = startFrame > 0;
+                if (session != null && session.getRenditionId() >= 0) {
+                    renditionSelector.setCurrent(catalogIndex.findRendition(slot, session.getRenditionId()));
                 }
-                
-                
 
-                
-            } catch (IOException ex ) {
+                //Stops between two messages when the client cancels the stream
+                //or the session was resumed elsewhere
+                while (scheduler.hasNext() && !stream.isCancelled() && (session == null || session.isAttached(stream))) {
+
+                    int unit = scheduler.next();
+
+                    //Held back to the media rate, a stalled client gets no burst afterwards
+                    if (FlareConfiguration.MUX_PACE_MS >= 0) {
+                        long wait = clockStart + (long) ((scheduler.getReleaseTime(FlareConfiguration.MUX_PACE_MS) - clockStartMs) * 1e6)
+                                - System.nanoTime();
+                        if (wait > 0) {
+                            pause(wait);
+                        } else if (-wait > FlareConfiguration.MUX_PACE_MS * 1000000L) {
+                            clockStart -= wait;
+                        }
+                    }
+
+                    if (unit == MuxScheduler.AUDIO) {
+
+                        audioMessage.setChunk(audioData, scheduler.getAudioOffset(), scheduler.getAudioChunkLength());
+                        if (!sendMedia(audioMessage, 0)) {
+                            break;
+                        }
+
+                    } else {
+
+                        int n = scheduler.getFrameIndex();
+
+                        //Byte identical to the frame on screen, nothing to load
+                        ContentHash hash = frameHashes.get(n);
+                        if (hash != null && hash.equals(shownHash) && !resyncing) {
+
+                            repeatMessage.setIndex(n);
+                            repeatMessage.setSourceIndex(shownIndex);
+                            if (!sendMedia(repeatMessage, 1)) {
+                                break;
+                            }
+
+                            //A resume continues after the repeats, not before them
+                            if (session != null) {
+                                session.sent(n, shownRenditionId);
+                            }
+                            continue;
+                        }
+
+                        byte[] delta = null;
+                        if (deltaMode && n % keyframeInterval != 0 && !resyncing) {
+                            delta = MediaStore.loadDelta(catalogIndex, slot, n, loadShare);
+                        }
+
+                        if (delta != null) {
+
+                            deltaMessage.setIndex(n);
+                            deltaMessage.setDelta(delta);
+                            if (!sendMedia(deltaMessage, 1)) {
+                                break;
+                            }
+                            shownHash = hash;
+                            shownIndex = n;
+                            shownRenditionId = catalogIndex.getRenditionId(slot, sourceRendition);
+
+                            if (session != null) {
+                                session.sent(n, shownRenditionId);
+                            }
+                            continue;
+                        }
+
+                        //Renditions only switch here, between two frames. Deltas are
+                        //built from the source frames so delta mode stays on the source
+                        int rendition = deltaMode
+                                ? sourceRendition
+                                : renditionSelector.select(flareClient.getBandwidthEstimator());
+
+                        FrameLoadEvent loadEvent = new FrameLoadEvent();
+                        loadEvent.begin();
+                        byte[] frameData = MediaStore.loadFrame(catalogIndex, slot, rendition, n, loadShare, shownIndex < 0);
+                        loadEvent.end();
+                        if (loadEvent.shouldCommit()) {
+                            loadEvent.session = flareClient.getId();
+                            loadEvent.path = Paths.get(catalogIndex.getRenditionPath(slot, rendition), "frame" + n + ".jpg").toString();
+                            loadEvent.frame = n;
+                            loadEvent.bytes = frameData.length;
+                            loadEvent.commit();
+                        }
+
+                        frameMessage.setFrameData(frameData);
+                        frameMessage.setIndex(n);
+                        frameMessage.setRendition(catalogIndex.getRenditionId(slot, rendition));
+
+                        //Nothing was written once the stream is closed
+                        boolean sent = shownIndex < 0
+                                ? sendFirstFrame(frameMessage, flags)
+                                : sendMedia(frameMessage, 1);
+                        if (!sent) {
+                            break;
+                        }
+                        //Taken by the read if the frame had no hash yet
+                        shownHash = hash != null ? hash : frameHashes.get(n);
+                        shownIndex = n;
+                        shownRenditionId = catalogIndex.getRenditionId(slot, rendition);
+                        resyncing = false;
+
+                        if (session != null) {
+                            session.sent(n, shownRenditionId);
+                        }
+
+                    }
+                }
+
+            } catch (IOException ex) {
                 Logger.getLogger(OpenVideoTask.class.getName()).log(Level.SEVERE, null, ex);
-                System.out.println(ex.getMessage());
+                AsyncLog.warn("Playback of {} stopped", requestID);
+            } finally {
+
+                //Kept for the grace period in case the client comes back
+                if (session != null) {
+                    session.detach(stream);
+                }
             }
- 
-            
 
         }
-        
-        
 
     }
 
@@ -178,10 +358,67 @@ public class OpenVideoTask extends FlareTask {
      */
     private boolean videoAvailable() {
 
-        File fileToOpen = new File(requestID);
+        return slot >= 0;
 
-        return fileToOpen.isDirectory();
+    }
 
+    /**
+     * Sends the first frame of the playback, marking the wait for credit
+     * apart from the write, then the stage timing if the client asked
+     *
+     * @param message frame message
+     * @param flags request flags
+     * @return false if the stream was closed and nothing was sent
+     * @throws IOException if cannot write to output
+     */
+    private boolean sendFirstFrame(FrameMessage message, byte flags) throws IOException {
+
+        trace.mark("firstFrameLoad");
+        if (!stream.awaitCredit(1, message.getLength())) {
+            return false;
+        }
+        trace.mark("firstFrameCredit");
+        send(message);
+        trace.mark("firstFrameSent");
+
+        if ((flags & FLAG_TIMING) != 0) {
+            TimingMessage timing = new TimingMessage();
+            timing.setTrace(trace);
+            send(timing);
+        }
+        return true;
+    }
+
+    /**
+     * Sleeps until the next unit is due
+     *
+     * @param nanos time to wait
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    private static void pause(long nanos) throws InterruptedIOException {
+        try {
+            Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted pacing playback");
+        }
+    }
+
+    /**
+     * Sends audio or a frame once the client granted credit for it
+     *
+     * @param message media message
+     * @param frames 1 for a frame, 0 for audio
+     * @return false if the stream was closed and nothing was sent
+     * @throws IOException if cannot write to output
+     */
+    private boolean sendMedia(FlareMessage message, int frames) throws IOException {
+
+        if (!stream.awaitCredit(frames, message.getLength())) {
+            return false;
+        }
+        send(message);
+        return true;
     }
 
 }
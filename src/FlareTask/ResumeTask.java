@@ -0,0 +1,46 @@
+package FlareTask;
+
+import FlareMessage.OpenVideoMessage;
+import FlareStream.ResumableSession;
+import Utility.AsyncLog;
+import WebSocket.Message.WebSocketBinaryMessage;
+import java.io.IOException;
+
+/**
+ * Continues a resumable playback after a reconnect. The request carries the
+ * session token and the frame to continue from, -1 for the frame after the
+ * last one acknowledged. The reply is the same as for OPEN_VIDEO followed by
+ * the token again, then streaming continues in the rendition last sent. An
+ * unknown or expired token gets the "not available" reply, the client then
+ * opens the video again.
+ *
+ * @author Team 2
+ */
+public class ResumeTask extends OpenVideoTask {
+
+    /**
+     * Main method that processes the data and handles the task.
+     */
+    @Override
+    public void process() {
+
+        byte[] data = ((WebSocketBinaryMessage) message).getData();
+        ResumableSession session = ResumableSession.find(data, 5);
+
+        //Resumed playback needs a stream of its own, see FLAG_RESUMABLE
+        if (session == null || data.length < 5 + ResumableSession.TOKEN_LENGTH + 4 || stream.getId() == 0) {
+
+            try {
+                send(new OpenVideoMessage());
+            } catch (IOException ex) {
+                AsyncLog.warn("Cannot refuse resume: {}", ex);
+            }
+            return;
+        }
+
+        requestID = session.getName();
+        play(session.getFlags(), session, session.getResumeFrame(dataToInt(data, 5 + ResumableSession.TOKEN_LENGTH)));
+
+    }
+
+}
@@ -0,0 +1,58 @@
+package FlareTask;
+
+import FlareMedia.CatalogIndex;
+import FlareMedia.MediaStore;
+import FlareMedia.VideoCatalog;
+import FlareMessage.ThumbnailsMessage;
+import Utility.AsyncLog;
+import WebSocket.Message.WebSocketBinaryMessage;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends the scrub strip of a video so the client can preview scrubbing
+ * without loading full frames. The request carries the video path the same
+ * way as OPEN_VIDEO.
+ *
+ * @author Team 2
+ */
+public class ThumbnailsTask extends FlareTask {
+
+    /**
+     * Main method that processes the data and handles the task.
+     */
+    @Override
+    public void process() {
+
+        byte[] data = ((WebSocketBinaryMessage) message).getData();
+        String requestID = dataToPath(data, 5);
+
+        CatalogIndex index = VideoCatalog.getInstance().getIndex();
+        int slot = index.find(requestID);
+        trace.mark("lookup");
+
+        ThumbnailsMessage responseMessage = new ThumbnailsMessage();
+
+        if (slot >= 0) {
+            try {
+                responseMessage.setAtlas(MediaStore.loadThumbnails(index, slot));
+            } catch (IOException | RuntimeException ex) {
+                Logger.getLogger(ThumbnailsTask.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            trace.mark("atlas");
+        }
+
+        try {
+
+            send(responseMessage);
+            trace.mark("sent");
+
+        } catch (IOException ex) {
+
+            AsyncLog.warn("Cannot send thumbnails: {}", ex);
+        }
+
+    }
+
+}
@@ -0,0 +1,396 @@
+package Utility;
+
+import Core.FlareConfiguration;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Leveled logging for the request path. A call below the configured level
+ * is one static read and returns. Otherwise the message template and its
+ * arguments go into a slot of a preallocated ring, and a single background
+ * thread formats and prints them, so client threads never wait on each
+ * other or on the console.
+ *
+ * Templates use {} for each argument. Arguments are formatted later on the
+ * log thread, pass values that do not change afterwards. Primitive
+ * overloads avoid boxing at the call site.
+ *
+ * Debug and info messages beyond flare.log.rate per second are dropped, as
+ * are all messages while the ring is full. Drops are counted and reported
+ * in the log.
+ *
+ * @author Team 2
+ */
+public final class AsyncLog {
+
+    /**
+     * Severity of a message, the lowest is the chattiest
+     */
+    public enum Level {
+        TRACE, DEBUG, INFO, WARN, ERROR, OFF
+    }
+
+    private static final int threshold = parseLevel(FlareConfiguration.LOG_LEVEL).ordinal();
+    private static final int RATE_LIMITED = Level.INFO.ordinal();
+
+    private static final Entry[] ring = newRing(FlareConfiguration.LOG_BUFFER);
+    private static final int mask = ring.length - 1;
+
+    // Next sequence to claim, and per slot the sequence published in it
+    private static final AtomicLong head = new AtomicLong();
+    private static final AtomicLongArray published = newPublished(ring.length);
+
+    // Next sequence the log thread prints, slots before it are free again
+    private static volatile long tail;
+
+    private static final AtomicLong rateWindow = new AtomicLong();
+    private static final AtomicInteger rateCount = new AtomicInteger();
+    private static final LongAdder dropped = new LongAdder();
+
+    private static final PrintStream out = System.out;
+
+    static {
+        Thread writer = new Thread(AsyncLog::drain, "flare-log");
+        writer.setDaemon(true);
+        writer.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(AsyncLog::flush, "flare-log-flush"));
+    }
+
+    private AsyncLog() {
+    }
+
+    /**
+     * Tells if messages of a level are printed, for callers that would
+     * compute their arguments
+     *
+     * @param level level to check
+     * @return true if enabled
+     */
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() >= threshold;
+    }
+
+    /**
+     * Logs at debug level
+     *
+     * @param template message with {} for the argument
+     * @param arg argument
+     */
+    public static void debug(String template, long arg) {
+        if (Level.DEBUG.ordinal() >= threshold) {
+            publish(Level.DEBUG, template, null, null, arg, true, null);
+        }
+    }
+
+    /**
+     * Logs at debug level
+     *
+     * @param template message with {} for the argument
+     * @param arg argument
+     */
+    public static void debug(String template, Object arg) {
+        if (Level.DEBUG.ordinal() >= threshold) {
+            publish(Level.DEBUG, template, arg, null, 0, false, null);
+        }
+    }
+
+    /**
+     * Logs at info level
+     *
+     * @param message message
+     */
+    public static void info(String message) {
+        if (Level.INFO.ordinal() >= threshold) {
+            publish(Level.INFO, message, null, null, 0, false, null);
+        }
+    }
+
+    /**
+     * Logs at info level
+     *
+     * @param template message with {} for the argument
+     * @param arg argument
+     */
+    public static void info(String template, Object arg) {
+        if (Level.INFO.ordinal() >= threshold) {
+            publish(Level.INFO, template, arg, null, 0, false, null);
+        }
+    }
+
+    /**
+     * Logs at info level
+     *
+     * @param template message with {} for each argument
+     * @param arg first argument
+     * @param arg2 second argument
+     */
+    public static void info(String template, Object arg, Object arg2) {
+        if (Level.INFO.ordinal() >= threshold) {
+            publish(Level.INFO, template, arg, arg2, 0, false, null);
+        }
+    }
+
+    /**
+     * Logs at warn level
+     *
+     * @param message message
+     */
+    public static void warn(String message) {
+        if (Level.WARN.ordinal() >= threshold) {
+            publish(Level.WARN, message, null, null, 0, false, null);
+        }
+    }
+
+    /**
+     * Logs at warn level
+     *
+     * @param template message with {} for the argument
+     * @param arg argument
+     */
+    public static void warn(String template, long arg) {
+        if (Level.WARN.ordinal() >= threshold) {
+            publish(Level.WARN, template, null, null, arg, true, null);
+        }
+    }
+
+    /**
+     * Logs at warn level
+     *
+     * @param template message with {} for the argument
+     * @param arg argument
+     */
+    public static void warn(String template, Object arg) {
+        if (Level.WARN.ordinal() >= threshold) {
+            publish(Level.WARN, template, arg, null, 0, false, null);
+        }
+    }
+
+    /**
+     * Logs at warn level
+     *
+     * @param template message with {} for each argument
+     * @param arg first argument
+     * @param arg2 second argument
+     */
+    public static void warn(String template, Object arg, Object arg2) {
+        if (Level.WARN.ordinal() >= threshold) {
+            publish(Level.WARN, template, arg, arg2, 0, false, null);
+        }
+    }
+
+    /**
+     * Logs at error level with the stack trace of a failure
+     *
+     * @param message message
+     * @param thrown failure
+     */
+    public static void error(String message, Throwable thrown) {
+        if (Level.ERROR.ordinal() >= threshold) {
+            publish(Level.ERROR, message, null, null, 0, false, thrown);
+        }
+    }
+
+    /**
+     * Messages dropped by the rate limit or a full ring
+     *
+     * @return dropped count
+     */
+    public static long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Waits until every message logged so far is printed, at most a second
+     */
+    public static void flush() {
+
+        long target = head.get();
+        long deadline = System.nanoTime() + 1000000000L;
+        while (tail < target && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(1000000);
+        }
+        out.flush();
+    }
+
+    private static void publish(Level level, String template, Object arg, Object arg2, long number,
+            boolean hasNumber, Throwable thrown) {
+
+        long now = System.currentTimeMillis();
+
+        if (level.ordinal() <= RATE_LIMITED && !admit(now)) {
+            dropped.increment();
+            return;
+        }
+
+        //Claim a slot, unless the log thread is a whole ring behind
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail >= ring.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!head.compareAndSet(sequence, sequence + 1));
+
+        Entry entry = ring[(int) (sequence & mask)];
+        entry.time = now;
+        entry.level = level;
+        entry.thread = Thread.currentThread().getName();
+        entry.template = template;
+        entry.arg = arg;
+        entry.arg2 = arg2;
+        entry.number = number;
+        entry.hasNumber = hasNumber;
+        entry.thrown = thrown;
+
+        published.lazySet((int) (sequence & mask), sequence);
+    }
+
+    /**
+     * Counts a message against the limit of the current second
+     */
+    private static boolean admit(long now) {
+
+        long second = now / 1000;
+        long window = rateWindow.get();
+        if (window != second && rateWindow.compareAndSet(window, second)) {
+            rateCount.set(0);
+        }
+        return rateCount.incrementAndGet() <= FlareConfiguration.LOG_RATE;
+    }
+
+    /**
+     * Log thread, prints slots in sequence order as they are published
+     */
+    private static void drain() {
+
+        StringBuilder line = new StringBuilder(256);
+        SimpleDateFormat clock = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        Date date = new Date();
+        long reported = 0;
+
+        while (true) {
+
+            long next = tail;
+            int slot = (int) (next & mask);
+
+            if (published.get(slot) != next) {
+
+                //Nothing new, say what was lost and rest
+                long lost = dropped.sum();
+                if (lost != reported) {
+                    out.println("WARN  [flare-log] " + (lost - reported) + " messages dropped");
+                    reported = lost;
+                }
+                out.flush();
+                LockSupport.parkNanos(1000000);
+                continue;
+            }
+
+            Entry entry = ring[slot];
+            date.setTime(entry.time);
+            line.setLength(0);
+            line.append(clock.format(date)).append(' ');
+            line.append(entry.level);
+            for (int pad = entry.level.name().length(); pad < 5; pad++) {
+                line.append(' ');
+            }
+            line.append(" [").append(entry.thread).append("] ");
+            format(line, entry);
+            Throwable thrown = entry.thrown;
+
+            //Free the slot before the slow console write
+            entry.clear();
+            tail = next + 1;
+
+            out.println(line);
+            if (thrown != null) {
+                thrown.printStackTrace(out);
+            }
+        }
+    }
+
+    private static void format(StringBuilder line, Entry entry) {
+
+        String template = entry.template;
+        int argument = 0;
+        int start = 0;
+        int at;
+
+        while ((at = template.indexOf("{}", start)) >= 0) {
+            line.append(template, start, at);
+            if (entry.hasNumber && argument == 0) {
+                line.append(entry.number);
+            } else if (argument == 0) {
+                line.append(entry.arg);
+            } else if (argument == 1) {
+                line.append(entry.arg2);
+            } else {
+                line.append("{}");
+            }
+            argument++;
+            start = at + 2;
+        }
+        line.append(template, start, template.length());
+    }
+
+    private static Level parseLevel(String name) {
+        try {
+            return Level.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            System.out.println("Unknown log level " + name + ", using INFO");
+            return Level.INFO;
+        }
+    }
+
+    private static Entry[] newRing(int capacity) {
+
+        //Power of two so a slot is a mask away from its sequence
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        Entry[] entries = new Entry[size];
+        for (int n = 0; n < size; n++) {
+            entries[n] = new Entry();
+        }
+        return entries;
+    }
+
+    private static AtomicLongArray newPublished(int size) {
+        AtomicLongArray sequences = new AtomicLongArray(size);
+        for (int n = 0; n < size; n++) {
+            sequences.set(n, -1);
+        }
+        return sequences;
+    }
+
+    /**
+     * One slot of the ring, reused for every message that lands in it
+     */
+    private static final class Entry {
+
+        long time;
+        Level level;
+        String thread;
+        String template;
+        Object arg;
+        Object arg2;
+        long number;
+        boolean hasNumber;
+        Throwable thrown;
+
+        void clear() {
+            thread = null;
+            template = null;
+            arg = null;
+            arg2 = null;
+            thrown = null;
+        }
+    }
+
+}
@@ -1,7 +1,5 @@
 package Utility;
 
-import java.nio.ByteBuffer;
-
 /**
  * Helper utility class for converting to byte arrays
  * @author Brian Parra
@@ -14,7 +12,7 @@ public class ByteUtils {
      * @return binary representation of int
      */
     public static byte[] intToByteArray(int input){
-        return ByteBuffer.allocate(4).putInt(input).array();
+        return new byte[]{(byte) (input >> 24), (byte) (input >> 16), (byte) (input >> 8), (byte) input};
     }
     
     /**
@@ -23,7 +21,7 @@ public class ByteUtils {
      * @return short in binary representation
      */
     public static byte[] shortToByteArray(short input){
-        return ByteBuffer.allocate(2).putShort(input).array();
+        return new byte[]{(byte) (input >> 8), (byte) input};
     }
     
 }
@@ -0,0 +1,200 @@
+package Utility;
+
+import java.util.Arrays;
+
+/**
+ * Builds a JSON document in one pass, without a model in between. Commas
+ * and quoting are handled here, the caller only opens, names and closes.
+ * Not thread safe, one writer per document.
+ *
+ * @author Team 2
+ */
+public class JsonWriter {
+
+    private final StringBuilder json = new StringBuilder(1024);
+
+    // One entry per open object or array, true until its first value
+    private boolean[] first = new boolean[16];
+    private int depth;
+    private boolean named;
+
+    /**
+     * Opens an object
+     *
+     * @return this writer
+     */
+    public JsonWriter beginObject() {
+        return open('{');
+    }
+
+    /**
+     * Closes the innermost object
+     *
+     * @return this writer
+     */
+    public JsonWriter endObject() {
+        return close('}');
+    }
+
+    /**
+     * Opens an array
+     *
+     * @return this writer
+     */
+    public JsonWriter beginArray() {
+        return open('[');
+    }
+
+    /**
+     * Closes the innermost array
+     *
+     * @return this writer
+     */
+    public JsonWriter endArray() {
+        return close(']');
+    }
+
+    /**
+     * Names the next value of an object
+     *
+     * @param name member name
+     * @return this writer
+     */
+    public JsonWriter name(String name) {
+        separate();
+        string(name);
+        json.append(':');
+        named = true;
+        return this;
+    }
+
+    /**
+     * Writes a string, null writes null
+     *
+     * @param value string value
+     * @return this writer
+     */
+    public JsonWriter value(String value) {
+        separate();
+        if (value == null) {
+            json.append("null");
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a whole number
+     *
+     * @param value number value
+     * @return this writer
+     */
+    public JsonWriter value(long value) {
+        separate();
+        json.append(value);
+        return this;
+    }
+
+    /**
+     * Writes a number, NaN and infinities are written as null
+     *
+     * @param value number value
+     * @return this writer
+     */
+    public JsonWriter value(double value) {
+        separate();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            json.append("null");
+        } else {
+            json.append(value);
+        }
+        return this;
+    }
+
+    /**
+     * Writes true or false
+     *
+     * @param value boolean value
+     * @return this writer
+     */
+    public JsonWriter value(boolean value) {
+        separate();
+        json.append(value);
+        return this;
+    }
+
+    /**
+     * The document written so far
+     *
+     * @return JSON text
+     */
+    @Override
+    public String toString() {
+        return json.toString();
+    }
+
+    private JsonWriter open(char bracket) {
+        separate();
+        json.append(bracket);
+        if (depth == first.length) {
+            first = Arrays.copyOf(first, depth * 2);
+        }
+        first[depth++] = true;
+        return this;
+    }
+
+    private JsonWriter close(char bracket) {
+        depth--;
+        json.append(bracket);
+        return this;
+    }
+
+    private void separate() {
+
+        //A named value follows its name without a comma
+        if (named) {
+            named = false;
+            return;
+        }
+        if (depth > 0) {
+            if (!first[depth - 1]) {
+                json.append(',');
+            }
+            first[depth - 1] = false;
+        }
+    }
+
+    private void string(String value) {
+
+        json.append('"');
+        for (int n = 0; n < value.length(); n++) {
+            char c = value.charAt(n);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+}
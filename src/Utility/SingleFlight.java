@@ -0,0 +1,114 @@
+package Utility;
+
+import FlareMetrics.SingleFlightMXBean;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces concurrent loads of the same key. The first caller runs the
+ * load, callers arriving while it is in flight wait for its result instead
+ * of repeating the I/O. Nothing is cached, once a load completes the next
+ * request for the key loads again.
+ *
+ * @param <K> key type
+ * @param <V> loaded value type
+ * @author Team 2
+ */
+public class SingleFlight<K, V> implements SingleFlightMXBean {
+
+    /**
+     * Loads a value, may throw IOException
+     *
+     * @param <V> loaded value type
+     */
+    public interface Loader<V> {
+
+        /**
+         * Performs the load
+         *
+         * @return loaded value
+         * @throws IOException if the value cannot be loaded
+         */
+        V load() throws IOException;
+    }
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<K, CompletableFuture<V>>();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Loads the value of a key, or waits for the load already in flight
+     *
+     * @param key what is loaded
+     * @param loader performs the load if none is in flight
+     * @return loaded value
+     * @throws IOException if the load failed, also for the waiting callers
+     */
+    public V load(K key, Loader<V> loader) throws IOException {
+
+        CompletableFuture<V> future = new CompletableFuture<V>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing);
+        }
+
+        loads.increment();
+        try {
+
+            V value = loader.load();
+            future.complete(value);
+            return value;
+
+        } catch (Throwable ex) {
+            //Errors too, or the waiting callers would block forever
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Number of loads that were actually performed
+     *
+     * @return load count
+     */
+    @Override
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    /**
+     * Number of requests that were served by a load already in flight
+     *
+     * @return coalesced request count
+     */
+    @Override
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    private V await(CompletableFuture<V> future) throws IOException {
+
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+    }
+
+}
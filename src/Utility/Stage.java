@@ -0,0 +1,250 @@
+package Utility;
+
+import FlareMetrics.Metrics;
+import FlareMetrics.StageMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * One stage of request processing with its own bounded pool and queue.
+ * When all threads are busy and the queue is full the work is rejected with
+ * RejectedExecutionException, the caller decides how to shed it. Threads
+ * beyond the first minute of idleness are released.
+ *
+ * Every stage, and every scheduler that manages its own threads, keeps
+ * Statistics in a common registry so pools can be sized from queue depth
+ * and service time.
+ *
+ * @author Team 2
+ */
+public class Stage implements Executor {
+
+    private static final List<Statistics> registry = new CopyOnWriteArrayList<Statistics>();
+
+    private final ThreadPoolExecutor pool;
+    private final Statistics statistics;
+
+    /**
+     * Constructor
+     *
+     * @param name stage name, also used for the thread names
+     * @param threads most threads running at once
+     * @param capacity work queued while all threads are busy, 0 to hand
+     * work only to an idle thread
+     */
+    public Stage(String name, int threads, int capacity) {
+
+        BlockingQueue<Runnable> queue = capacity > 0
+                ? new ArrayBlockingQueue<Runnable>(capacity)
+                : new SynchronousQueue<Runnable>();
+
+        pool = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 60, TimeUnit.SECONDS, queue, runnable -> {
+            Thread thread = new Thread(runnable, "flare-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+
+        statistics = register(name, Math.max(1, threads), queue::size, pool::getActiveCount);
+    }
+
+    /**
+     * Registers the statistics of a pool managed elsewhere
+     *
+     * @param name stage name
+     * @param threads number of threads
+     * @param queued current queue depth
+     * @param active threads currently busy
+     * @return statistics to record into
+     */
+    public static Statistics register(String name, int threads, IntSupplier queued, IntSupplier active) {
+        Statistics statistics = new Statistics(name, threads, queued, active);
+        registry.add(statistics);
+        Metrics.register("Stage", name, statistics);
+        return statistics;
+    }
+
+    /**
+     * Statistics of all stages
+     *
+     * @return snapshot of the registry
+     */
+    public static List<Statistics> getAll() {
+        return new ArrayList<Statistics>(registry);
+    }
+
+    /**
+     * Runs work on this stage
+     *
+     * @param work the work
+     * @throws RejectedExecutionException if the stage is saturated
+     */
+    @Override
+    public void execute(Runnable work) {
+
+        long submitted = System.nanoTime();
+
+        try {
+            pool.execute(() -> {
+                long started = System.nanoTime();
+                try {
+                    work.run();
+                } finally {
+                    statistics.record(started - submitted, System.nanoTime() - started);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            statistics.reject();
+            throw ex;
+        }
+    }
+
+    /**
+     * Statistics of this stage
+     *
+     * @return statistics
+     */
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Queue depth, service time and shed work of one stage
+     */
+    public static final class Statistics implements StageMXBean {
+
+        private final String name;
+        private final int threads;
+        private final IntSupplier queued;
+        private final IntSupplier active;
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final LongAdder serviceNanos = new LongAdder();
+
+        private Statistics(String name, int threads, IntSupplier queued, IntSupplier active) {
+            this.name = name;
+            this.threads = threads;
+            this.queued = queued;
+            this.active = active;
+        }
+
+        /**
+         * Records one finished piece of work
+         *
+         * @param wait time spent queued in ns
+         * @param service time spent running in ns
+         */
+        public void record(long wait, long service) {
+            completed.increment();
+            waitNanos.add(wait);
+            serviceNanos.add(service);
+        }
+
+        /**
+         * Records work the stage had no room for
+         */
+        public void reject() {
+            rejected.increment();
+        }
+
+        /**
+         * Stage name
+         *
+         * @return name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Most threads running at once
+         *
+         * @return thread count
+         */
+        @Override
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * Threads currently busy
+         *
+         * @return active thread count
+         */
+        @Override
+        public int getActive() {
+            return active.getAsInt();
+        }
+
+        /**
+         * Work waiting for a thread
+         *
+         * @return queue depth
+         */
+        @Override
+        public int getQueued() {
+            return queued.getAsInt();
+        }
+
+        /**
+         * Work finished so far
+         *
+         * @return completed count
+         */
+        @Override
+        public long getCompleted() {
+            return completed.sum();
+        }
+
+        /**
+         * Work shed because the stage was saturated
+         *
+         * @return rejected count
+         */
+        @Override
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        /**
+         * Average time work waited for a thread
+         *
+         * @return mean wait in ms
+         */
+        @Override
+        public double getMeanWaitMillis() {
+            long count = completed.sum();
+            return count == 0 ? 0 : waitNanos.sum() / 1e6 / count;
+        }
+
+        /**
+         * Average time a thread spent on one piece of work
+         *
+         * @return mean service time in ms
+         */
+        @Override
+        public double getMeanServiceMillis() {
+            long count = completed.sum();
+            return count == 0 ? 0 : serviceNanos.sum() / 1e6 / count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s threads=%d active=%d queued=%d completed=%d rejected=%d wait=%.2fms service=%.2fms",
+                    name, threads, getActive(), getQueued(), getCompleted(), getRejected(),
+                    getMeanWaitMillis(), getMeanServiceMillis());
+        }
+    }
+
+}
@@ -0,0 +1,316 @@
+package Utility;
+
+import Core.FlareConfiguration;
+import WebSocket.Message.WebSocketBinaryMessage;
+import WebSocket.Message.WebSocketMessage;
+import WebSocket.Message.WebSocketTextMessage;
+import WebSocket.WebSocket;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the messages a client sends, one file per session under
+ * flare.capture.dir, so real traffic can be played back against a server
+ * later, see Benchmark.TrafficReplay. Capturing is off unless the directory
+ * is set.
+ *
+ * File layout, big endian:
+ *
+ * header   magic "FLCP", version byte, connect time in ms since the epoch,
+ *          session id as modified UTF-8
+ * record   nanoseconds since the previous record as a varint, type byte
+ *          (1 text, 2 binary, 0 end of session), length as a varint, payload
+ *
+ * Credentials of admin AUTH queries are not written. A session stops being
+ * recorded once its file reaches flare.capture.maxMB.
+ *
+ * @author Team 2
+ */
+public class TrafficCapture {
+
+    private static final int MAGIC = 0x464C4350;
+    private static final byte VERSION = 1;
+
+    /**
+     * Record types
+     */
+    public static final byte END = 0;
+    public static final byte TEXT = WebSocket.OP_CODE.TEXT;
+    public static final byte BINARY = WebSocket.OP_CODE.BINARY;
+
+    private static final String SUFFIX = ".flarecap";
+    private static final byte[] REDACTED_AUTH = "AUTH".getBytes(StandardCharsets.UTF_8);
+
+    private final Path file;
+    private final DataOutputStream out;
+    private final long limit = FlareConfiguration.CAPTURE_MAX_MB * 1024L * 1024L;
+    private long last = System.nanoTime();
+    private boolean full;
+
+    private TrafficCapture(Path file, String sessionId, long connectedAt) throws IOException {
+
+        this.file = file;
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(connectedAt);
+        out.writeUTF(sessionId);
+    }
+
+    /**
+     * Starts recording a session if capturing is on
+     *
+     * @param sessionId id of the session
+     * @param connectedAt when the client connected, ms since the epoch
+     * @return the capture, null if capturing is off or the file cannot be
+     * created
+     */
+    public static TrafficCapture open(String sessionId, long connectedAt) {
+
+        if (FlareConfiguration.CAPTURE_DIR.isEmpty()) {
+            return null;
+        }
+
+        try {
+            Path directory = Paths.get(FlareConfiguration.CAPTURE_DIR);
+            Files.createDirectories(directory);
+            String name = connectedAt + "-" + sessionId.replaceAll("[^A-Za-z0-9_-]", "_") + SUFFIX;
+            return new TrafficCapture(directory.resolve(name), sessionId, connectedAt);
+        } catch (IOException ex) {
+            Logger.getLogger(TrafficCapture.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Records a message received from the client
+     *
+     * @param message message as decoded by the WebSocket
+     */
+    public void record(WebSocketMessage message) {
+
+        byte[] payload;
+        byte type;
+
+        if (message instanceof WebSocketBinaryMessage) {
+            type = BINARY;
+            payload = ((WebSocketBinaryMessage) message).getData();
+        } else if (message instanceof WebSocketTextMessage) {
+            type = TEXT;
+            String text = ((WebSocketTextMessage) message).getText();
+            payload = text.trim().toUpperCase().startsWith("AUTH")
+                    ? REDACTED_AUTH : text.getBytes(StandardCharsets.UTF_8);
+        } else {
+            return;
+        }
+
+        write(type, payload);
+    }
+
+    /**
+     * Marks the end of the session and closes the file
+     */
+    public void close() {
+
+        write(END, new byte[0]);
+        try {
+            out.close();
+        } catch (IOException ex) {
+            Logger.getLogger(TrafficCapture.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    private void write(byte type, byte[] payload) {
+
+        if (full) {
+            return;
+        }
+
+        if (out.size() + payload.length + 16 > limit && type != END) {
+            full = true;
+            AsyncLog.warn("Capture {} reached its size limit, the rest of the session is not recorded", file);
+            return;
+        }
+
+        long now = System.nanoTime();
+        try {
+            writeVarint(now - last);
+            out.writeByte(type);
+            writeVarint(payload.length);
+            out.write(payload);
+        } catch (IOException ex) {
+            full = true;
+            Logger.getLogger(TrafficCapture.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        last = now;
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Reads a capture file back
+     *
+     * @param file capture file
+     * @return the recorded session
+     * @throws IOException if the file is not a capture or cannot be read
+     */
+    public static Session read(Path file) throws IOException {
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a capture");
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException(file + " has unknown capture version " + version);
+            }
+
+            Session session = new Session(in.readLong(), in.readUTF());
+            long offset = 0;
+
+            //A session cut short by a crash has no end record
+            while (true) {
+
+                byte type;
+                byte[] payload;
+                try {
+                    offset += readVarint(in);
+                    type = in.readByte();
+                    payload = new byte[(int) readVarint(in)];
+                    in.readFully(payload);
+                } catch (EOFException ex) {
+                    break;
+                }
+
+                session.records.add(new Record(offset, type, payload));
+                if (type == END) {
+                    break;
+                }
+            }
+            return session;
+        }
+    }
+
+    private static long readVarint(InputStream in) throws IOException {
+
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * A recorded session
+     */
+    public static final class Session {
+
+        private final long connectedAt;
+        private final String sessionId;
+        private final List<Record> records = new ArrayList<Record>();
+
+        private Session(long connectedAt, String sessionId) {
+            this.connectedAt = connectedAt;
+            this.sessionId = sessionId;
+        }
+
+        /**
+         * When the client connected
+         *
+         * @return time in ms since the epoch
+         */
+        public long getConnectedAt() {
+            return connectedAt;
+        }
+
+        /**
+         * Id the server gave the session
+         *
+         * @return session id
+         */
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        /**
+         * Messages in the order they arrived
+         *
+         * @return records, the last one is END unless the capture was cut
+         * short
+         */
+        public List<Record> getRecords() {
+            return records;
+        }
+    }
+
+    /**
+     * One message of a session
+     */
+    public static final class Record {
+
+        private final long offsetNanos;
+        private final byte type;
+        private final byte[] payload;
+
+        private Record(long offsetNanos, byte type, byte[] payload) {
+            this.offsetNanos = offsetNanos;
+            this.type = type;
+            this.payload = payload;
+        }
+
+        /**
+         * When the message arrived
+         *
+         * @return nanoseconds since the client connected
+         */
+        public long getOffsetNanos() {
+            return offsetNanos;
+        }
+
+        /**
+         * Kind of record
+         *
+         * @return TEXT, BINARY or END
+         */
+        public byte getType() {
+            return type;
+        }
+
+        /**
+         * Message as the client sent it, unmasked
+         *
+         * @return payload
+         */
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+}
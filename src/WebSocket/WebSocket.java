@@ -1,4 +1,8 @@
 package WebSocket;
+import FlareMetrics.ServerMetrics;
+import FlareMetrics.SocketWriteEvent;
+import FlareMetrics.WebSocketDecodeEvent;
+import Utility.AsyncLog;
 import WebSocket.Message.WebSocketBinaryMessage;
 import WebSocket.Message.WebSocketMessage;
 import WebSocket.Message.WebSocketTextMessage;
@@ -48,6 +52,17 @@ public class WebSocket extends Socket {
 
     private DataInputStream dataInputStream;
 
+    //Gathers the frame header, the message header and small slices into one
+    //write, reused for every frame sent
+    private final byte[] frameBuffer = new byte[FRAME_BUFFER_LENGTH];
+
+    private static final int FRAME_BUFFER_LENGTH = 8192;
+
+    private static final ByteBuffer[] NO_BUFFERS = new ByteBuffer[0];
+
+    //Names the connection in flight recorder events
+    private volatile String sessionId;
+
     /**
      * Static Constructor
      * @return new WebSocket
@@ -87,6 +102,14 @@ public class WebSocket extends Socket {
 
     }
     
+    /**
+     * Sets the session this socket serves, recorded with its write events
+     * @param sessionId id of the client session
+     */
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+    
     /**
      * Sends text data
      * @param text data to send
@@ -95,39 +118,8 @@ public class WebSocket extends Socket {
     public void sendTextData(String text) throws IOException {
         
         byte[] binaryText = text.getBytes(StandardCharsets.US_ASCII);
-        int messageLength = binaryText.length;
-        
-        
-        byte isFinal = (byte) (1 << 7);
-        byte firstHeader = (byte) (WebSocket.OP_CODE.TEXT | (byte)isFinal);
-        outputStream.write(firstHeader);
-        
-        //Don't need to worry about mask bit, will allways be 0.
         
-        if(messageLength < 126){
-            
-            outputStream.write((byte) messageLength);
-            
-        }else if (messageLength < 65536 ){
-            
-            outputStream.write((byte)  0x7e); //Set to 256 to use next 2 bytes
-            //Write bottom 16 bits as message length use 2 bytes as length 
-            ByteBuffer payloadLengthbuffer = ByteBuffer.allocate(Short.BYTES);
-            payloadLengthbuffer.putShort((short) (messageLength & 0xffff));            
-            outputStream.write(payloadLengthbuffer.array());
-            
-        }else {
-            
-            outputStream.write((byte) 0x7f); //set to 8 for 64 bit unsigned number    
-            //Only need 32 bits as length, but still has to be 64 bits long
-            ByteBuffer payloadLengthbuffer = ByteBuffer.allocate(Long.BYTES);
-            payloadLengthbuffer.putLong(messageLength);
-            outputStream.write(payloadLengthbuffer.array());
-            
-        }
-        
-        //Finally Write the data
-        outputStream.write(binaryText);
+        sendFrame(WebSocket.OP_CODE.TEXT, ByteBuffer.wrap(binaryText), NO_BUFFERS, 0, System.nanoTime());
     
     }
     
@@ -139,44 +131,202 @@ public class WebSocket extends Socket {
      */
     public void sendBinaryData(byte[] data) throws IOException {
        
-        int messageLength = data.length;
- 
+        sendBinaryData(data, System.nanoTime());
+   
+    }
+    
+    /**
+     * Sends binary data for a caller that started waiting for the socket
+     * lock earlier
+     * @param data data to send
+     * @param requested System.nanoTime() when the caller started waiting
+     * @throws IOException if can't write data
+     */
+    public void sendBinaryData(byte[] data, long requested) throws IOException {
+        
+        sendFrame(WebSocket.OP_CODE.BINARY, ByteBuffer.wrap(data), NO_BUFFERS, 0, requested);
+        
+    }
+    
+    /**
+     * Sends binary data made of a header and body slices as one frame. The
+     * header and small slices are gathered into a single write with the
+     * frame header, large slices go straight from their arrays, so large
+     * bodies are never copied whole. Buffer positions
+     * are not changed, the same buffers can be sent to several sockets.
+     * @param header first bytes of the frame
+     * @param body slices following the header
+     * @throws IOException if can't write data
+     */
+    public void sendBinaryData(ByteBuffer header, ByteBuffer[] body) throws IOException {
         
+        sendBinaryData(header, body, System.nanoTime());
+        
+    }
+    
+    /**
+     * Sends a header and payload slices for a caller that started waiting
+     * for the socket lock earlier
+     * @param header bytes sent first
+     * @param body slices sent after the header
+     * @param requested System.nanoTime() when the caller started waiting
+     * @throws IOException if can't write data
+     */
+    public void sendBinaryData(ByteBuffer header, ByteBuffer[] body, long requested) throws IOException {
+        
+        sendFrame(WebSocket.OP_CODE.BINARY, header, body, 0, requested);
+        
+    }
+    
+    /**
+     * Sends a header and the slices of a body array from an offset on, so
+     * an array shared with other sockets goes out without being copied
+     * @param header bytes sent first
+     * @param body array holding the slices sent after the header
+     * @param offset index of the first slice in body
+     * @param requested System.nanoTime() when the caller started waiting
+     * @throws IOException if can't write data
+     */
+    public void sendBinaryData(ByteBuffer header, ByteBuffer[] body, int offset, long requested) throws IOException {
+        
+        sendFrame(WebSocket.OP_CODE.BINARY, header, body, offset, requested);
+        
+    }
+    
+    /**
+     * Writes one final unmasked frame. Holds the socket lock like
+     * FlareClient so frames from different threads never interleave
+     */
+    private synchronized void sendFrame(byte opCode, ByteBuffer header, ByteBuffer[] body, int offset, long requested) throws IOException {
+        
+        SocketWriteEvent event = new SocketWriteEvent();
+        long acquired = event.isEnabled() ? System.nanoTime() : requested;
+        event.begin();
+        
+        long written = writeFrame(opCode, header, body, offset);
+        
+        event.end();
+        if (event.shouldCommit()) {
+            event.session = sessionId;
+            if (opCode == WebSocket.OP_CODE.BINARY && header.remaining() > 4) {
+                event.opCode = ServerMetrics.getOpCodeName(header.get(header.position() + 4));
+            }
+            event.bytes = written;
+            event.blocked = acquired - requested;
+            event.commit();
+        }
+        
+    }
+    
+    /**
+     * Writes the frame header, the header and the body slices from offset on
+     * @return bytes written
+     */
+    private long writeFrame(byte opCode, ByteBuffer header, ByteBuffer[] body, int offset) throws IOException {
+        
+        long messageLength = header.remaining();
+        for (int n = offset; n < body.length; n++) {
+            messageLength += body[n].remaining();
+        }
         
         byte isFinal = (byte) (1 << 7);
-        byte firstHeader = (byte) (WebSocket.OP_CODE.BINARY | (byte)isFinal);
-        outputStream.write(firstHeader);
+        frameBuffer[0] = (byte) (opCode | isFinal);
+        int position = 1;
         
         //Don't need to worry about mask bit, will allways be 0.
         
         if(messageLength < 126){
            
-            outputStream.write((byte) messageLength);
+            frameBuffer[position++] = (byte) messageLength;
             
         }else if (messageLength < 65536 ){
             
-            outputStream.write((byte) 0x7e); //Set to 126 to use next 2 bytes
+            frameBuffer[position++] = (byte) 0x7e; //Set to 126 to use next 2 bytes
             //Write bottom 16 bits as message length use 2 bytes as length 
-            ByteBuffer payloadLengthbuffer = ByteBuffer.allocate(Short.BYTES);
-            payloadLengthbuffer.putShort((short) (messageLength & 0xffff));            
-            outputStream.write(payloadLengthbuffer.array());
-
+            frameBuffer[position++] = (byte) (messageLength >> 8);
+            frameBuffer[position++] = (byte) messageLength;
             
         }else {
             
-            outputStream.write((byte) 0x7f); //set to 8 for 64 bit unsigned number    
-            //Only need 32 bits as length, but still has to be 64 bits long
-            ByteBuffer payloadLengthbuffer = ByteBuffer.allocate(Long.BYTES);
-            payloadLengthbuffer.putLong(messageLength);
-            outputStream.write(payloadLengthbuffer.array());
+            frameBuffer[position++] = (byte) 0x7f; //set to 8 for 64 bit unsigned number    
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                frameBuffer[position++] = (byte) (messageLength >> shift);
+            }
 
         }
         
-        //Finally Write the data
-        outputStream.write(data);
+        //With TCP_NODELAY every write is a segment, gather them
+        int pending = gather(header, position);
+        for (int n = offset; n < body.length; n++) {
+            pending = gather(body[n], pending);
+        }
+        if (pending > 0) {
+            outputStream.write(frameBuffer, 0, pending);
+        }
+        
+        return position + messageLength;
    
     }
     
+    /**
+     * Appends a buffer to the pending bytes of the frame buffer without
+     * moving its position. A buffer that does not fit tops the frame buffer
+     * up before it is written, a large rest of an array buffer then goes out
+     * straight from its array.
+     * @return bytes pending in the frame buffer
+     */
+    private int gather(ByteBuffer buffer, int pending) throws IOException {
+        
+        //Array buffers are read in place, no duplicate per socket
+        if (buffer.hasArray()) {
+            return gather(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), pending);
+        }
+        
+        ByteBuffer source = buffer.duplicate();
+        while (source.hasRemaining()) {
+            
+            int length = Math.min(source.remaining(), frameBuffer.length - pending);
+            source.get(frameBuffer, pending, length);
+            pending += length;
+            if (pending < frameBuffer.length) {
+                return pending;
+            }
+            
+            outputStream.write(frameBuffer, 0, pending);
+            pending = 0;
+            
+        }
+        return pending;
+        
+    }
+    
+    /**
+     * Appends bytes of an array to the frame buffer, a rest as large as the
+     * frame buffer goes out straight from the array
+     * @return bytes pending in the frame buffer
+     */
+    private int gather(byte[] array, int offset, int length, int pending) throws IOException {
+        
+        int copied = Math.min(length, frameBuffer.length - pending);
+        System.arraycopy(array, offset, frameBuffer, pending, copied);
+        pending += copied;
+        if (pending < frameBuffer.length) {
+            return pending;
+        }
+        
+        outputStream.write(frameBuffer, 0, pending);
+        offset += copied;
+        length -= copied;
+        
+        if (length >= frameBuffer.length) {
+            outputStream.write(array, offset, length);
+            return 0;
+        }
+        System.arraycopy(array, offset, frameBuffer, 0, length);
+        return length;
+        
+    }
+    
 
     /**
      * Returns the WebSocket message
@@ -187,6 +337,10 @@ public class WebSocket extends Socket {
         
         currentByte = dataInputStream.readByte();
         
+        //Starts once the frame arrived, waiting for a client is not decoding
+        WebSocketDecodeEvent event = new WebSocketDecodeEvent();
+        event.begin();
+        
         opCode = (byte) (currentByte & 0x0f);
         
     
@@ -204,6 +358,13 @@ public class WebSocket extends Socket {
             frameHandler.initialize(this, currentByte);
             message = frameHandler.process();
             
+            event.end();
+            if (event.shouldCommit()) {
+                event.opCode = opCode;
+                event.payloadBytes = frameHandler.dataLength;
+                event.commit();
+            }
+            
         } catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException ex) {
             Logger.getLogger(WebSocket.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -239,7 +400,7 @@ public class WebSocket extends Socket {
             socketResponseKey = Base64.encodeBase64String(DigestUtils.sha1(webSocketKey + GUID));
 
         } catch (IOException e) {
-            System.out.println("Error reading body");
+            AsyncLog.warn("Error reading handshake: {}", e);
 
         }
 
@@ -1,6 +1,7 @@
 package WebSocket;
 
 
+import FlareMetrics.ServerMetrics;
 import java.io.IOException;
 import java.net.ServerSocket;
 
@@ -31,9 +32,15 @@ public class WebSocketServer extends ServerSocket {
         WebSocket webSocket = WebSocket.create();
         
         implAccept(webSocket);
+        ServerMetrics.accepted();
+        
+        //A frame goes out as a gathered head write and at most one large
+        //body write, Nagle would hold its tail back until the client acknowledges
+        webSocket.setTcpNoDelay(true);
         
         //Perform the websocket handshake response
         webSocket.handshake();
+        ServerMetrics.handshake();
         
       
         webSocket.initialize();   